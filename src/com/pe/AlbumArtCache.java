@@ -0,0 +1,336 @@
+package com.pe;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+
+import com.pe.audio.Mp3HeaderReader;
+
+/**
+ * Holds scaled thumbnails of the album art of songs, so that the art is only read and scaled once.
+ *
+ * Thumbnails are keyed by a hash of the image data rather than by song, so the songs of an album that share the same
+ * art also share a single thumbnail. The least recently used thumbnails are removed once their total size exceeds the
+ * byte budget. The full size images are never held.
+ *
+ * Album art is read, decoded and scaled on a single background thread and the result is passed to a listener on the
+ * event dispatch thread, so that the caller never waits for image work.
+ *
+ * @author olly.rowe
+ */
+public class AlbumArtCache
+{
+	// The default maximum total size of the thumbnails, enough for several hundred albums at 70x70
+	public static final long DEFAULT_MAX_BYTES = 8L * 1024 * 1024;
+
+	// The cache shared by the application
+	private static AlbumArtCache instance;
+
+	// The maximum total size of the thumbnails, in bytes
+	private long maxBytes;
+
+	// The thumbnails by image hash and size, in least recently used order
+	private LinkedHashMap<String, BufferedImage> thumbnails;
+
+	// The total size of the thumbnails, in bytes
+	private long totalBytes;
+
+	// The hash of the album art of each song that has been read. Songs are held weakly so that removed songs are
+	// forgotten
+	private Map<Song, String> imageHashes = new WeakHashMap<Song, String>();
+
+	// The thread on which the album art is read and scaled
+	private ExecutorService executor;
+
+	/**
+	 * Receives thumbnails once they have been loaded.
+	 */
+	public interface Listener
+	{
+		/**
+		 * Called on the event dispatch thread once a thumbnail has been loaded.
+		 *
+		 * @param song - The song whose thumbnail was requested.
+		 * @param thumbnail - The thumbnail, or null if the song has no album art.
+		 */
+		void thumbnailLoaded(Song song, BufferedImage thumbnail);
+	}
+
+	/**
+	 * Class Constructor.
+	 *
+	 * @param maxBytes - The maximum total size of the thumbnails, in bytes.
+	 */
+	public AlbumArtCache(long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+
+		// Order the thumbnails by access so that the least recently used thumbnail is removed first
+		this.thumbnails = new LinkedHashMap<String, BufferedImage>(16, 0.75f, true);
+
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "Album Art Loader");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Gets the cache shared by the application.
+	 *
+	 * @return The shared cache.
+	 */
+	public static synchronized AlbumArtCache getInstance()
+	{
+		if (instance == null)
+		{
+			instance = new AlbumArtCache(DEFAULT_MAX_BYTES);
+		}
+		return instance;
+	}
+
+	/**
+	 * Gets the thumbnail of a song's album art if it is already held, without any image work.
+	 *
+	 * @param song - The song.
+	 * @param size - The width and height of the thumbnail, in pixels.
+	 * @return The thumbnail, or null if it isn't held.
+	 */
+	public synchronized BufferedImage getThumbnail(Song song, int size)
+	{
+		String imageHash = this.imageHashes.get(song);
+		return (imageHash == null) ? null : this.thumbnails.get(getKey(imageHash, size));
+	}
+
+	/**
+	 * Loads the thumbnail of a song's album art in the background. If the load is cancelled before it starts then
+	 * the listener isn't called.
+	 *
+	 * @param song - The song.
+	 * @param size - The width and height of the thumbnail, in pixels.
+	 * @param listener - The listener to be passed the thumbnail.
+	 * @return The pending load.
+	 */
+	public Future<?> loadThumbnail(final Song song, final int size, final Listener listener)
+	{
+		return this.executor.submit(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				final BufferedImage thumbnail = readThumbnail(song, size);
+
+				SwingUtilities.invokeLater(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						listener.thumbnailLoaded(song, thumbnail);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Reads the album art of a song and scales it, unless its thumbnail is already held.
+	 *
+	 * @return The thumbnail, or null if the song has no album art.
+	 */
+	private BufferedImage readThumbnail(Song song, int size)
+	{
+		BufferedImage thumbnail = this.getThumbnail(song, size);
+
+		if (thumbnail != null || !song.hasAlbumArt())
+		{
+			return thumbnail;
+		}
+
+		try
+		{
+			byte[] imageData = Mp3HeaderReader.readAlbumImage(song.getFile());
+
+			// Don't attempt to read the image again if the file doesn't contain one
+			if (imageData == null)
+			{
+				song.setHasAlbumArt(false);
+				return null;
+			}
+
+			// Use the thumbnail of any song that shares the same art
+			String imageHash = getHash(imageData);
+			String key = getKey(imageHash, size);
+
+			synchronized (this)
+			{
+				this.imageHashes.put(song, imageHash);
+				thumbnail = this.thumbnails.get(key);
+			}
+
+			if (thumbnail == null)
+			{
+				BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageData));
+
+				if (image == null)
+				{
+					song.setHasAlbumArt(false);
+					return null;
+				}
+
+				thumbnail = scale(image, size);
+				this.putThumbnail(key, thumbnail);
+			}
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		return thumbnail;
+	}
+
+	/**
+	 * Adds a thumbnail, removing the least recently used thumbnails if the byte budget is exceeded.
+	 */
+	private synchronized void putThumbnail(String key, BufferedImage thumbnail)
+	{
+		BufferedImage previous = this.thumbnails.put(key, thumbnail);
+
+		if (previous != null)
+		{
+			this.totalBytes -= getByteCount(previous);
+		}
+		this.totalBytes += getByteCount(thumbnail);
+
+		this.trim();
+	}
+
+	/**
+	 * Removes the least recently used thumbnails until the total size is within the byte budget.
+	 */
+	private void trim()
+	{
+		Iterator<BufferedImage> iterator = this.thumbnails.values().iterator();
+
+		while (this.totalBytes > this.maxBytes && iterator.hasNext())
+		{
+			this.totalBytes -= getByteCount(iterator.next());
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Sets the maximum total size of the thumbnails, removing thumbnails if it is already exceeded.
+	 *
+	 * @param maxBytes - The maximum size, in bytes.
+	 */
+	public synchronized void setMaxBytes(long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+		this.trim();
+	}
+
+	public synchronized long getMaxBytes()
+	{
+		return this.maxBytes;
+	}
+
+	/**
+	 * Gets the total size of the thumbnails that are held.
+	 *
+	 * @return The size in bytes.
+	 */
+	public synchronized long getTotalBytes()
+	{
+		return this.totalBytes;
+	}
+
+	public synchronized int getThumbnailCount()
+	{
+		return this.thumbnails.size();
+	}
+
+	/**
+	 * Scales an image down to a square thumbnail.
+	 *
+	 * The image is halved in size with bilinear interpolation until it is within twice the size of the thumbnail, then
+	 * scaled to the final size. This is much faster than an area averaging filter and gives similar results, as each
+	 * step samples every pixel of the one before.
+	 */
+	static BufferedImage scale(BufferedImage image, int size)
+	{
+		int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+		BufferedImage scaled = image;
+		int width = image.getWidth();
+		int height = image.getHeight();
+
+		do
+		{
+			width = (width > size * 2) ? width / 2 : size;
+			height = (height > size * 2) ? height / 2 : size;
+
+			BufferedImage step = new BufferedImage(width, height, type);
+			Graphics2D graphics = step.createGraphics();
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			graphics.drawImage(scaled, 0, 0, width, height, null);
+			graphics.dispose();
+
+			scaled = step;
+		}
+		while (width != size || height != size);
+
+		return scaled;
+	}
+
+	/**
+	 * Gets the approximate memory used by an image, assuming a 32-bit pixel.
+	 */
+	private static long getByteCount(BufferedImage image)
+	{
+		return 4L * image.getWidth() * image.getHeight();
+	}
+
+	/**
+	 * Gets the key of a thumbnail.
+	 */
+	private static String getKey(String imageHash, int size)
+	{
+		return imageHash + ":" + size;
+	}
+
+	/**
+	 * Gets the hash of image data, identifying images with the same contents.
+	 */
+	private static String getHash(byte[] imageData)
+	{
+		try
+		{
+			return new BigInteger(1, MessageDigest.getInstance("SHA-1").digest(imageData)).toString(16);
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// Every Java platform is required to support SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,491 @@
+package com.pe;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.pe.audio.FrameIndex;
+
+/**
+ * Class that creates and interacts with the metadata.cache file, which stores the metadata of previously read songs
+ * so that their files don't need to be parsed again.
+ *
+ * Entries are keyed by the absolute path of the file and are only used if the size and last modified time of the file
+ * are unchanged. Stale entries are removed when they are found, and the least recently used entries are removed once
+ * the cache is full.
+ *
+ * Once a file has been scanned frame by frame, its entry also holds the exact length and a seek table, so that it can
+ * be played and seeked without being scanned again.
+ *
+ * @author olly.rowe
+ */
+public class MetadataCache
+{
+	// The metadata.cache file name, stored alongside defaults.conf
+	private static final String FILE_NAME = "metadata.cache";
+
+	// Identifies the file format, the version is incremented whenever the format changes
+	private static final int FILE_MAGIC = 0x50454D43;
+	private static final int FILE_VERSION = 2;
+
+	// The default maximum number of entries
+	public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+	// The cache shared by all songs
+	private static MetadataCache instance;
+
+	// The cache file
+	private File file;
+
+	// The maximum number of entries
+	private int maxEntries;
+
+	// The entries, in least recently used order
+	private LinkedHashMap<String, CacheEntry> entries;
+
+	// Whether the entries have changed since the file was last read or written
+	private boolean isModified = false;
+
+	// The number of lookups that were and weren't found in the cache
+	private long hits;
+	private long misses;
+
+	/**
+	 * Class Constructor. Will detect an existing cache file and read it.
+	 *
+	 * @param file - The cache file.
+	 * @param maxEntries - The maximum number of entries to be held.
+	 */
+	public MetadataCache(File file, int maxEntries)
+	{
+		this.file = file;
+		this.maxEntries = maxEntries;
+
+		// Order the entries by access so that the least recently used entry is removed first
+		this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest)
+			{
+				return this.size() > MetadataCache.this.maxEntries;
+			}
+		};
+
+		// If the file exists, then attempt to read it
+		if (this.file.exists())
+		{
+			this.readFromFile();
+		}
+	}
+
+	/**
+	 * Gets the cache shared by all songs, reading it from the metadata.cache file upon first use.
+	 *
+	 * @return The shared cache.
+	 */
+	public static synchronized MetadataCache getInstance()
+	{
+		if (instance == null)
+		{
+			instance = new MetadataCache(new File(FILE_NAME), DEFAULT_MAX_ENTRIES);
+		}
+		return instance;
+	}
+
+	/**
+	 * Looks up the metadata of a file.
+	 *
+	 * @param path - The absolute path of the file.
+	 * @param attributes - The current attributes of the file.
+	 * @return The cached metadata, or null if there is none or the file has changed since it was cached.
+	 */
+	public synchronized CacheEntry get(String path, BasicFileAttributes attributes)
+	{
+		CacheEntry entry = this.getValidEntry(path, attributes);
+
+		if (entry == null)
+		{
+			this.misses++;
+		}
+		else
+		{
+			this.hits++;
+		}
+		return entry;
+	}
+
+	/**
+	 * Gets the entry of a file, removing it if the file has changed since it was cached.
+	 *
+	 * @return The entry, or null if there is no valid entry.
+	 */
+	private CacheEntry getValidEntry(String path, BasicFileAttributes attributes)
+	{
+		CacheEntry entry = this.entries.get(path);
+
+		// Check that the file hasn't changed since the entry was created
+		if (entry != null && (entry.size != attributes.size() || entry.lastModified != attributes.lastModifiedTime().toMillis()))
+		{
+			// Remove the stale entry
+			this.entries.remove(path);
+			this.isModified = true;
+			entry = null;
+		}
+		return entry;
+	}
+
+	/**
+	 * Looks up the seek table of a file.
+	 *
+	 * @param path - The absolute path of the file.
+	 * @param attributes - The current attributes of the file.
+	 * @return The seek table, or null if the file hasn't been scanned since it last changed.
+	 */
+	public synchronized FrameIndex getSeekTable(String path, BasicFileAttributes attributes)
+	{
+		CacheEntry entry = this.getValidEntry(path, attributes);
+		return (entry == null) ? null : entry.seekTable;
+	}
+
+	/**
+	 * Stores the seek table of a file alongside its metadata, which also sets the exact length of the file. Nothing is
+	 * stored if the metadata of the file isn't cached. The entry is replaced rather than changed, as the existing entry
+	 * may already be in use.
+	 *
+	 * @param path - The absolute path of the file.
+	 * @param attributes - The attributes of the file at the time that it was scanned.
+	 * @param seekTable - The seek table of the file.
+	 */
+	public synchronized void putSeekTable(String path, BasicFileAttributes attributes, FrameIndex seekTable)
+	{
+		CacheEntry entry = this.getValidEntry(path, attributes);
+
+		if (entry != null)
+		{
+			this.entries.put(path, new CacheEntry(entry.size, entry.lastModified, entry.title, entry.artist, entry.album,
+					seekTable.getDurationMillis(), true, entry.hasAlbumArt, seekTable));
+			this.isModified = true;
+		}
+	}
+
+	/**
+	 * Adds or replaces the metadata of a file.
+	 *
+	 * @param path - The absolute path of the file.
+	 * @param attributes - The attributes of the file at the time that it was read.
+	 * @param entry - The metadata of the file.
+	 */
+	public synchronized void put(String path, BasicFileAttributes attributes, CacheEntry entry)
+	{
+		this.entries.put(path, new CacheEntry(attributes.size(), attributes.lastModifiedTime().toMillis(), entry.title, entry.artist,
+				entry.album, entry.lengthInMilliseconds, entry.isLengthExact, entry.hasAlbumArt, entry.seekTable));
+		this.isModified = true;
+	}
+
+	/**
+	 * Reads the entries from the cache file. If the file is unreadable then it is ignored and the cache starts empty.
+	 */
+	private void readFromFile()
+	{
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file))))
+		{
+			// Ignore files written in a different format
+			if (input.readInt() != FILE_MAGIC || input.readInt() != FILE_VERSION)
+			{
+				return;
+			}
+
+			int count = input.readInt();
+
+			for (int i = 0; i < count; i++)
+			{
+				String path = input.readUTF();
+
+				long size = input.readLong();
+				long lastModified = input.readLong();
+				String title = input.readUTF();
+				String artist = input.readUTF();
+				String album = input.readUTF();
+				long lengthInMilliseconds = input.readLong();
+				boolean isLengthExact = input.readBoolean();
+				boolean hasAlbumArt = input.readBoolean();
+				FrameIndex seekTable = input.readBoolean() ? FrameIndex.read(input) : null;
+
+				this.entries.put(path, new CacheEntry(size, lastModified, title, artist, album, lengthInMilliseconds, isLengthExact,
+						hasAlbumArt, seekTable));
+			}
+		}
+		catch (IOException e)
+		{
+			// The file is incomplete or corrupt, start again with an empty cache
+			System.err.println("Unable to read " + this.file.getName() + ", the metadata cache will be rebuilt.");
+			this.entries.clear();
+		}
+	}
+
+	/**
+	 * Saves the entries to the cache file, if they have changed since it was read.
+	 */
+	public synchronized void saveToFile()
+	{
+		if (!this.isModified)
+		{
+			return;
+		}
+
+		// Write to a temporary file first so that an interrupted save doesn't corrupt the existing cache
+		File tempFile = new File(this.file.getAbsolutePath() + ".tmp");
+
+		try
+		{
+			try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile))))
+			{
+				output.writeInt(FILE_MAGIC);
+				output.writeInt(FILE_VERSION);
+				output.writeInt(this.entries.size());
+
+				for (Map.Entry<String, CacheEntry> mapEntry : this.entries.entrySet())
+				{
+					CacheEntry entry = mapEntry.getValue();
+
+					output.writeUTF(mapEntry.getKey());
+					output.writeLong(entry.size);
+					output.writeLong(entry.lastModified);
+					output.writeUTF(entry.title);
+					output.writeUTF(entry.artist);
+					output.writeUTF(entry.album);
+					output.writeLong(entry.lengthInMilliseconds);
+					output.writeBoolean(entry.isLengthExact);
+					output.writeBoolean(entry.hasAlbumArt);
+
+					output.writeBoolean(entry.seekTable != null);
+					if (entry.seekTable != null)
+					{
+						entry.seekTable.write(output);
+					}
+				}
+			}
+			Files.move(tempFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+			this.isModified = false;
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Removes the entries of files that no longer exist or have changed since they were cached.
+	 *
+	 * @return The number of entries removed.
+	 */
+	public int removeStaleEntries()
+	{
+		// Copy the paths so that the files can be checked without holding the lock
+		List<Map.Entry<String, CacheEntry>> snapshot;
+		synchronized (this)
+		{
+			snapshot = new ArrayList<Map.Entry<String, CacheEntry>>(this.entries.entrySet());
+		}
+
+		int removed = 0;
+
+		for (Map.Entry<String, CacheEntry> mapEntry : snapshot)
+		{
+			File songFile = new File(mapEntry.getKey());
+			CacheEntry entry = mapEntry.getValue();
+
+			if (!songFile.isFile() || songFile.length() != entry.size || songFile.lastModified() != entry.lastModified)
+			{
+				synchronized (this)
+				{
+					// Only remove the entry if it hasn't been replaced in the meantime
+					if (this.entries.get(mapEntry.getKey()) == entry)
+					{
+						this.entries.remove(mapEntry.getKey());
+						this.isModified = true;
+						removed++;
+					}
+				}
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Sets the maximum number of entries, removing the least recently used entries if there are now too many.
+	 *
+	 * @param maxEntries - The maximum number of entries.
+	 */
+	public synchronized void setMaxEntries(int maxEntries)
+	{
+		this.maxEntries = maxEntries;
+
+		while (this.entries.size() > maxEntries)
+		{
+			this.entries.remove(this.entries.keySet().iterator().next());
+			this.isModified = true;
+		}
+	}
+
+	public synchronized int getMaxEntries()
+	{
+		return this.maxEntries;
+	}
+
+	public synchronized int getSize()
+	{
+		return this.entries.size();
+	}
+
+	/**
+	 * Gets the number of lookups that found a valid entry.
+	 *
+	 * @return The number of cache hits.
+	 */
+	public synchronized long getHits()
+	{
+		return this.hits;
+	}
+
+	/**
+	 * Gets the number of lookups that didn't find a valid entry.
+	 *
+	 * @return The number of cache misses.
+	 */
+	public synchronized long getMisses()
+	{
+		return this.misses;
+	}
+
+	/**
+	 * Represents the cached metadata of a single file. Entries are never changed once created, so they can be read
+	 * without holding the lock of the cache.
+	 */
+	public static class CacheEntry
+	{
+		// The size and last modified time of the file when it was read
+		private final long size;
+		private final long lastModified;
+
+		// The metadata of the file
+		private final String title;
+		private final String artist;
+		private final String album;
+		private final long lengthInMilliseconds;
+		// Whether the length was calculated from every frame, rather than estimated from the headers
+		private final boolean isLengthExact;
+		private final boolean hasAlbumArt;
+		// The seek table of the file, null if it hasn't been scanned
+		private final FrameIndex seekTable;
+
+		/**
+		 * Class Constructor.
+		 *
+		 * @param title - The song title.
+		 * @param artist - The artist.
+		 * @param album - The album.
+		 * @param lengthInMilliseconds - The length of the song.
+		 * @param isLengthExact - Whether the length was calculated from every frame.
+		 * @param hasAlbumArt - Whether the file contains album art.
+		 */
+		public CacheEntry(String title, String artist, String album, long lengthInMilliseconds, boolean isLengthExact, boolean hasAlbumArt)
+		{
+			this(title, artist, album, lengthInMilliseconds, isLengthExact, hasAlbumArt, null);
+		}
+
+		/**
+		 * Alternative Class Constructor, for a file that has been scanned frame by frame.
+		 *
+		 * @param title - The song title.
+		 * @param artist - The artist.
+		 * @param album - The album.
+		 * @param lengthInMilliseconds - The length of the song.
+		 * @param isLengthExact - Whether the length was calculated from every frame.
+		 * @param hasAlbumArt - Whether the file contains album art.
+		 * @param seekTable - The seek table of the file, or null.
+		 */
+		public CacheEntry(String title, String artist, String album, long lengthInMilliseconds, boolean isLengthExact, boolean hasAlbumArt,
+				FrameIndex seekTable)
+		{
+			this(0, 0, title, artist, album, lengthInMilliseconds, isLengthExact, hasAlbumArt, seekTable);
+		}
+
+		/**
+		 * Alternative Class Constructor, for an entry stored in the cache.
+		 *
+		 * @param size - The size of the file when it was read.
+		 * @param lastModified - The last modified time of the file when it was read.
+		 * @param title - The song title.
+		 * @param artist - The artist.
+		 * @param album - The album.
+		 * @param lengthInMilliseconds - The length of the song.
+		 * @param isLengthExact - Whether the length was calculated from every frame.
+		 * @param hasAlbumArt - Whether the file contains album art.
+		 * @param seekTable - The seek table of the file, or null.
+		 */
+		private CacheEntry(long size, long lastModified, String title, String artist, String album, long lengthInMilliseconds,
+				boolean isLengthExact, boolean hasAlbumArt, FrameIndex seekTable)
+		{
+			this.size = size;
+			this.lastModified = lastModified;
+			this.title = title;
+			this.artist = artist;
+			this.album = album;
+			this.lengthInMilliseconds = lengthInMilliseconds;
+			this.isLengthExact = isLengthExact;
+			this.hasAlbumArt = hasAlbumArt;
+			this.seekTable = seekTable;
+		}
+
+		public String getTitle()
+		{
+			return this.title;
+		}
+
+		public String getArtist()
+		{
+			return this.artist;
+		}
+
+		public String getAlbum()
+		{
+			return this.album;
+		}
+
+		public long getLengthInMilliseconds()
+		{
+			return this.lengthInMilliseconds;
+		}
+
+		public boolean isLengthExact()
+		{
+			return this.isLengthExact;
+		}
+
+		public boolean hasAlbumArt()
+		{
+			return this.hasAlbumArt;
+		}
+
+		public FrameIndex getSeekTable()
+		{
+			return this.seekTable;
+		}
+	}
+}
@@ -0,0 +1,343 @@
+package com.pe;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The order in which the songs of a playlist are played, either in playlist order or shuffled, and whether the
+ * playlist or a single song repeats.
+ *
+ * A shuffled order is a permutation of the song indices, held with its inverse so that the songs before and after any
+ * song are found in constant time. The permutation is only generated when it is first needed after shuffling is turned
+ * on or the playlist is replaced. As a listener of the playlist, added songs are placed at random positions after the
+ * current song, removed songs are taken out and swapped songs swap places, so the rest of the order is kept.
+ *
+ * @author olly.rowe
+ */
+public class PlayOrder implements PlaylistListener
+{
+	/**
+	 * What is played once the last song of the order has finished, or once a song has finished.
+	 */
+	public enum RepeatMode
+	{
+		// Stop after the last song
+		OFF,
+		// Play the same song again, until a different song is skipped to
+		ONE,
+		// Start the order again after the last song
+		ALL
+	}
+
+	// The source of the shuffled orders
+	private final Random random = new Random();
+
+	// The number of songs on the playlist
+	private int size;
+
+	// Whether the songs are shuffled, and the repeat mode
+	private boolean isShuffled = false;
+	private RepeatMode repeatMode = RepeatMode.OFF;
+
+	// The index of the song at each position of the shuffled order, null until the order is needed
+	private int[] order;
+	// The position within the shuffled order of the song at each index
+	private int[] positions;
+
+	// The position of the song most recently moved on from, after which added songs are placed
+	private int currentPosition = -1;
+
+	/**
+	 * Class Constructor.
+	 *
+	 * @param size - The number of songs on the playlist.
+	 */
+	public PlayOrder(int size)
+	{
+		this.size = size;
+	}
+
+	/**
+	 * Starts again for a different playlist, discarding the shuffled order.
+	 *
+	 * @param size - The number of songs on the playlist.
+	 */
+	public void reset(int size)
+	{
+		this.size = size;
+		this.order = null;
+		this.positions = null;
+		this.currentPosition = -1;
+	}
+
+	/**
+	 * Gets the index of the first song to be played.
+	 *
+	 * @return The index, or -1 if the playlist is empty.
+	 */
+	public int getFirstIndex()
+	{
+		return (this.size == 0) ? -1 : this.getIndexAt(0);
+	}
+
+	/**
+	 * Gets the index of the song that follows a song.
+	 *
+	 * @param index - The index of the song, or -1 if the song isn't on the playlist.
+	 * @param isSkipping - Whether the user is skipping the song, rather than it having finished, in which case a
+	 *            repeated song is moved on from.
+	 * @return The index of the following song, or -1 if playback should stop.
+	 */
+	public int getNextIndex(int index, boolean isSkipping)
+	{
+		if (index < 0 || index >= this.size)
+		{
+			return this.getFirstIndex();
+		}
+		if (!isSkipping && this.repeatMode == RepeatMode.ONE)
+		{
+			return index;
+		}
+
+		int position = this.getPositionOf(index);
+		this.currentPosition = position;
+
+		if (position + 1 < this.size)
+		{
+			return this.getIndexAt(position + 1);
+		}
+		return (this.repeatMode == RepeatMode.ALL) ? this.getIndexAt(0) : -1;
+	}
+
+	/**
+	 * Gets the index of the song that comes before a song.
+	 *
+	 * @param index - The index of the song.
+	 * @return The index of the previous song, or -1 if the song is the first one.
+	 */
+	public int getPreviousIndex(int index)
+	{
+		if (index < 0 || index >= this.size)
+		{
+			return -1;
+		}
+
+		int position = this.getPositionOf(index);
+		this.currentPosition = position;
+
+		if (position > 0)
+		{
+			return this.getIndexAt(position - 1);
+		}
+		return (this.repeatMode == RepeatMode.ALL) ? this.getIndexAt(this.size - 1) : -1;
+	}
+
+	/**
+	 * Gets the position of a song within the order.
+	 */
+	private int getPositionOf(int index)
+	{
+		if (!this.isShuffled)
+		{
+			return index;
+		}
+		this.shuffle(index);
+		return this.positions[index];
+	}
+
+	/**
+	 * Gets the index of the song at a position within the order.
+	 */
+	private int getIndexAt(int position)
+	{
+		if (!this.isShuffled)
+		{
+			return position;
+		}
+		this.shuffle(-1);
+		return this.order[position];
+	}
+
+	/**
+	 * Generates the shuffled order with a Fisher-Yates shuffle, unless it has already been generated.
+	 *
+	 * @param firstIndex - The index of the song to be placed first, such as the one playing when shuffle was turned
+	 *            on, or -1 to leave every song at a random position.
+	 */
+	private void shuffle(int firstIndex)
+	{
+		if (this.order != null)
+		{
+			return;
+		}
+
+		this.order = new int[Math.max(16, this.size)];
+		this.positions = new int[this.order.length];
+
+		for (int i = 0; i < this.size; i++)
+		{
+			this.order[i] = i;
+		}
+		for (int i = this.size - 1; i > 0; i--)
+		{
+			int j = this.random.nextInt(i + 1);
+			int swapped = this.order[i];
+			this.order[i] = this.order[j];
+			this.order[j] = swapped;
+		}
+		for (int position = 0; position < this.size; position++)
+		{
+			this.positions[this.order[position]] = position;
+		}
+
+		if (firstIndex >= 0)
+		{
+			this.swapPositions(0, this.positions[firstIndex]);
+			this.currentPosition = 0;
+		}
+	}
+
+	/**
+	 * Swaps the songs at two positions of the shuffled order.
+	 */
+	private void swapPositions(int position1, int position2)
+	{
+		int index1 = this.order[position1];
+		int index2 = this.order[position2];
+
+		this.order[position1] = index2;
+		this.order[position2] = index1;
+		this.positions[index2] = position1;
+		this.positions[index1] = position2;
+	}
+
+	@Override
+	public void songsAdded(int firstIndex, int lastIndex)
+	{
+		int count = lastIndex - firstIndex + 1;
+
+		if (this.order == null)
+		{
+			this.size += count;
+			return;
+		}
+
+		if (this.size + count > this.order.length)
+		{
+			int capacity = Math.max(this.size + count, this.order.length * 2);
+			this.order = Arrays.copyOf(this.order, capacity);
+			this.positions = Arrays.copyOf(this.positions, capacity);
+		}
+
+		// Songs inserted part way through the playlist move the songs after them down
+		if (firstIndex < this.size)
+		{
+			for (int position = 0; position < this.size; position++)
+			{
+				if (this.order[position] >= firstIndex)
+				{
+					this.order[position] += count;
+				}
+			}
+			System.arraycopy(this.positions, firstIndex, this.positions, lastIndex + 1, this.size - firstIndex);
+		}
+
+		for (int index = firstIndex; index <= lastIndex; index++)
+		{
+			// Add the song to the end, then swap it to a random position among the songs still to be played
+			int position = this.size++;
+			this.order[position] = index;
+			this.positions[index] = position;
+
+			int firstUnplayed = this.currentPosition + 1;
+			this.swapPositions(position, firstUnplayed + this.random.nextInt(position - firstUnplayed + 1));
+		}
+	}
+
+	@Override
+	public void songsRemoved(int firstIndex, int lastIndex)
+	{
+		int count = lastIndex - firstIndex + 1;
+
+		if (this.order == null)
+		{
+			this.size -= count;
+			return;
+		}
+
+		// Take the songs out of the order, keeping the order of the rest
+		int kept = 0;
+		for (int position = 0; position < this.size; position++)
+		{
+			int index = this.order[position];
+
+			if (index >= firstIndex && index <= lastIndex)
+			{
+				if (position <= this.currentPosition)
+				{
+					this.currentPosition--;
+				}
+				continue;
+			}
+			this.order[kept++] = (index > lastIndex) ? index - count : index;
+		}
+		this.size = kept;
+
+		for (int position = 0; position < this.size; position++)
+		{
+			this.positions[this.order[position]] = position;
+		}
+	}
+
+	@Override
+	public void songsChanged(int firstIndex, int lastIndex)
+	{
+		// The songs are still at the same indices
+	}
+
+	@Override
+	public void songsSwapped(int index1, int index2)
+	{
+		// The songs keep their places in the shuffled order, at their new indices
+		if (this.order != null)
+		{
+			this.swapPositions(this.positions[index1], this.positions[index2]);
+		}
+	}
+
+	/**
+	 * Turns shuffling on or off. A new shuffled order is generated each time shuffling is turned on.
+	 *
+	 * @param isShuffled - Whether the songs are shuffled.
+	 */
+	public void setShuffled(boolean isShuffled)
+	{
+		if (isShuffled != this.isShuffled)
+		{
+			this.isShuffled = isShuffled;
+			this.order = null;
+			this.positions = null;
+			this.currentPosition = -1;
+		}
+	}
+
+	public boolean isShuffled()
+	{
+		return this.isShuffled;
+	}
+
+	public void setRepeatMode(RepeatMode repeatMode)
+	{
+		this.repeatMode = repeatMode;
+	}
+
+	public RepeatMode getRepeatMode()
+	{
+		return this.repeatMode;
+	}
+
+	public int getSize()
+	{
+		return this.size;
+	}
+}
@@ -2,27 +2,18 @@ package com.pe;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.StringWriter;
-import java.nio.file.Files;
-import java.io.PrintWriter;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
+import com.pe.formats.PlaylistEntry;
+import com.pe.formats.PlaylistFormat;
+import com.pe.formats.PlaylistFormats;
+import com.pe.formats.WplWriter;
 
 /**
  * Represents a playlist.
@@ -36,13 +27,61 @@ public class Playlist
 	private String author;
 	private ArrayList<Song> songs;
 	
+	// The position of each song, so that songs can be found without searching the list. Songs are compared by
+	// identity, so the same file may be added more than once as separate songs
+	private Map<Song, Integer> songPositions = new IdentityHashMap<Song, Integer>();
+	
+	// The number of songs at the start of the playlist whose positions are up to date. The positions of the songs
+	// that follow are worked out when next needed, so that removing many songs only updates them once
+	private int indexedSongCount;
+	
+	// The number of extra times that songs are listed, so that each position held is that of a song's first occurrence
+	private int repeatedSongCount;
+	
 	// The file to where the playlist is stored
 	private File file;
 	
+	// The number of changes made to the songs
+	private long modificationCount;
+	
+	// The state of the playlist when it was last saved or loaded, used to identify whether it has since changed
+	private long savedModificationCount = -1;
+	private String savedName;
+	private String savedAuthor;
+	private long savedFileLength = -1;
+	private long savedFileLastModified = -1;
+	
+	// The running totals of the songs
+	private PlaylistStats stats = new PlaylistStats();
+	
+	// The listeners to be notified of changes to the songs
+	private List<PlaylistListener> listeners = new ArrayList<PlaylistListener>();
+	
+	// The songs that could not be read when loading the playlist from its file
+	private List<PlaylistLoader.Failure> loadFailures;
+	
+	// The number of songs taken from the loader at a time when loading a playlist, between reports of progress
+	private static final int LOAD_BATCH_SIZE = 100;
+	
 	// Parser constants
 	public static final String WPL = "wpl";
 	public static final String M3U = "m3u";
-	private static final String WPL_FILE_PREFIX = "<?wpl version=\"1.0\"?>";
+	public static final String M3U8 = "m3u8";
+	public static final String PLS = "pls";
+	
+	/**
+	 * Receives the progress of loading a playlist from its file. Called on the thread loading the playlist.
+	 */
+	public interface ProgressListener
+	{
+		/**
+		 * Called each time more of the songs have been read.
+		 * 
+		 * @param readCount - The number of songs read so far, including those that couldn't be read.
+		 * @param totalCount - The number of songs listed by the file.
+		 */
+		void progressed(int readCount, int totalCount);
+	}
 	
 	/**
 	 * Class Constructor for new playlist.
@@ -52,55 +91,140 @@ public class Playlist
 		this.name = new String();
 		this.author = new String();
 		this.songs = new ArrayList<Song>();
+		this.loadFailures = new ArrayList<PlaylistLoader.Failure>();
 	}
 	
 	/**
-	 *  Alternative Class Constructor for existing files.
+	 *  Alternative Class Constructor for existing files. Songs are read using the default number of threads, taking
+	 *  their details from the file where it holds them.
 	 *  
 	 *  @param File - The file containing the playlist data.
 	 */
 	public Playlist(File file) throws FileNotFoundException
+	{
+		this(file, PlaylistLoader.getDefaultThreads(), true);
+	}
+	
+	/**
+	 *  Alternative Class Constructor for existing files.
+	 *  
+	 *  Songs that cannot be read are skipped and can be retrieved afterwards using {@link #getLoadFailures()}.
+	 *  
+	 *  In fast open mode the details of each song are taken from the playlist file where it holds them, such as the
+	 *  title and duration attributes written to WPL files, so that each song's file is only checked for existence and
+	 *  modification. Such songs can be read afterwards using {@link #updateSongDetails(Song, Song)}.
+	 *  
+	 *  @param File - The file containing the playlist data.
+	 *  @param threads - The maximum number of songs to be read at the same time.
+	 *  @param isFastOpen - Whether to use the details held within the playlist file rather than reading every song.
+	 */
+	public Playlist(File file, int threads, final boolean isFastOpen) throws FileNotFoundException
+	{
+		this(file, threads, isFastOpen, null);
+	}
+	
+	/**
+	 *  Alternative Class Constructor for existing files, reporting the progress of reading the songs.
+	 *  
+	 *  If the thread is interrupted while the songs are being read then the songs that haven't yet been read are
+	 *  abandoned, and the playlist holds only those read so far.
+	 *  
+	 *  @param File - The file containing the playlist data.
+	 *  @param threads - The maximum number of songs to be read at the same time.
+	 *  @param isFastOpen - Whether to use the details held within the playlist file rather than reading every song.
+	 *  @param listener - The listener to be notified of progress, or null.
+	 */
+	public Playlist(File file, int threads, final boolean isFastOpen, ProgressListener listener) throws FileNotFoundException
 	{
 		// Set the file
 		this.file = file;
 		
 		// Initialise the songs array
 		this.songs = new ArrayList<Song>();
+		this.loadFailures = new ArrayList<PlaylistLoader.Failure>();
 				
-		// Check that the correct file type as been passed
-		if (file.getName().endsWith(".wpl"))
+		// Find the format of the file from its extension
+		PlaylistFormat format = PlaylistFormats.forFile(file);
+		
+		if (format != null)
 		{
+			// Default to blank details in case the file doesn't contain them
+			this.name = new String();
+			this.author = new String();
+			
+			// Read the songs concurrently as they are parsed, keeping them in playlist order
+			final PlaylistLoader loader = new PlaylistLoader(threads);
+			
+			// Whether the whole file was read without error
+			boolean isRead = false;
+			
+			// The details held within the file are only used for songs that haven't since been modified
+			final long fileLastModified = isFastOpen ? file.lastModified() : 0;
+			
 			// Try to read the data from the file
 			try
 			{
-				DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-				DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
-				Document doc = docBuilder.parse(file);
-				Node titleNode = doc.getElementsByTagName("title").item(0);
-												
-				this.name = titleNode.getTextContent();
-				
-				Node authorNode = doc.getElementsByTagName("author").item(0);
-				
-				this.author = authorNode.getTextContent();
-												
-				NodeList mediaNodes = doc.getElementsByTagName("media");
-				
-				for (int i = 0; i < mediaNodes.getLength(); i++)
-				{										
-					Song song = new Song(mediaNodes.item(i).getAttributes().getNamedItem("src").getTextContent());
-										
-					this.songs.add(song);
-				}
+				format.read(file, new PlaylistFormat.Listener()
+				{
+					@Override
+					public void titleRead(String title)
+					{
+						name = title;
+					}
+					
+					@Override
+					public void authorRead(String author)
+					{
+						Playlist.this.author = author;
+					}
+					
+					@Override
+					public void entryRead(PlaylistEntry entry)
+					{
+						if (isFastOpen)
+						{
+							loader.submit(entry, fileLastModified);
+						}
+						else
+						{
+							loader.submit(entry.getPath());
+						}
+					}
+				});
+				isRead = true;
 			}
 			catch (FileNotFoundException e)
 			{
 				throw new FileNotFoundException();
 			}
-			catch (ParserConfigurationException | SAXException | IOException e)
+			catch (IOException e)
 			{
 				e.printStackTrace();
 			}
+			
+			// Wait for the songs that were found to be read, even if the file was only partially parsed
+			while (loader.getTakenCount() < loader.getSubmittedCount() && !Thread.currentThread().isInterrupted())
+			{
+				for (Song song : loader.takeSongs(LOAD_BATCH_SIZE, true))
+				{
+					this.appendSong(song);
+				}
+				
+				if (listener != null)
+				{
+					listener.progressed(loader.getTakenCount(), loader.getSubmittedCount());
+				}
+			}
+			
+			// Shut down the loader's threads, abandoning any songs that weren't read
+			loader.cancel();
+			this.loadFailures.addAll(loader.getFailures());
+			
+			// The playlist matches its file unless some of it couldn't be read
+			if (isRead && this.loadFailures.isEmpty())
+			{
+				this.markSaved();
+			}
 		}
 		else
 		{
@@ -110,39 +234,27 @@ public class Playlist
 	
 	/**
 	 * Calls the corresponding parser and writes the output to the file
+	 * 
+	 * @param fileFormat - The extension of the format to be written, such as {@link #WPL} or {@link #M3U8}.
 	 */
 	public void save(String fileFormat)
 	{
-		// Initialise output string
-		String output = "";
-		
 		// Choose the correct parser based on the passed file format value
-		switch(fileFormat)
+		PlaylistFormat format = PlaylistFormats.forExtension(fileFormat);
+		
+		if (format == null)
 		{
-			case WPL:
-			{
-				output = this.parseToWPL();
-				break;
-			}
-			case M3U:
-			{
-				break;
-			}
-			default:
-			{
-				System.err.println("Failed attempt to save playist. Unsupported file format: " + fileFormat);
-				return;
-			}
+			System.err.println("Failed attempt to save playist. Unsupported file format: " + fileFormat);
+			return;
 		}
 		
-		// Write the output to the file
 		try
 		{
-			PrintWriter pw = new PrintWriter(this.getFile().getAbsolutePath());
-			pw.println(output);
-			pw.close();
+			// Stream the playlist straight to the file
+			format.write(this, this.getFile());
+			this.markSaved();
 		}
-		catch (FileNotFoundException e)
+		catch (IOException e)
 		{
 			e.printStackTrace();
 		}
@@ -150,90 +262,24 @@ public class Playlist
 	
 	/**
 	 * Parser for WPL file format.
+	 * 
+	 * @return The playlist in the WPL format, without a trailing line separator.
 	 */
 	public String parseToWPL()
 	{
-		// Initialise the output string
-        String output = WPL_FILE_PREFIX;
-        
-        // Attempt to parse playlist
-        try
-        {
-        	// Adapted from: https://examples.javacodegeeks.com/core-java/xml/parsers/documentbuilderfactory/create-xml-file-in-java-using-dom-parser-example/
-            DocumentBuilderFactory documentFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder documentBuilder = documentFactory.newDocumentBuilder();
-            Document document = documentBuilder.newDocument();
-            
-            Element smil = document.createElement("smil");
-            document.appendChild(smil);
- 
-            Element head = document.createElement("head");
- 
-            smil.appendChild(head);
-            
-            Element title = document.createElement("title");
-            
-            title.appendChild(document.createTextNode(this.getName()));
-            
-            head.appendChild(title);
-            
-            Element author = document.createElement("author");
-            
-            author.appendChild(document.createTextNode(this.getAuthor()));
-            
-            head.appendChild(author);
-            
-            Element body = document.createElement("body");
-            
-            smil.appendChild(body);
-            
-            Element seq = document.createElement("seq");
-            
-            body.appendChild(seq);
-                        
-            for (Song song : this.songs)
-            {
-            	// Create a new media tag for the song
-            	Element media = document.createElement("media");
-            	
-            	// Set the src attribute to the absolute path of its corresponding file location
-            	media.setAttribute("src", song.getFile().getAbsolutePath());
-            	// Set the albumTitle attribute
-            	media.setAttribute("albumTitle", song.getAlbum());
-            	// Set the albumArtist attribute
-            	media.setAttribute("albumArtist", song.getArtist());
-            	// Set the trackTitle attribute
-            	media.setAttribute("trackTitle", song.getTitle());
-            	// Set the trackArtist attribute
-            	media.setAttribute("trackArtist", song.getArtist());
-            	// Set the duration attribute
-            	media.setAttribute("duration", Long.toString(song.getLength()));
-            	
-            	// Add the media tag to the seq tag
-            	seq.appendChild(media);
-            }
-
-            // Create new transformation objects
-            TransformerFactory transformerFactory = TransformerFactory.newInstance();
-            Transformer transformer = transformerFactory.newTransformer();
-            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-            DOMSource domSource = new DOMSource(document);
-            // Create a new StringWriter object to output the result to
-            StringWriter outWriter = new StringWriter();
-            // The stream result, outputting to the String Writer
-            StreamResult streamResult = new StreamResult(outWriter);
-            // Transform the DOM Object to an XML File
-            transformer.transform(domSource, streamResult);
-            StringBuffer sb = outWriter.getBuffer();
-            // Output result to the output string
-            output += sb.toString();
-        }
-        catch (ParserConfigurationException | TransformerException e)
-        {
-            e.printStackTrace();
-        }
-        return output;
-    }
+		StringWriter output = new StringWriter();
+		
+		try
+		{
+			WplWriter.write(this, output);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		// Remove the line separator that follows the output
+		return output.toString().trim();
+	}
 	
 	/**
 	 * Identifies whether this playlist is currently saved.
@@ -257,26 +303,34 @@ public class Playlist
 			// If there is not an associated file then it has not yet been saved
 			return false;
 		}
-		// Parse the current state of this playlist
-		String parserOutput = this.parseToWPL();
 		
-		// Read the corresponding file
-		String fileOutput = new String();
-		try
+		// Check whether the songs have been changed since the playlist was last saved
+		if (this.modificationCount != this.savedModificationCount)
 		{
-			fileOutput = Files.readAllLines(this.file.toPath()).get(0);
-		}
-		catch (IOException e)
-		{
-			e.printStackTrace();
+			return false;
 		}
 		
-		// Compare the file's contents with the parser output and then return whether they match or not
-		if (parserOutput.equals(fileOutput))
+		// Compare the details with their saved values, rather than counting changes, as the text fields set them
+		// more than once for a single edit
+		if (!this.name.equals(this.savedName) || !this.author.equals(this.savedAuthor))
 		{
-			return true;
+			return false;
 		}
-		return false;
+		
+		// Finally check that the file hasn't been changed or deleted by another program since it was saved
+		return this.file.length() == this.savedFileLength && this.file.lastModified() == this.savedFileLastModified;
+	}
+	
+	/**
+	 * Records the current state of this playlist as being the one held within its file.
+	 */
+	private void markSaved()
+	{
+		this.savedModificationCount = this.modificationCount;
+		this.savedName = this.name;
+		this.savedAuthor = this.author;
+		this.savedFileLength = this.file.length();
+		this.savedFileLastModified = this.file.lastModified();
 	}
 
 	public String getName()
@@ -299,9 +353,15 @@ public class Playlist
 		this.author = author;
 	}
 
-	public ArrayList<Song> getSongs()
+	/**
+	 * Gets the songs on this playlist. The list can't be modified, songs must be added, removed and reordered through
+	 * the playlist so that their positions are kept up to date.
+	 * 
+	 * @return The songs, in playlist order.
+	 */
+	public List<Song> getSongs()
 	{
-		return this.songs;
+		return Collections.unmodifiableList(this.songs);
 	}
 	
 	public Song getSong(int index)
@@ -314,9 +374,22 @@ public class Playlist
 		return null;
 	}
 	
+	/**
+	 * Gets the position of a song on this playlist, in constant time.
+	 * 
+	 * @param song - The song.
+	 * @return The index of the song, or of its first occurrence if it is listed more than once, or -1 if it isn't
+	 *         on this playlist.
+	 */
 	public int getIndexOf(Song song)
 	{
-		return this.songs.indexOf(song);
+		if (this.indexedSongCount < this.songs.size())
+		{
+			this.updatePositions();
+		}
+		
+		Integer position = this.songPositions.get(song);
+		return (position == null) ? -1 : position;
 	}
 	
 	public Song getLastSong()
@@ -330,13 +403,89 @@ public class Playlist
 	}
 
 	public void addSong(Song song)
+	{
+		this.appendSong(song);
+		this.modificationCount++;
+		
+		for (PlaylistListener listener : this.listeners)
+		{
+			listener.songsAdded(this.songs.size() - 1, this.songs.size() - 1);
+		}
+	}
+	
+	/**
+	 * Adds songs to the end of the playlist, notifying the listeners once for all of them.
+	 * 
+	 * @param songs - The songs to be added, in order.
+	 */
+	public void addSongs(List<Song> songs)
+	{
+		if (songs.isEmpty())
+		{
+			return;
+		}
+		
+		int firstIndex = this.songs.size();
+		for (Song song : songs)
+		{
+			this.appendSong(song);
+		}
+		this.modificationCount++;
+		
+		for (PlaylistListener listener : this.listeners)
+		{
+			listener.songsAdded(firstIndex, this.songs.size() - 1);
+		}
+	}
+	
+	/**
+	 * Adds a song to the end of the list of songs, recording its position.
+	 * 
+	 * @param song - The song to be added.
+	 */
+	private void appendSong(Song song)
 	{
 		this.songs.add(song);
+		this.stats.add(song);
+		
+		if (this.songPositions.containsKey(song))
+		{
+			this.repeatedSongCount++;
+		}
+		else
+		{
+			this.songPositions.put(song, this.songs.size() - 1);
+		}
+		
+		if (this.indexedSongCount == this.songs.size() - 1)
+		{
+			this.indexedSongCount++;
+		}
 	}
 	
 	public void removeSong(int songIndex)
 	{
-		this.songs.remove(songIndex);
+		Song song = this.songs.remove(songIndex);
+		this.stats.remove(song);
+		this.modificationCount++;
+		
+		// Keep the song's position if it is still listed elsewhere
+		if (this.repeatedSongCount > 0 && this.songs.contains(song))
+		{
+			this.repeatedSongCount--;
+		}
+		else
+		{
+			this.songPositions.remove(song);
+		}
+		
+		// The songs that followed the removed one have moved up a place
+		this.indexedSongCount = Math.min(this.indexedSongCount, songIndex);
+		
+		for (PlaylistListener listener : this.listeners)
+		{
+			listener.songsRemoved(songIndex, songIndex);
+		}
 	}
 	
 	/**
@@ -348,6 +497,113 @@ public class Playlist
 	public void swapSongs(int index1, int index2)
 	{
 		Collections.swap(this.songs, index1, index2);
+		this.modificationCount++;
+		
+		if (this.repeatedSongCount == 0 && Math.max(index1, index2) < this.indexedSongCount)
+		{
+			this.songPositions.put(this.songs.get(index1), index1);
+			this.songPositions.put(this.songs.get(index2), index2);
+		}
+		else
+		{
+			// Swapping may change which occurrence of a repeated song comes first
+			this.indexedSongCount = Math.min(this.indexedSongCount, Math.min(index1, index2));
+		}
+		
+		for (PlaylistListener listener : this.listeners)
+		{
+			listener.songsSwapped(index1, index2);
+		}
+	}
+	
+	/**
+	 * Replaces the details of a song that were taken from the playlist file with those read from its file, updating
+	 * the totals and notifying the listeners.
+	 * 
+	 * @param song - The song on this playlist.
+	 * @param readSong - The same song, read from its file.
+	 */
+	public void updateSongDetails(Song song, Song readSong)
+	{
+		int index = this.getIndexOf(song);
+		if (index < 0)
+		{
+			return;
+		}
+		
+		// Count every occurrence of the song, as each is included within the totals
+		int occurrences = 1;
+		if (this.repeatedSongCount > 0)
+		{
+			for (int i = index + 1; i < this.songs.size(); i++)
+			{
+				if (this.songs.get(i) == song)
+				{
+					occurrences++;
+				}
+			}
+		}
+		
+		for (int i = 0; i < occurrences; i++)
+		{
+			this.stats.remove(song);
+		}
+		song.setDetails(readSong);
+		for (int i = 0; i < occurrences; i++)
+		{
+			this.stats.add(song);
+		}
+		
+		// The song's other occurrences may be anywhere after its first
+		int lastIndex = (occurrences == 1) ? index : this.songs.size() - 1;
+		for (PlaylistListener listener : this.listeners)
+		{
+			listener.songsChanged(index, lastIndex);
+		}
+	}
+	
+	/**
+	 * Records the positions of the songs that follow those whose positions are up to date.
+	 * 
+	 * A song first listed within this range holds an out of date position that is also within the range, whereas a
+	 * song first listed before it holds its correct position, so only the former are updated.
+	 */
+	private void updatePositions()
+	{
+		int start = this.indexedSongCount;
+		
+		// Clear the positions to be updated, so that only the first occurrence of each song is recorded
+		for (int i = start; i < this.songs.size(); i++)
+		{
+			if (this.songPositions.get(this.songs.get(i)) >= start)
+			{
+				this.songPositions.put(this.songs.get(i), -1);
+			}
+		}
+		
+		for (int i = start; i < this.songs.size(); i++)
+		{
+			if (this.songPositions.get(this.songs.get(i)) == -1)
+			{
+				this.songPositions.put(this.songs.get(i), i);
+			}
+		}
+		this.indexedSongCount = this.songs.size();
+	}
+	
+	/**
+	 * Registers a listener to be notified whenever songs are added, removed or reordered.
+	 * 
+	 * @param listener - The listener.
+	 */
+	public void addPlaylistListener(PlaylistListener listener)
+	{
+		this.listeners.add(listener);
+	}
+	
+	public void removePlaylistListener(PlaylistListener listener)
+	{
+		this.listeners.remove(listener);
 	}
 	
 	public File getFile()
@@ -355,6 +611,16 @@ public class Playlist
 		return this.file;
 	}
 	
+	/**
+	 * Gets the songs that could not be read when this playlist was loaded from its file.
+	 * 
+	 * @return The failures, in playlist order.
+	 */
+	public List<PlaylistLoader.Failure> getLoadFailures()
+	{
+		return this.loadFailures;
+	}
+	
 	public void setFile(File file)
 	{
 		this.file = file;
@@ -369,25 +635,23 @@ public class Playlist
 	}
 	
 	/**
-	 * Calculates the total play time of all of the songs on this playlist.
+	 * Gets the running totals of the songs on this playlist, such as their total length. The totals are kept up to
+	 * date as songs are added and removed.
+	 * 
+	 * @return The totals.
+	 */
+	public PlaylistStats getStats()
+	{
+		return this.stats;
+	}
+	
+	/**
+	 * Gets the total play time of all of the songs on this playlist.
 	 * 
 	 * @return - A String value representing the total play time in hours, minutes and seconds.
 	 */
 	public String getPlayTime()
 	{
-		long playTime = 0;
-		
-		for (Song song : this.songs)
-		{
-			playTime += song.getLength();
-		}
-
-	    int hours = (int) playTime / 3600;
-	    int remainder = (int) playTime - hours * 3600;
-	    int mins = remainder / 60;
-	    remainder = remainder - mins * 60;
-	    int secs = remainder;
-	    
-		return (((hours == 0) ? "" : hours + "h ") + ((hours == 0 && mins == 0) ? "" : mins + "m ") + secs + "s");
+		return this.stats.getFormattedPlayTime();
 	}
 }
@@ -0,0 +1,42 @@
+package com.pe;
+
+/**
+ * Receives notifications of changes made to the songs on a playlist, such as to keep a view or the play order of the
+ * playlist up to date without having to read every song again.
+ *
+ * @author olly.rowe
+ */
+public interface PlaylistListener
+{
+	/**
+	 * Called after songs have been added to the playlist.
+	 *
+	 * @param firstIndex - The index of the first song added.
+	 * @param lastIndex - The index of the last song added.
+	 */
+	void songsAdded(int firstIndex, int lastIndex);
+
+	/**
+	 * Called after songs have been removed from the playlist.
+	 *
+	 * @param firstIndex - The index that the first song removed was at.
+	 * @param lastIndex - The index that the last song removed was at.
+	 */
+	void songsRemoved(int firstIndex, int lastIndex);
+
+	/**
+	 * Called after the songs within a range of the playlist have been replaced or reordered.
+	 *
+	 * @param firstIndex - The index of the first song changed.
+	 * @param lastIndex - The index of the last song changed.
+	 */
+	void songsChanged(int firstIndex, int lastIndex);
+
+	/**
+	 * Called after two songs have swapped places on the playlist.
+	 *
+	 * @param index1 - The index of the first song swapped.
+	 * @param index2 - The index of the second song swapped.
+	 */
+	void songsSwapped(int index1, int index2);
+}
@@ -0,0 +1,273 @@
+package com.pe;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.pe.formats.PlaylistEntry;
+
+/**
+ * Reads the metadata of the songs within a playlist concurrently on a bounded pool of worker threads.
+ *
+ * Songs are returned in the order in which their paths were submitted. A song that cannot be read is
+ * recorded as a failure rather than aborting the whole load.
+ *
+ * @author olly.rowe
+ */
+public class PlaylistLoader
+{
+	// The number of worker threads used when none is specified. Reading metadata mostly waits on the disk, so more
+	// threads than processors are used to keep slow or network drives busy
+	private static int defaultThreads = Runtime.getRuntime().availableProcessors() * 2;
+
+	// The pool of worker threads
+	private ExecutorService executor;
+
+	// The paths that have been submitted and their pending results, in submission order
+	private List<String> paths;
+	private List<Future<Song>> results;
+
+	// The songs that could not be read
+	private List<Failure> failures;
+
+	// The number of submitted songs that have already been taken
+	private int takenCount;
+
+	/**
+	 * Class Constructor.
+	 *
+	 * @param threads - The maximum number of songs to be read at the same time.
+	 */
+	public PlaylistLoader(int threads)
+	{
+		this.paths = new ArrayList<String>();
+		this.results = new ArrayList<Future<Song>>();
+		this.failures = new ArrayList<Failure>();
+
+		// Use daemon threads so that an unfinished load never prevents the program from exiting
+		final AtomicInteger threadCount = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "Playlist Loader " + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Alternative Class Constructor. Uses the default number of threads.
+	 */
+	public PlaylistLoader()
+	{
+		this(defaultThreads);
+	}
+
+	/**
+	 * Queues a song to be read. Reading begins immediately if a worker thread is free.
+	 *
+	 * @param path - The string value of the absolute path to the .mp3 file
+	 */
+	public void submit(final String path)
+	{
+		this.paths.add(path);
+		this.results.add(this.executor.submit(new Callable<Song>()
+		{
+			@Override
+			public Song call() throws FileNotFoundException
+			{
+				// Read only the headers of each file, as reading every frame is slow for large playlists
+				return new Song(path, true);
+			}
+		}));
+	}
+
+	/**
+	 * Queues an entry of a playlist file to be read. Reading begins immediately if a worker thread is free.
+	 *
+	 * @param entry - The playlist entry, whose details are used in place of reading the file where possible.
+	 * @param detailsLastModified - The time at which the playlist file was last modified. The details of the entry
+	 *        aren't used for songs whose files have been modified since.
+	 */
+	public void submit(final PlaylistEntry entry, final long detailsLastModified)
+	{
+		this.paths.add(entry.getPath());
+		this.results.add(this.executor.submit(new Callable<Song>()
+		{
+			@Override
+			public Song call() throws FileNotFoundException
+			{
+				return new Song(entry, detailsLastModified);
+			}
+		}));
+	}
+
+	/**
+	 * Waits for all of the submitted songs to be read and shuts down the worker threads.
+	 *
+	 * @return The songs that were read successfully, in the order in which they were submitted.
+	 */
+	public List<Song> getSongs()
+	{
+		List<Song> songs = this.takeSongs(Integer.MAX_VALUE, true);
+		this.executor.shutdown();
+
+		return songs;
+	}
+
+	/**
+	 * Takes the next songs to have been read, in the order in which they were submitted, so that songs can be used
+	 * while the rest are still being read.
+	 *
+	 * @param maxCount - The maximum number of songs to be taken, including those that couldn't be read.
+	 * @param isWaiting - Whether to wait for the songs to be read, rather than stopping at the first song that
+	 *            hasn't yet been read.
+	 * @return The songs that were read successfully, in the order in which they were submitted.
+	 */
+	public List<Song> takeSongs(int maxCount, boolean isWaiting)
+	{
+		List<Song> songs = new ArrayList<Song>();
+		int count = 0;
+
+		while (this.takenCount < this.results.size() && count < maxCount)
+		{
+			Future<Song> result = this.results.get(this.takenCount);
+
+			if (!isWaiting && !result.isDone())
+			{
+				break;
+			}
+
+			try
+			{
+				songs.add(result.get());
+			}
+			catch (ExecutionException e)
+			{
+				// Record the failure and continue with the remaining songs
+				this.failures.add(new Failure(this.paths.get(this.takenCount), e.getCause()));
+			}
+			catch (InterruptedException e)
+			{
+				// Stop waiting, cancelling the songs that have not yet been read
+				this.cancel();
+				Thread.currentThread().interrupt();
+				break;
+			}
+
+			// Release the result now that it has been taken
+			this.results.set(this.takenCount, null);
+			this.takenCount++;
+			count++;
+		}
+		return songs;
+	}
+
+	/**
+	 * Stops reading songs, discarding those that have not yet been read, and shuts down the worker threads.
+	 */
+	public void cancel()
+	{
+		this.executor.shutdownNow();
+
+		// Cancel the songs that were queued but never started, so that nothing waits for them
+		for (int i = this.takenCount; i < this.results.size(); i++)
+		{
+			this.results.get(i).cancel(true);
+		}
+	}
+
+	/**
+	 * Gets the number of songs that have been submitted.
+	 *
+	 * @return The number of songs.
+	 */
+	public int getSubmittedCount()
+	{
+		return this.results.size();
+	}
+
+	/**
+	 * Gets the number of songs that have been taken, including those that couldn't be read.
+	 *
+	 * @return The number of songs.
+	 */
+	public int getTakenCount()
+	{
+		return this.takenCount;
+	}
+
+	/**
+	 * Gets the songs that could not be read. Only complete once {@link #getSongs()} has returned, or once every song
+	 * has been taken.
+	 *
+	 * @return The failures, in the order in which the songs were submitted.
+	 */
+	public List<Failure> getFailures()
+	{
+		return this.failures;
+	}
+
+	/**
+	 * Gets the number of threads used when none is specified.
+	 *
+	 * @return The default number of threads.
+	 */
+	public static int getDefaultThreads()
+	{
+		return defaultThreads;
+	}
+
+	/**
+	 * Sets the number of threads used when none is specified.
+	 *
+	 * @param threads - The default number of threads.
+	 */
+	public static void setDefaultThreads(int threads)
+	{
+		defaultThreads = Math.max(1, threads);
+	}
+
+	/**
+	 * Represents a song that could not be read.
+	 */
+	public static class Failure
+	{
+		// The path of the song
+		private String path;
+		// The reason that the song could not be read
+		private Throwable cause;
+
+		/**
+		 * Class Constructor.
+		 *
+		 * @param path - The path of the song.
+		 * @param cause - The reason that the song could not be read.
+		 */
+		public Failure(String path, Throwable cause)
+		{
+			this.path = path;
+			this.cause = cause;
+		}
+
+		public String getPath()
+		{
+			return this.path;
+		}
+
+		public Throwable getCause()
+		{
+			return this.cause;
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package com.pe;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Running totals of the songs on a playlist. The totals are updated as each song is added or removed, so they can be
+ * read without going through the songs.
+ *
+ * @author olly.rowe
+ */
+public class PlaylistStats
+{
+	// The number of songs
+	private int trackCount;
+
+	// The total length of the songs in milliseconds
+	private long totalLengthInMilliseconds;
+
+	// The total size of the song files in bytes
+	private long totalBytes;
+
+	// The number of songs by each artist and on each album
+	private Map<String, Integer> artistTrackCounts = new HashMap<String, Integer>();
+	private Map<String, Integer> albumTrackCounts = new HashMap<String, Integer>();
+
+	/**
+	 * Adds a song to the totals.
+	 *
+	 * @param song - The song added to the playlist.
+	 */
+	void add(Song song)
+	{
+		this.trackCount++;
+		this.totalLengthInMilliseconds += song.getLengthInMilliseconds();
+		this.totalBytes += song.getSize();
+
+		increment(this.artistTrackCounts, song.getArtist(), 1);
+		increment(this.albumTrackCounts, song.getAlbum(), 1);
+	}
+
+	/**
+	 * Removes a song from the totals.
+	 *
+	 * @param song - The song removed from the playlist.
+	 */
+	void remove(Song song)
+	{
+		this.trackCount--;
+		this.totalLengthInMilliseconds -= song.getLengthInMilliseconds();
+		this.totalBytes -= song.getSize();
+
+		increment(this.artistTrackCounts, song.getArtist(), -1);
+		increment(this.albumTrackCounts, song.getAlbum(), -1);
+	}
+
+	/**
+	 * Adjusts a count, removing it once it reaches zero.
+	 */
+	private static void increment(Map<String, Integer> counts, String key, int amount)
+	{
+		Integer count = counts.get(key);
+		int newCount = ((count == null) ? 0 : count) + amount;
+
+		if (newCount <= 0)
+		{
+			counts.remove(key);
+		}
+		else
+		{
+			counts.put(key, newCount);
+		}
+	}
+
+	public int getTrackCount()
+	{
+		return this.trackCount;
+	}
+
+	public long getTotalLengthInMilliseconds()
+	{
+		return this.totalLengthInMilliseconds;
+	}
+
+	public long getTotalBytes()
+	{
+		return this.totalBytes;
+	}
+
+	/**
+	 * Gets the number of different artists on the playlist.
+	 *
+	 * @return The number of artists.
+	 */
+	public int getArtistCount()
+	{
+		return this.artistTrackCounts.size();
+	}
+
+	/**
+	 * Gets the number of different albums on the playlist.
+	 *
+	 * @return The number of albums.
+	 */
+	public int getAlbumCount()
+	{
+		return this.albumTrackCounts.size();
+	}
+
+	/**
+	 * Gets the number of songs by each artist.
+	 *
+	 * @return The number of songs by artist, which can't be modified.
+	 */
+	public Map<String, Integer> getArtistTrackCounts()
+	{
+		return Collections.unmodifiableMap(this.artistTrackCounts);
+	}
+
+	/**
+	 * Gets the number of songs on each album.
+	 *
+	 * @return The number of songs by album, which can't be modified.
+	 */
+	public Map<String, Integer> getAlbumTrackCounts()
+	{
+		return Collections.unmodifiableMap(this.albumTrackCounts);
+	}
+
+	/**
+	 * Formats the total length of the songs in hours, minutes and seconds, such as "1h 2m 3s".
+	 *
+	 * @return The total length.
+	 */
+	public String getFormattedPlayTime()
+	{
+		long playTime = (this.totalLengthInMilliseconds + 500) / 1000;
+
+		long hours = playTime / 3600;
+		long mins = (playTime % 3600) / 60;
+		long secs = playTime % 60;
+
+		return (((hours == 0) ? "" : hours + "h ") + ((hours == 0 && mins == 0) ? "" : mins + "m ") + secs + "s");
+	}
+}
@@ -1,11 +1,26 @@
 package com.pe;
 
+import com.pe.AlbumArtCache;
 import com.pe.Song;
+import com.pe.PlayOrder;
 import com.pe.Playlist;
+import com.pe.PlaylistStats;
 import com.pe.UserDefaults;
 import com.pe.utils.FileTree;
 import com.pe.utils.FileNode;
+import com.pe.utils.ImportWorker;
+import com.pe.utils.PlaylistOpenWorker;
+import com.pe.utils.SetupWorker;
+import com.pe.utils.SongDetailsWorker;
+import com.pe.utils.SongTableModel;
+import com.pe.utils.SplitWorker;
+import com.pe.utils.BatchSplitWorker;
 import com.pe.audio.MusicPlayer;
+import com.pe.audio.TrackInput;
+import com.pe.formats.PlaylistFormats;
+import com.pe.library.LibraryIndex;
+import com.pe.library.LibrarySearchDialog;
+import com.pe.library.LibraryTrack;
 import java.awt.EventQueue;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
@@ -14,7 +29,6 @@ import javax.swing.border.TitledBorder;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
-import javax.swing.table.DefaultTableModel;
 import javax.swing.tree.TreePath;
 import javax.swing.JTable;
 import javax.swing.UIManager;
@@ -28,13 +42,18 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.awt.event.ActionEvent;
 import javax.swing.JTextField;
 import javax.swing.JTextPane;
@@ -45,8 +64,13 @@ import java.awt.Toolkit;
 import javax.swing.JMenuBar;
 import javax.swing.JMenu;
 import javax.swing.JMenuItem;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JRadioButtonMenuItem;
+import javax.swing.ButtonGroup;
 import javax.swing.JOptionPane;
 import javax.swing.JSeparator;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
 import java.awt.FlowLayout;
 import java.awt.Font;
 import java.awt.Image;
@@ -70,7 +94,7 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 
 	// The song table and table model
 	private JTable songTable;
-	private DefaultTableModel songTableModel;
+	private SongTableModel songTableModel;
 
 	// The playlist details text fields
 	private JTextField playlistNameTextField;
@@ -82,9 +106,16 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 	private JMenuItem mntmNew;
 	private JMenuItem mntmOpen;
 	private JMenuItem mntmSave;
+	private JMenuItem mntmAddFolder;
 	private JMenuItem mntmExit;
 	private JMenuItem mntmSplitTrack;
+	private JMenuItem mntmBatchSplitTrack;
+	private JMenuItem mntmSearchLibrary;
 	private JMenuItem mntmReleaseNotes;
+	private JCheckBoxMenuItem mntmShuffle;
+	private JRadioButtonMenuItem mntmRepeatOff;
+	private JRadioButtonMenuItem mntmRepeatOne;
+	private JRadioButtonMenuItem mntmRepeatAll;
 
 	// The button components
 	private JButton changeDirectoryButton;
@@ -98,6 +129,13 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 	// The file explorer tree
 	private FileTree fileTree;
 
+	// The index of the music library and the dialog used to search it
+	private LibraryIndex libraryIndex;
+	private LibrarySearchDialog librarySearchDialog;
+
+	// Reads the songs of an opened playlist whose details were taken from the playlist file
+	private SongDetailsWorker songDetailsWorker;
+
 	// The music player component
 	private MusicPlayer musicPlayer;
 	private JPanel albumArtPanel;
@@ -128,6 +166,15 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 		// Initialise the user defaults
 		this.userDefaults = new UserDefaults();
 
+		// Start the background set-up processes
+		new SetupWorker().execute();
+
+		// Index the music library in the background so that it can be searched
+		this.libraryIndex = new LibraryIndex();
+		if (this.userDefaults.getDefaultBrowserDir() != null) {
+			indexLibrary(this.userDefaults.getDefaultBrowserDir());
+		}
+
 		// Set the window title
 		setTitle("Playlist Editor " + VERSION);
 		// Set the window icon
@@ -171,6 +218,9 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 		mntmSave = new JMenuItem("Save");
 		mntmSave.addActionListener(this);
 		mnFile.add(mntmSave);
+		mntmAddFolder = new JMenuItem("Add Folder...");
+		mntmAddFolder.addActionListener(this);
+		mnFile.add(mntmAddFolder);
 		JSeparator separator = new JSeparator();
 		mnFile.add(separator);
 		mntmExit = new JMenuItem("Exit");
@@ -181,6 +231,27 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 		mntmSplitTrack = new JMenuItem("Split Track");
 		mntmSplitTrack.addActionListener(this);
 		mnTools.add(mntmSplitTrack);
+		mntmBatchSplitTrack = new JMenuItem("Batch Split Track...");
+		mntmBatchSplitTrack.addActionListener(this);
+		mnTools.add(mntmBatchSplitTrack);
+		mntmSearchLibrary = new JMenuItem("Search Library...");
+		mntmSearchLibrary.addActionListener(this);
+		mnTools.add(mntmSearchLibrary);
+		JMenu mnPlayback = new JMenu("Playback");
+		menuBar.add(mnPlayback);
+		mntmShuffle = new JCheckBoxMenuItem("Shuffle");
+		mntmShuffle.addActionListener(this);
+		mnPlayback.add(mntmShuffle);
+		mnPlayback.add(new JSeparator());
+		ButtonGroup repeatGroup = new ButtonGroup();
+		mntmRepeatOff = new JRadioButtonMenuItem("Repeat Off", true);
+		mntmRepeatOne = new JRadioButtonMenuItem("Repeat Song");
+		mntmRepeatAll = new JRadioButtonMenuItem("Repeat Playlist");
+		for (JRadioButtonMenuItem item : new JRadioButtonMenuItem[] { mntmRepeatOff, mntmRepeatOne, mntmRepeatAll }) {
+			item.addActionListener(this);
+			repeatGroup.add(item);
+			mnPlayback.add(item);
+		}
 		JMenu mnAbout = new JMenu("About");
 		menuBar.add(mnAbout);
 		mntmReleaseNotes = new JMenuItem("Release Notes");
@@ -203,13 +274,7 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 
 		// Create the song table and table model
 		songTable = new JTable();
-		songTableModel = new DefaultTableModel(new Object[][] {}, new String[] { "Track No.", "Artist", "Title" }) {
-			// Disable cell-editing
-			@Override
-			public boolean isCellEditable(int row, int column) {
-				return false;
-			}
-		};
+		songTableModel = new SongTableModel(this.playlist);
 		// Set the table model
 		songTable.setModel(songTableModel);
 		// Set table attributes
@@ -382,6 +447,9 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 
 		// Create the music player component
 		musicPlayer = new MusicPlayer(this.playlist, lblAlbumArt);
+		musicPlayer.setPreBufferMillis(this.userDefaults.getPreBufferMillis());
+		AlbumArtCache.getInstance().setMaxBytes(this.userDefaults.getAlbumArtCacheKilobytes() * 1024L);
+		TrackInput.setMapLimit(this.userDefaults.getMemoryMapLimitKilobytes() * 1024L);
 		musicPlayer.setBounds(13, 16, 330, 64);
 		panel.add(musicPlayer);
 	}
@@ -409,10 +477,24 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 			reorderSongs(source);
 		} else if (source == mntmNew) {
 			createNewPlaylist(null);
+		} else if (source == mntmAddFolder) {
+			addFolder();
 		} else if (source == mntmSplitTrack) {
 			splitTrack();
+		} else if (source == mntmBatchSplitTrack) {
+			batchSplitTrack();
+		} else if (source == mntmSearchLibrary) {
+			searchLibrary();
 		} else if (source == mntmReleaseNotes) {
 			displayReleaseNotes();
+		} else if (source == mntmShuffle) {
+			musicPlayer.setShuffled(mntmShuffle.isSelected());
+		} else if (source == mntmRepeatOff) {
+			musicPlayer.setRepeatMode(PlayOrder.RepeatMode.OFF);
+		} else if (source == mntmRepeatOne) {
+			musicPlayer.setRepeatMode(PlayOrder.RepeatMode.ONE);
+		} else if (source == mntmRepeatAll) {
+			musicPlayer.setRepeatMode(PlayOrder.RepeatMode.ALL);
 		}
 	}
 
@@ -431,6 +513,8 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 			fileTree.setDirectory(fileChooser.getSelectedFile().getAbsolutePath());
 			// Update the user defaults with the new directory
 			this.userDefaults.setDefaultBrowserDir(fileChooser.getSelectedFile().getAbsolutePath());
+			// Index the new directory as the music library
+			indexLibrary(fileChooser.getSelectedFile().getAbsolutePath());
 		}
 		return;
 	}
@@ -444,7 +528,7 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 				((this.userDefaults.getDefaultOpenPlaylistDir() != null) ? this.userDefaults.getDefaultOpenPlaylistDir()
 						: "")));
 		// Create new file filter for the playlist file formats
-		FileNameExtensionFilter filter = new FileNameExtensionFilter(null, "wpl");
+		FileNameExtensionFilter filter = new FileNameExtensionFilter("Playlists", PlaylistFormats.getAllExtensions());
 		// Set the filter
 		fileChooser.setFileFilter(filter);
 		// Allow the user to only be able to select directories
@@ -453,7 +537,7 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 		// Show the dialog and if a directory is selected, update the file tree
 		if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
 			// Check that the file is of the correct format
-			if (fileChooser.getSelectedFile().getName().endsWith(".wpl")) {
+			if (PlaylistFormats.forFile(fileChooser.getSelectedFile()) != null) {
 				this.createNewPlaylist(fileChooser.getSelectedFile());
 				// Set the default for the location of the directory that this file is in
 				this.userDefaults.setDefaultOpenPlaylistDir(fileChooser.getSelectedFile().getParent());
@@ -462,7 +546,8 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 	}
 
 	/**
-	 * Clears the GUI and creates a new playlist instance.
+	 * Clears the GUI and creates a new playlist instance, opening the playlist file
+	 * in the background if one is given.
 	 */
 	public void createNewPlaylist(File file) {
 		// If the current playlist isn't yet saved then ask the user if they would like
@@ -486,23 +571,104 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 			}
 		}
 
-		// If a file has been specified then pass it into the playlist constructor when
-		// creating the new playlist
+		// If a file has been specified then open it in the background, showing the
+		// new playlist once its songs have been read
 		if (file != null) {
-			try {
-				this.playlist = new Playlist(file);
-			} catch (FileNotFoundException e) {
-				this.raiseFileNotFoundWarning(file.getAbsolutePath());
-			}
+			final PlaylistOpenWorker openWorker = new PlaylistOpenWorker(file);
+
+			this.runWithProgress(openWorker, "Opening playlist...", file.getName(), new Runnable() {
+				@Override
+				public void run() {
+					finishOpen(openWorker);
+				}
+			});
 		} else {
-			this.playlist = new Playlist();
+			this.showPlaylist(new Playlist());
+		}
+	}
+
+	/**
+	 * Shows a playlist that has been opened in the background, informing the user
+	 * of any songs that couldn't be read. The current playlist is kept if the
+	 * user cancelled opening it.
+	 * 
+	 * @param openWorker - The worker that opened the playlist.
+	 */
+	private void finishOpen(PlaylistOpenWorker openWorker) {
+		if (openWorker.isCancelled()) {
+			return;
+		}
+
+		Playlist openedPlaylist;
+		try {
+			openedPlaylist = openWorker.get();
+		} catch (InterruptedException | ExecutionException e) {
+			Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+			if (cause instanceof FileNotFoundException) {
+				this.raiseFileNotFoundWarning(openWorker.getFile().getAbsolutePath());
+			} else {
+				cause.printStackTrace();
+			}
+			return;
 		}
 
+		this.showPlaylist(openedPlaylist);
+
+		// Inform the user of any songs that couldn't be loaded
+		if (!openedPlaylist.getLoadFailures().isEmpty()) {
+			this.raiseLoadFailuresWarning(openedPlaylist.getLoadFailures());
+		}
+	}
+
+	/**
+	 * Replaces the current playlist, showing it within the GUI.
+	 * 
+	 * @param playlist - The new playlist.
+	 */
+	private void showPlaylist(Playlist playlist) {
+		this.playlist = playlist;
+
+		// Show the new playlist within the songs table
+		this.songTableModel.setPlaylist(this.playlist);
 		// Refresh the GUI
 		this.refreshPlaylistDetails();
 
 		// Update the music player with the new playlist
 		this.musicPlayer.updatePlaylist(this.playlist);
+
+		// Read the songs that were listed using the details held within the playlist file
+		this.readSongDetails();
+	}
+
+	/**
+	 * Reads the files of the songs whose details were taken from the playlist file
+	 * when it was opened, in the background, replacing the details of each song
+	 * once it has been read. Any songs still being read from a previous playlist are
+	 * abandoned.
+	 */
+	private void readSongDetails() {
+		if (this.songDetailsWorker != null) {
+			this.songDetailsWorker.cancel(false);
+		}
+
+		this.songDetailsWorker = new SongDetailsWorker(this.playlist) {
+			@Override
+			protected void process(List<Song[]> readSongs) {
+				super.process(readSongs);
+
+				// Show the new details of the current song
+				for (Song[] readSong : readSongs) {
+					if (readSong[0] == musicPlayer.getCurrentSong()) {
+						musicPlayer.updateGUI();
+					}
+				}
+				refreshPlaylistDetails();
+			}
+		};
+
+		if (this.songDetailsWorker.hasSongs()) {
+			this.songDetailsWorker.execute();
+		}
 	}
 
 	/**
@@ -513,27 +679,26 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 		// Update the playlist details section
 		this.playlistNameTextField.setText(this.playlist.getName());
 		this.playlistAuthorTextField.setText(this.playlist.getAuthor());
-		this.playlistSizeTextField.setText(String.valueOf(this.playlist.getSize()));
-		this.playlistPlayTimeTextField.setText(this.playlist.getPlayTime());
-
-		// Remove any songs from the songs table
-		int numOfRows = this.songTable.getModel().getRowCount();
-		// Iterate through songs currently in table
-		for (int i = 0; i < numOfRows; i++) {
-			// Remove the song from the table
-			((DefaultTableModel) this.songTable.getModel()).removeRow(0);
-		}
-
-		// Update the songs table
-		for (Song song : this.playlist.getSongs()) {
-			songTableModel.addRow(
-					new Object[] { (this.playlist.getSongs().indexOf(song) + 1), song.getArtist(), song.getTitle() });
-		}
+		PlaylistStats stats = this.playlist.getStats();
+		this.playlistSizeTextField.setText(String.valueOf(stats.getTrackCount()));
+		this.playlistPlayTimeTextField.setText(stats.getFormattedPlayTime());
+		this.playlistSizeTextField.setToolTipText(String.format("%d artists, %d albums, %.1f MB", stats.getArtistCount(),
+				stats.getAlbumCount(), stats.getTotalBytes() / (1024.0 * 1024.0)));
+
+		// The song following the current one may have changed
+		this.musicPlayer.updateNextSong();
 	}
 
 	public void addSong(FileNode nodeOfFile) {
-		File file = nodeOfFile.getFile();
+		addSong(nodeOfFile.getFile());
+	}
 
+	/**
+	 * Adds an mp3 file to the end of the playlist.
+	 * 
+	 * @param file - The file to be added.
+	 */
+	public void addSong(File file) {
 		if (file.getName().endsWith(".mp3")) {
 			try {
 				// Create song object
@@ -549,9 +714,6 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 					this.musicPlayer.updateGUI();
 				}
 
-				// Add the song to the table
-				songTableModel.addRow(new Object[] { this.playlist.getSize(), song.getArtist(), song.getTitle() });
-
 				// Refresh the playlist details
 				refreshPlaylistDetails();
 			} catch (FileNotFoundException e) {
@@ -562,15 +724,100 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 
 	/**
 	 * Adds the songs that are currently selected in the file tree to the tracks
-	 * table.
+	 * table, including every song within the selected folders.
 	 */
 	public void addSelectedSongs() {
 		// Check that something has been selected in the file tree
 		if (fileTree.getSelectionPath() != null) {
+			List<File> files = new ArrayList<File>();
 			for (TreePath tp : fileTree.getSelectionPaths()) {
-				addSong((FileNode) tp.getLastPathComponent());
+				files.add(((FileNode) tp.getLastPathComponent()).getFile());
+			}
+			importSongs(files);
+		}
+	}
+
+	/**
+	 * Allows the user to browse for a folder, every song within which is added to
+	 * the playlist.
+	 */
+	public void addFolder() {
+		// The file chooser, starting from the music library
+		JFileChooser fileChooser = new JFileChooser(this.userDefaults.getDefaultBrowserDir());
+		fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+		fileChooser.setMultiSelectionEnabled(true);
+
+		if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+			importSongs(Arrays.asList(fileChooser.getSelectedFiles()));
+		}
+	}
+
+	/**
+	 * Adds songs to the playlist in the background, showing the progress of the
+	 * import and allowing the user to cancel it.
+	 * 
+	 * @param files - The mp3 files and the folders to be searched for mp3 files.
+	 */
+	private void importSongs(List<File> files) {
+		final ImportWorker importWorker = new ImportWorker(files, this.playlist) {
+			@Override
+			protected void process(List<List<Song>> batches) {
+				boolean wasEmpty = (playlist.getSize() == 0);
+				super.process(batches);
+
+				// If the playlist was empty then set the first song as the current one
+				if (wasEmpty && playlist.getSize() > 0) {
+					musicPlayer.setCurrentSong(playlist.getSong(0));
+					musicPlayer.updateGUI();
+				}
+				refreshPlaylistDetails();
+			}
+		};
+
+		this.runWithProgress(importWorker, "Adding songs...", "Searching for files...", new Runnable() {
+			@Override
+			public void run() {
+				finishImport(importWorker);
+			}
+		});
+	}
+
+	/**
+	 * Informs the user of the outcome of an import, listing the files that could
+	 * not be read.
+	 * 
+	 * @param importWorker - The worker that performed the import.
+	 */
+	private void finishImport(ImportWorker importWorker) {
+		refreshPlaylistDetails();
+
+		// Nothing to report if the user cancelled the import
+		if (importWorker.isCancelled()) {
+			return;
+		}
+
+		List<PlaylistLoader.Failure> failures;
+		try {
+			failures = importWorker.get();
+		} catch (InterruptedException | ExecutionException e) {
+			Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+			cause.printStackTrace();
+			JOptionPane.showMessageDialog(this, "Unable to add the songs:\n" + cause.getMessage(), "Add Failed",
+					JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+
+		// Only report imports of many songs, or those that didn't complete
+		if (failures.isEmpty()) {
+			if (importWorker.getImportedCount() > 1) {
+				JOptionPane.showMessageDialog(this, importWorker.getImportedCount() + " songs have been added.");
 			}
+			return;
 		}
+		JOptionPane.showMessageDialog(this,
+				importWorker.getImportedCount() + " songs have been added. The following files could not be read:"
+						+ listFailures(failures),
+				"Songs Not Added", JOptionPane.WARNING_MESSAGE);
 	}
 
 	/**
@@ -584,25 +831,13 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 		// Iterate through the selected rows
 		for (int i = 0; i < numOfSelectedRows; i++) {
 			int index = this.songTable.getSelectedRows()[0];
-			// Remove the song from the playlist
+			// Remove the song from the playlist, which also removes it from the table
 			this.playlist.removeSong(index);
-			// Remove the song from the table
-			((DefaultTableModel) this.songTable.getModel()).removeRow(index);
 		}
 		// Refresh the playlist details
 		refreshPlaylistDetails();
 	}
 
-	/**
-	 * Updates the track numbers in the songs table.
-	 */
-	public void updateTrackNumbers() {
-		// Update the track numbers in the songs table
-		for (int i = 0; i < this.songTable.getModel().getRowCount(); i++) {
-			this.songTable.getModel().setValueAt((i + 1), i, 0);
-		}
-	}
-
 	/**
 	 * Reorders the songs within the songs table upon clicking up or down arrow
 	 * button.
@@ -615,41 +850,32 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 			// Get the index of the selected row
 			int indexOfSelectedRow = this.songTable.getSelectedRow();
 
-			// Get the table model
-			DefaultTableModel tableModel = ((DefaultTableModel) this.songTable.getModel());
-
 			// If the up arrow button was clicked
 			if (source == this.upArrowButton) {
 				// Check that the selected row isn't already at the start
 				if (indexOfSelectedRow != 0) {
-					// Unselected the selected row
-					this.songTable.clearSelection();
-					// Move the row up in the table
-					tableModel.moveRow(indexOfSelectedRow, indexOfSelectedRow, (indexOfSelectedRow - 1));
-					// Re-select the moved row
-					this.songTable.setRowSelectionInterval((indexOfSelectedRow - 1), (indexOfSelectedRow - 1));
-					// Swap the two rows that have changed position in the playlist
+					// Swap the two songs that have changed position in the playlist, which also
+					// updates their rows in the table
 					this.playlist.swapSongs(indexOfSelectedRow, (indexOfSelectedRow - 1));
+					// Select the moved row
+					this.songTable.setRowSelectionInterval((indexOfSelectedRow - 1), (indexOfSelectedRow - 1));
 				}
 			}
 			// Otherwise, if the down arrow button was clicked
 			else if (source == this.downArrowButton) {
 				// Check that the selected row isn't already at the end
 				if (indexOfSelectedRow != (this.songTable.getRowCount() - 1)) {
-					// Unselected the selected row
-					this.songTable.clearSelection();
-					// Move the row down in the table
-					tableModel.moveRow(indexOfSelectedRow, indexOfSelectedRow, (indexOfSelectedRow + 1));
-					// Re-select the moved row
-					this.songTable.setRowSelectionInterval((indexOfSelectedRow + 1), (indexOfSelectedRow + 1));
-					// Swap the two rows that have changed position in the playlist
+					// Swap the two songs that have changed position in the playlist, which also
+					// updates their rows in the table
 					this.playlist.swapSongs(indexOfSelectedRow, (indexOfSelectedRow + 1));
+					// Select the moved row
+					this.songTable.setRowSelectionInterval((indexOfSelectedRow + 1), (indexOfSelectedRow + 1));
 				}
 			}
 			//
 			this.songTable.scrollRectToVisible(this.songTable.getCellRect(this.songTable.getSelectedRow(), 0, true));
-			// Update the track numbers in the songs table
-			updateTrackNumbers();
+			// The song following the current one may have changed
+			this.musicPlayer.updateNextSong();
 		}
 	}
 
@@ -670,8 +896,8 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 			if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
 				// Fetch the selected file
 				File chosenFile = fileChooser.getSelectedFile();
-				// Check that the file is of the right type
-				if (chosenFile.getAbsolutePath().endsWith(Playlist.WPL)) {
+				// Check that the file is of a supported type
+				if (PlaylistFormats.forFile(chosenFile) != null) {
 					// If the file already exists, then as the user to confirm overwritting the
 					// playlist
 					if (chosenFile.exists()) {
@@ -685,13 +911,18 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 					}
 					// Set the playlist's file
 					this.playlist.setFile(fileChooser.getSelectedFile().getAbsoluteFile());
+				} else {
+					JOptionPane.showMessageDialog(this, chosenFile.getName() + " is not a supported playlist file.",
+							"Unsupported Format", JOptionPane.ERROR_MESSAGE);
+					return false;
 				}
 			} else {
 				return false;
 			}
 		}
-		// Save the playlist
-		this.playlist.save(Playlist.WPL);
+		// Save the playlist in the format given by its file extension
+		String fileName = this.playlist.getFile().getName();
+		this.playlist.save(fileName.substring(fileName.lastIndexOf('.') + 1));
 		// Display popup
 		JOptionPane.showMessageDialog(this, "Your playlist has been saved.");
 		return true;
@@ -752,8 +983,15 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 				}
 
 				// Split the track at the specified points and write the output to the specified
-				// file
-				this.musicPlayer.splitCurrentTrackAndWriteToFile(selectedFile, (splitChoice == 0) ? true : false);
+				// file in the background
+				final SplitWorker splitWorker = this.musicPlayer.splitCurrentTrackAndWriteToFile(selectedFile,
+						(splitChoice == 0) ? true : false);
+				this.runWithProgress(splitWorker, "Splitting track...", selectedFile.getName(), new Runnable() {
+					@Override
+					public void run() {
+						finishSplit(splitWorker);
+					}
+				});
 			} else {
 				JOptionPane.showMessageDialog(this, "Unable to perform split. Export file must of mp3 format.",
 						"Incorrect Export Format", JOptionPane.ERROR_MESSAGE);
@@ -761,6 +999,183 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 		}
 	}
 
+	/**
+	 * Splits the current track within the music player into many tracks, at the
+	 * split points listed in a CUE sheet or timestamp list, and adds them to the
+	 * playlist.
+	 */
+	public void batchSplitTrack() {
+		// If their isn't currently a song loaded into the music player then raise an
+		// error message to the user and exit method
+		if (this.musicPlayer.getCurrentSong() == null) {
+			JOptionPane.showMessageDialog(this, "Could not split as there is no current song. Play a song to split it.",
+					"Batch Split Failed", JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+
+		File sourceFile = this.musicPlayer.getCurrentSong().getFile();
+
+		// Ask the user to select the file containing the split points
+		JFileChooser splitPointsChooser = new JFileChooser(sourceFile.getParentFile());
+		splitPointsChooser.setDialogTitle("Select a CUE sheet or list of timestamps");
+		splitPointsChooser.setFileFilter(new FileNameExtensionFilter("CUE sheets and timestamp lists", "cue", "txt"));
+		splitPointsChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+
+		if (splitPointsChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+
+		// Ask the user to select the directory to write the new tracks to
+		JFileChooser outputChooser = new JFileChooser(sourceFile.getParentFile());
+		outputChooser.setDialogTitle("Select a folder for the split tracks");
+		outputChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+
+		if (outputChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+
+		final BatchSplitWorker batchSplitWorker = new BatchSplitWorker(sourceFile,
+				splitPointsChooser.getSelectedFile(), outputChooser.getSelectedFile());
+
+		this.runWithProgress(batchSplitWorker, "Splitting track...", sourceFile.getName(), new Runnable() {
+			@Override
+			public void run() {
+				finishBatchSplit(batchSplitWorker);
+			}
+		});
+	}
+
+	/**
+	 * Adds the tracks written by a batch split to the playlist, and informs the
+	 * user of the outcome.
+	 * 
+	 * @param batchSplitWorker - The worker that performed the split.
+	 */
+	private void finishBatchSplit(BatchSplitWorker batchSplitWorker) {
+		// Nothing to report if the user cancelled the split
+		if (batchSplitWorker.isCancelled()) {
+			return;
+		}
+
+		List<File> outputFiles;
+		try {
+			outputFiles = batchSplitWorker.get();
+		} catch (InterruptedException | ExecutionException e) {
+			Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+			cause.printStackTrace();
+			JOptionPane.showMessageDialog(this, "Unable to split the track:\n" + cause.getMessage(),
+					"Batch Split Failed", JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+
+		JOptionPane.showMessageDialog(this,
+				batchSplitWorker.getSource().getName() + " has been split into " + outputFiles.size() + " tracks.");
+
+		// Read the new tracks in the background and add them to the playlist together
+		importSongs(outputFiles);
+	}
+
+	/**
+	 * Starts indexing a directory as the music library in the background.
+	 * 
+	 * @param directory - The library directory.
+	 */
+	private void indexLibrary(String directory) {
+		this.libraryIndex.start(directory, new LibraryIndex.Listener() {
+			@Override
+			public void indexUpdated(int trackCount, boolean isComplete) {
+				// Show the latest tracks within the search dialog if it's open
+				EventQueue.invokeLater(new Runnable() {
+					public void run() {
+						if (librarySearchDialog != null && librarySearchDialog.isVisible()) {
+							librarySearchDialog.refresh();
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Shows the dialog used to search the music library, adding the tracks chosen
+	 * to the playlist.
+	 */
+	public void searchLibrary() {
+		if (this.librarySearchDialog == null) {
+			this.librarySearchDialog = new LibrarySearchDialog(this, this.libraryIndex,
+					new LibrarySearchDialog.SelectionListener() {
+						@Override
+						public void tracksSelected(List<LibraryTrack> tracks) {
+							// Read the songs in the background, as up to a page of results may be chosen
+							List<File> files = new ArrayList<File>();
+							for (LibraryTrack track : tracks) {
+								files.add(track.getFile());
+							}
+							importSongs(files);
+						}
+					});
+		}
+		this.librarySearchDialog.refresh();
+		this.librarySearchDialog.setVisible(true);
+	}
+
+	/**
+	 * Runs a worker in the background, showing its progress and allowing the user
+	 * to cancel it.
+	 * 
+	 * @param worker   - The worker, which reports its progress as a percentage.
+	 * @param message  - The message describing the task.
+	 * @param note     - The note shown below the message.
+	 * @param whenDone - Run on the event dispatch thread once the worker has
+	 *                 finished or been cancelled.
+	 */
+	private void runWithProgress(final SwingWorker<?, ?> worker, String message, String note, final Runnable whenDone) {
+		final ProgressMonitor progressMonitor = new ProgressMonitor(this, message, note, 0, 100);
+		progressMonitor.setMillisToDecideToPopup(200);
+
+		worker.addPropertyChangeListener(new PropertyChangeListener() {
+			@Override
+			public void propertyChange(PropertyChangeEvent event) {
+				// Cancel the worker if the user has closed the progress dialog
+				if (progressMonitor.isCanceled()) {
+					worker.cancel(true);
+				} else if ("progress".equals(event.getPropertyName())) {
+					progressMonitor.setProgress((Integer) event.getNewValue());
+				} else if ("note".equals(event.getPropertyName())) {
+					progressMonitor.setNote((String) event.getNewValue());
+				}
+
+				if ("state".equals(event.getPropertyName()) && worker.isDone()) {
+					progressMonitor.close();
+					whenDone.run();
+				}
+			}
+		});
+		worker.execute();
+	}
+
+	/**
+	 * Informs the user of the outcome of a split once it has finished.
+	 * 
+	 * @param splitWorker - The worker that performed the split.
+	 */
+	private void finishSplit(SplitWorker splitWorker) {
+		// Nothing to report if the user cancelled the split
+		if (splitWorker.isCancelled()) {
+			splitWorker.getOutput().delete();
+			return;
+		}
+
+		try {
+			splitWorker.get();
+		} catch (InterruptedException | ExecutionException e) {
+			Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+			cause.printStackTrace();
+			JOptionPane.showMessageDialog(this, "Unable to split the track:\n" + cause.getMessage(),
+					"Split Track Failed", JOptionPane.ERROR_MESSAGE);
+		}
+	}
+
 	/**
 	 * Raises an error dialog informing the user of a resource not being found.
 	 * 
@@ -770,7 +1185,7 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 		// The error message to be displayed to the user
 		String message;
 
-		if (fileName.endsWith(".wpl")) {
+		if (PlaylistFormats.forFile(new File(fileName)) != null) {
 			message = "The playlist or a track within the following playlist file could not be found:";
 		} else {
 			message = "The following file could not be found:";
@@ -779,6 +1194,41 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 		JOptionPane.showMessageDialog(this, message + "\n" + fileName, "File Not Found", JOptionPane.ERROR_MESSAGE);
 	}
 
+	/**
+	 * Raises an error dialog listing the songs within a playlist that could not be
+	 * loaded.
+	 * 
+	 * @param failures - The songs that could not be loaded.
+	 */
+	public void raiseLoadFailuresWarning(List<PlaylistLoader.Failure> failures) {
+		String message = "The following tracks within the playlist could not be loaded:" + listFailures(failures);
+
+		// Display the error message dialog
+		JOptionPane.showMessageDialog(this, message, "Tracks Not Loaded", JOptionPane.ERROR_MESSAGE);
+	}
+
+	/**
+	 * Lists the paths of songs that could not be read, one per line, for display
+	 * within a dialog.
+	 * 
+	 * @param failures - The songs that could not be read.
+	 * @return The paths, each preceded by a line separator.
+	 */
+	private static String listFailures(List<PlaylistLoader.Failure> failures) {
+		// The maximum number of songs to list within the dialog
+		final int maxListed = 20;
+
+		StringBuilder list = new StringBuilder();
+
+		for (int i = 0; i < failures.size() && i < maxListed; i++) {
+			list.append("\n").append(failures.get(i).getPath());
+		}
+		if (failures.size() > maxListed) {
+			list.append("\n...and ").append(failures.size() - maxListed).append(" more");
+		}
+		return list.toString();
+	}
+
 	/**
 	 * Displays a popup containing the release notes
 	 */
@@ -847,6 +1297,8 @@ public class PlaylistWindow extends JFrame implements ActionListener {
 		}
 		// Save the user defaults file
 		this.userDefaults.saveDefaultsToFile();
+		// Save the metadata of any newly read songs
+		MetadataCache.getInstance().saveToFile();
 		// Exit the program
 		System.exit(0);
 	}
@@ -5,11 +5,13 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 import javax.imageio.ImageIO;
 import com.mpatric.mp3agic.ID3v2;
-import com.mpatric.mp3agic.InvalidDataException;
-import com.mpatric.mp3agic.Mp3File;
-import com.mpatric.mp3agic.UnsupportedTagException;
+import com.pe.audio.FrameIndex;
+import com.pe.audio.Mp3HeaderReader;
+import com.pe.formats.PlaylistEntry;
 
 /**
  * Represents a song.
@@ -18,6 +20,10 @@ import com.mpatric.mp3agic.UnsupportedTagException;
  */
 public class Song
 {
+	// The artist and album of a song whose file doesn't give them
+	public static final String UNKNOWN_ARTIST = "unknown artist";
+	public static final String UNKNOWN_ALBUM = "unknown album";
+	
 	// The file associated with this song
 	private File file;
 	// Song title
@@ -27,55 +33,180 @@ public class Song
 	// The album
 	private String album;
 	// Length in milliseconds
-	private long length;
-	// The album art
-	private BufferedImage albumArt;
+	private long lengthInMilliseconds;
+	// The size of the file in bytes
+	private long size;
+	// Whether the album art may be present within the file
+	private boolean hasAlbumArt;
+	// Whether the details were read from the file, rather than taken from a playlist file
+	private boolean isDetailsRead = true;
 	
 	/**
-	 * Class Constructor.
+	 * Class Constructor. Reads every frame of the file to calculate its exact length.
 	 * 
 	 * @param path - The string value of the absolute path to the .mp3 file
 	 */
 	public Song(String path) throws FileNotFoundException
+	{
+		this(path, false);
+	}
+	
+	/**
+	 * Alternative Class Constructor.
+	 * 
+	 * In lazy mode only the ID3v2 tag and the first frame header are read, and the length is taken from the
+	 * Xing / VBRI header or estimated from the bitrate. This is much faster when loading large playlists.
+	 * 
+	 * In both modes the album art is not decoded until {@link #getAlbumArt()} is called.
+	 * 
+	 * @param path - The string value of the absolute path to the .mp3 file
+	 * @param lazy - Whether to read only the headers of the file.
+	 */
+	public Song(String path, boolean lazy) throws FileNotFoundException
+	{
+		this(path, lazy, null, 0);
+	}
+	
+	/**
+	 * Alternative Class Constructor for an entry of a playlist file.
+	 * 
+	 * If the entry gives the title and length of the song, such as from an M3U #EXTINF directive or the attributes of
+	 * a WPL media element, and the file hasn't been modified since the playlist file was written, then those details
+	 * are used and the file is only checked for existence. Otherwise only the headers of the file are read.
+	 * 
+	 * Details taken from the entry can be replaced with those of the file once it has been read, see
+	 * {@link #isDetailsRead()}.
+	 * 
+	 * @param entry - The playlist entry.
+	 * @param detailsLastModified - The time at which the playlist file was last modified, in milliseconds since the
+	 *        epoch.
+	 */
+	public Song(PlaylistEntry entry, long detailsLastModified) throws FileNotFoundException
+	{
+		this(entry.getPath(), true, entry, detailsLastModified);
+	}
+	
+	/**
+	 * Alternative Class Constructor.
+	 * 
+	 * @param path - The string value of the absolute path to the .mp3 file
+	 * @param lazy - Whether to read only the headers of the file.
+	 * @param entry - The playlist entry that lists the song, or null.
+	 * @param detailsLastModified - The time at which the entry was written.
+	 */
+	private Song(String path, boolean lazy, PlaylistEntry entry, long detailsLastModified) throws FileNotFoundException
 	{
 		// Set the file
 		this.file = new File(path);
+		
+		// Read the size and last modified time of the file, which identify whether any cached metadata is still valid
+		BasicFileAttributes attributes;
+		try
+		{
+			attributes = Files.readAttributes(this.file.toPath(), BasicFileAttributes.class);
+		}
+		catch (IOException e)
+		{
+			throw new FileNotFoundException();
+		}
+		this.size = attributes.size();
+		
+		// Use the cached metadata if there is any, unless the exact length is required and only an estimate was cached
+		MetadataCache.CacheEntry cachedEntry = MetadataCache.getInstance().get(this.file.getAbsolutePath(), attributes);
+		
+		if (cachedEntry != null && (lazy || cachedEntry.isLengthExact()))
+		{
+			this.title = cachedEntry.getTitle();
+			this.artist = cachedEntry.getArtist();
+			this.album = cachedEntry.getAlbum();
+			this.lengthInMilliseconds = cachedEntry.getLengthInMilliseconds();
+			this.hasAlbumArt = cachedEntry.hasAlbumArt();
+			return;
+		}
+		
+		// Use the details given by the playlist file if there are enough of them and the file hasn't changed since,
+		// rather than opening the file
+		if (entry != null && entry.hasDetails() && attributes.lastModifiedTime().toMillis() <= detailsLastModified)
+		{
+			this.title = entry.getTitle();
+			this.artist = (entry.getArtist() == null) ? UNKNOWN_ARTIST : entry.getArtist();
+			this.album = (entry.getAlbum() == null) ? UNKNOWN_ALBUM : entry.getAlbum();
+			this.lengthInMilliseconds = entry.getLengthInMilliseconds();
+			// Not known until the file is read, so look for it when it is first needed
+			this.hasAlbumArt = true;
+			this.isDetailsRead = false;
+			return;
+		}
+		
+		// Whether the metadata was read without error and so can be cached
+		boolean isRead = false;
+		// The seek table of the file, if every frame was scanned
+		FrameIndex seekTable = null;
+		
 		// Attempt to extract metadata from the file
 		try
 		{
-			// Utilise MP3agic module to read the ID3v2 tag
-			Mp3File song = new Mp3File(this.getFile().getAbsolutePath());
-			
-			if (song.hasId3v2Tag())
+			if (lazy)
+			{
+				// Read only the ID3v2 tag and first frame header
+				Mp3HeaderReader song = Mp3HeaderReader.read(this.getFile());
+				
+				if (song.hasId3v2Tag())
+				{
+					this.readTag(song.getId3v2Tag());
+				}
+				this.lengthInMilliseconds = song.getLengthInMilliseconds();
+			}
+			else
 			{
-				 // Fetch the ID3v2 tag
-			     ID3v2 id3v2tag = song.getId3v2Tag();
-			     // Fetch and assign values from the ID3v2 tag
-			     this.title = id3v2tag.getTitle();
-			     this.artist = id3v2tag.getArtist();
-			     this.album = id3v2tag.getAlbum();
-			     this.length = song.getLengthInSeconds();
-			     // Fetch the album image data
-		         byte[] imageData = id3v2tag.getAlbumImage();
-		         // Convert the bytes to an image if the data has been found
-		         if (imageData != null)
-		         {
-				     this.albumArt = ImageIO.read(new ByteArrayInputStream(imageData));
-		         }
-			}					
+				Mp3HeaderReader song = Mp3HeaderReader.read(this.getFile());
+				
+				if (song.hasId3v2Tag())
+				{
+					this.readTag(song.getId3v2Tag());
+				}
+				
+				// Scan every frame for the exact length, keeping a seek table from the same scan
+				FrameIndex frameIndex = FrameIndex.build(this.getFile());
+				this.lengthInMilliseconds = frameIndex.getDurationMillis();
+				seekTable = frameIndex.toSeekTable(FrameIndex.SEEK_TABLE_POINTS);
+			}
+			isRead = true;
 		}
 		catch (FileNotFoundException e)
 		{
 			throw new FileNotFoundException();
 		}
-		catch (IOException | InvalidDataException | UnsupportedTagException e)
+		catch (IOException e)
 		{
 			e.printStackTrace();
 		}
 		// Assign default values for variables that have not yet been set
 		this.title = (this.title == null) ? (this.file.getName().substring(0, this.file.getName().length() - 4)) : this.title;
-		this.artist = (this.artist == null) ? "unknown artist" : this.artist;
-		this.album = (this.album == null) ? "unknown album" : this.album;
+		this.artist = (this.artist == null) ? UNKNOWN_ARTIST : this.artist;
+		this.album = (this.album == null) ? UNKNOWN_ALBUM : this.album;
+		
+		// Cache the metadata so that the file doesn't need to be read again
+		if (isRead)
+		{
+			MetadataCache.getInstance().put(this.file.getAbsolutePath(), attributes,
+					new MetadataCache.CacheEntry(this.title, this.artist, this.album, this.lengthInMilliseconds, !lazy, this.hasAlbumArt, seekTable));
+		}
+	}
+	
+	/**
+	 * Assigns the values held within an ID3v2 tag.
+	 * 
+	 * @param id3v2tag - The ID3v2 tag of the file.
+	 */
+	private void readTag(ID3v2 id3v2tag)
+	{
+		// Fetch and assign values from the ID3v2 tag
+		this.title = id3v2tag.getTitle();
+		this.artist = id3v2tag.getArtist();
+		this.album = id3v2tag.getAlbum();
+		// Only record whether there is an image, it is read again from the file when it is needed
+		this.hasAlbumArt = id3v2tag.getAlbumImage() != null;
 	}
 	
 	public String getTitle()
@@ -92,10 +223,80 @@ public class Song
 	{
 		return this.album;
 	}
+	
+	/**
+	 * Returns whether the artist was given by the song's tag or playlist entry, rather than being
+	 * {@link #UNKNOWN_ARTIST}.
+	 * 
+	 * @return Whether the artist is known.
+	 */
+	public boolean hasArtist()
+	{
+		return !this.artist.isEmpty() && !UNKNOWN_ARTIST.equals(this.artist);
+	}
+	
+	/**
+	 * Returns whether the album was given by the song's tag or playlist entry, rather than being
+	 * {@link #UNKNOWN_ALBUM}.
+	 * 
+	 * @return Whether the album is known.
+	 */
+	public boolean hasAlbum()
+	{
+		return !this.album.isEmpty() && !UNKNOWN_ALBUM.equals(this.album);
+	}
 
+	/**
+	 * Gets the length of this song, rounded to the nearest second.
+	 * 
+	 * @return The length in seconds.
+	 */
 	public long getLength()
 	{
-		return this.length;
+		return (this.lengthInMilliseconds + 500) / 1000;
+	}
+	
+	public long getLengthInMilliseconds()
+	{
+		return this.lengthInMilliseconds;
+	}
+	
+	/**
+	 * Gets the size of the file when this song was read.
+	 * 
+	 * @return The size in bytes.
+	 */
+	public long getSize()
+	{
+		return this.size;
+	}
+	
+	/**
+	 * Returns whether the details of this song were read from its file, rather than taken from the playlist file that
+	 * lists it. Details taken from a playlist file may be out of date and the length is only accurate to the second.
+	 * 
+	 * @return Whether the details were read from the file.
+	 */
+	public boolean isDetailsRead()
+	{
+		return this.isDetailsRead;
+	}
+	
+	/**
+	 * Replaces the details of this song with those read from its file. Used by {@link Playlist} so that the totals of
+	 * the playlist can be kept up to date.
+	 * 
+	 * @param readSong - The same song, read from its file.
+	 */
+	void setDetails(Song readSong)
+	{
+		this.title = readSong.title;
+		this.artist = readSong.artist;
+		this.album = readSong.album;
+		this.lengthInMilliseconds = readSong.lengthInMilliseconds;
+		this.size = readSong.size;
+		this.setHasAlbumArt(readSong.hasAlbumArt());
+		this.isDetailsRead = readSong.isDetailsRead;
 	}
 	
 	public File getFile()
@@ -103,8 +304,60 @@ public class Song
 		return this.file;
 	}
 	
+	/**
+	 * Gets the album art, reading and decoding it from the file. The image isn't held by the song, so that the full
+	 * size images of a playlist aren't kept in memory; use {@link AlbumArtCache} for thumbnails.
+	 * 
+	 * @return The album art, or null if the file doesn't contain any.
+	 */
 	public BufferedImage getAlbumArt()
 	{
-		return this.albumArt;
+		if (!this.hasAlbumArt())
+		{
+			return null;
+		}
+		
+		BufferedImage image = null;
+		try
+		{
+			// Fetch the album image data
+			byte[] imageData = Mp3HeaderReader.readAlbumImage(this.file);
+			// Convert the bytes to an image if the data has been found
+			if (imageData != null)
+			{
+				image = ImageIO.read(new ByteArrayInputStream(imageData));
+			}
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		
+		// Don't attempt to read the image again if the file no longer contains one
+		if (image == null)
+		{
+			this.setHasAlbumArt(false);
+		}
+		return image;
+	}
+	
+	/**
+	 * Returns whether the file may contain album art. Only false once the file is known not to contain any.
+	 * 
+	 * @return Whether there may be album art.
+	 */
+	public synchronized boolean hasAlbumArt()
+	{
+		return this.hasAlbumArt;
+	}
+	
+	/**
+	 * Records whether the file contains album art, such as once it has been found not to.
+	 * 
+	 * @param hasAlbumArt - Whether there is album art.
+	 */
+	synchronized void setHasAlbumArt(boolean hasAlbumArt)
+	{
+		this.hasAlbumArt = hasAlbumArt;
 	}
 }
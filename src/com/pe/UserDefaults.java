@@ -5,6 +5,10 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.PrintWriter;
+
+import com.pe.audio.PlaybackEngine;
+import com.pe.audio.TrackInput;
+
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
@@ -39,6 +43,15 @@ public class UserDefaults
 	// The default directoy when browsing to open a playlist
 	private String defaultOpenPlaylistDir;
 	
+	// The length of the next song that is decoded before the current song finishes, in milliseconds
+	private int preBufferMillis = PlaybackEngine.DEFAULT_PRE_BUFFER_MILLIS;
+	
+	// The maximum total size of the album art thumbnails held in memory, in kilobytes
+	private int albumArtCacheKilobytes = (int) (AlbumArtCache.DEFAULT_MAX_BYTES / 1024);
+	
+	// The size of song file up to which files are memory mapped for playback rather than read ahead, in kilobytes
+	private int memoryMapLimitKilobytes = (int) (TrackInput.DEFAULT_MAP_LIMIT / 1024);
+	
 	/**
 	 * Class Constructor. Will detect existing defaults.conf file and read it.
 	 */
@@ -56,6 +69,51 @@ public class UserDefaults
 				DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
 				Document doc = docBuilder.parse(this.file);
 				
+				Node preBufferMillisNode = doc.getElementsByTagName("preBufferMillis").item(0);
+				
+				// The pre-buffer length was added later, so older files may not contain it
+				if (preBufferMillisNode != null)
+				{
+					try
+					{
+						this.preBufferMillis = Math.max(0, Integer.parseInt(preBufferMillisNode.getTextContent().trim()));
+					}
+					catch (NumberFormatException e)
+					{
+						// Keep the default length
+					}
+				}
+				
+				Node albumArtCacheKilobytesNode = doc.getElementsByTagName("albumArtCacheKilobytes").item(0);
+				
+				// The album art cache size was added later, so older files may not contain it
+				if (albumArtCacheKilobytesNode != null)
+				{
+					try
+					{
+						this.albumArtCacheKilobytes = Math.max(0, Integer.parseInt(albumArtCacheKilobytesNode.getTextContent().trim()));
+					}
+					catch (NumberFormatException e)
+					{
+						// Keep the default size
+					}
+				}
+				
+				Node memoryMapLimitKilobytesNode = doc.getElementsByTagName("memoryMapLimitKilobytes").item(0);
+				
+				// The memory map limit was added later, so older files may not contain it
+				if (memoryMapLimitKilobytesNode != null)
+				{
+					try
+					{
+						this.memoryMapLimitKilobytes = Math.max(0, Integer.parseInt(memoryMapLimitKilobytesNode.getTextContent().trim()));
+					}
+					catch (NumberFormatException e)
+					{
+						// Keep the default limit
+					}
+				}
+				
 				Node defaultBrowserDirNode = doc.getElementsByTagName("defaultBrowserDir").item(0);
 				
 				// Set the default browser dir variable if the text content isn't empty
@@ -118,6 +176,66 @@ public class UserDefaults
 		this.defaultOpenPlaylistDir = path;
 	}
 	
+	/**
+	 * Getter for the length of the next song that is decoded before the current song finishes.
+	 * 
+	 * @return The pre-buffer length in milliseconds.
+	 */
+	public int getPreBufferMillis()
+	{
+		return this.preBufferMillis;
+	}
+	
+	/**
+	 * Setter for the length of the next song that is decoded before the current song finishes.
+	 * 
+	 * @param preBufferMillis - The pre-buffer length in milliseconds.
+	 */
+	public void setPreBufferMillis(int preBufferMillis)
+	{
+		this.preBufferMillis = preBufferMillis;
+	}
+	
+	/**
+	 * Getter for the maximum total size of the album art thumbnails held in memory.
+	 * 
+	 * @return The size in kilobytes.
+	 */
+	public int getAlbumArtCacheKilobytes()
+	{
+		return this.albumArtCacheKilobytes;
+	}
+	
+	/**
+	 * Setter for the maximum total size of the album art thumbnails held in memory.
+	 * 
+	 * @param albumArtCacheKilobytes - The size in kilobytes.
+	 */
+	public void setAlbumArtCacheKilobytes(int albumArtCacheKilobytes)
+	{
+		this.albumArtCacheKilobytes = albumArtCacheKilobytes;
+	}
+	
+	/**
+	 * Getter for the size of song file up to which files are memory mapped for playback.
+	 * 
+	 * @return The size in kilobytes, 0 if files are never mapped.
+	 */
+	public int getMemoryMapLimitKilobytes()
+	{
+		return this.memoryMapLimitKilobytes;
+	}
+	
+	/**
+	 * Setter for the size of song file up to which files are memory mapped for playback.
+	 * 
+	 * @param memoryMapLimitKilobytes - The size in kilobytes, 0 to never map files.
+	 */
+	public void setMemoryMapLimitKilobytes(int memoryMapLimitKilobytes)
+	{
+		this.memoryMapLimitKilobytes = memoryMapLimitKilobytes;
+	}
+	
 	/**
 	 * Saves the current defaults to the defaults.conf file.
 	 */
@@ -152,6 +270,21 @@ public class UserDefaults
             }
             
             defaultsElement.appendChild(defaultOpenPlaylistDirElement);
+            
+            Element preBufferMillisElement = document.createElement("preBufferMillis");
+            preBufferMillisElement.appendChild(document.createTextNode(String.valueOf(this.preBufferMillis)));
+            
+            defaultsElement.appendChild(preBufferMillisElement);
+            
+            Element albumArtCacheKilobytesElement = document.createElement("albumArtCacheKilobytes");
+            albumArtCacheKilobytesElement.appendChild(document.createTextNode(String.valueOf(this.albumArtCacheKilobytes)));
+            
+            defaultsElement.appendChild(albumArtCacheKilobytesElement);
+            
+            Element memoryMapLimitKilobytesElement = document.createElement("memoryMapLimitKilobytes");
+            memoryMapLimitKilobytesElement.appendChild(document.createTextNode(String.valueOf(this.memoryMapLimitKilobytes)));
+            
+            defaultsElement.appendChild(memoryMapLimitKilobytesElement);
 
             // Create new transformation objects
             TransformerFactory transformerFactory = TransformerFactory.newInstance();
@@ -0,0 +1,606 @@
+package com.pe.audio;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Audio sink that passes samples to another sink on a dedicated output thread, through a {@link PcmRingBuffer}.
+ *
+ * The thread writing samples, normally the decoder, only waits when the ring buffer is full, so a stall while reading
+ * or decoding is covered by the audio already buffered rather than being heard as a dropout. The output thread only
+ * waits on the underlying sink.
+ *
+ * Markers can be placed between samples to run an action once the samples before them have been passed to the sink,
+ * and to set the playback position of the samples that follow them. This keeps track changes and the position in step
+ * with the audio being played rather than the audio being decoded, which is ahead by up to the length of the buffer.
+ *
+ * The number of underruns and overruns and the fill level of the buffer are recorded, see {@link #getUnderrunCount()}.
+ *
+ * @author olly.rowe
+ */
+public class AudioOutput implements AudioSink
+{
+	// The default length of audio held by the ring buffer, enough to cover a slow network drive
+	public static final int DEFAULT_BUFFER_MILLIS = 2000;
+
+	// The maximum number of samples passed to the sink at once
+	private static final int CHUNK_SIZE = 2048;
+
+	// How long a waiting thread sleeps before checking again, in case a wake up was missed. The output thread only
+	// does so while a marker is pending, otherwise it sleeps until it is woken
+	private static final long WAIT_NANOS = 2000000;
+
+	// How long closing waits for the output thread to finish
+	private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+
+	// The sink that plays the samples
+	private final AudioSink sink;
+
+	// The length of audio held by the ring buffer, in milliseconds
+	private final int bufferMillis;
+
+	// The ring buffer, replaced whenever the sink is opened
+	private volatile PcmRingBuffer buffer;
+
+	// The format of the samples
+	private volatile int sampleRate;
+	private volatile int channels;
+
+	// Held by the output thread while passing samples to the sink, and while the ring buffer is replaced
+	private final Object outputLock = new Object();
+
+	// The markers that haven't yet been reached, in position order. Also guards the playback position
+	private final ArrayDeque<Marker> markers = new ArrayDeque<Marker>();
+
+	// The buffer position and playback time from which the playback position is counted
+	private long basePosition;
+	private long baseMillis;
+
+	// The samples before this position are discarded by the output thread
+	private volatile long flushPosition;
+
+	// The number of flushes, so that a waiting writer can tell that it has been flushed
+	private volatile int flushCount;
+
+	// The state of the output
+	private volatile boolean isPaused = false;
+	private volatile boolean isClosed = false;
+	private volatile boolean isDraining = false;
+
+	// Whether the buffer has been filled since the audio last started, so that running empty is an underrun
+	private volatile boolean isPrimed = false;
+
+	// The output thread and the thread waiting to write, woken when there is something to do
+	private volatile Thread outputThread;
+	private volatile Thread waitingWriter;
+
+	// The number of times the buffer has run empty and the writer has had to wait for space
+	private volatile long underrunCount;
+	private volatile long overrunCount;
+
+	// The lowest number of samples buffered since the buffer was filled, or -1 if it hasn't been measured
+	private volatile int minimumBuffered = -1;
+
+	/**
+	 * Class Constructor.
+	 *
+	 * @param sink - The sink that plays the samples.
+	 * @param bufferMillis - The length of audio held by the ring buffer, in milliseconds.
+	 */
+	public AudioOutput(AudioSink sink, int bufferMillis)
+	{
+		this.sink = sink;
+		this.bufferMillis = bufferMillis;
+	}
+
+	@Override
+	public void open(int sampleRate, int channels) throws IOException
+	{
+		this.startThread();
+
+		synchronized (this.outputLock)
+		{
+			// The new buffer carries on from the position of the old one so that any markers stay in place. As when
+			// reopening a sink, any samples that haven't been played are discarded
+			PcmRingBuffer oldBuffer = this.buffer;
+			long position = (oldBuffer == null) ? 0 : oldBuffer.getWritePosition();
+
+			this.buffer = new PcmRingBuffer((int) (((long) sampleRate * channels * this.bufferMillis) / 1000), position);
+			this.sampleRate = sampleRate;
+			this.channels = channels;
+			this.isPrimed = false;
+
+			this.sink.open(sampleRate, channels);
+		}
+		LockSupport.unpark(this.outputThread);
+	}
+
+	/**
+	 * Writes samples to the ring buffer, waiting for space if it is full. Returns early if the output is flushed or
+	 * closed.
+	 */
+	@Override
+	public void write(short[] samples, int offset, int length)
+	{
+		int flushes = this.flushCount;
+		boolean hasWaited = false;
+
+		while (length > 0 && !this.isClosed && this.flushCount == flushes)
+		{
+			PcmRingBuffer currentBuffer = this.buffer;
+
+			if (currentBuffer == null)
+			{
+				return;
+			}
+
+			int count = currentBuffer.write(samples, offset, length);
+			offset += count;
+			length -= count;
+
+			if (count > 0)
+			{
+				if (!this.isPrimed && currentBuffer.getAvailable() >= currentBuffer.getCapacity() / 2)
+				{
+					this.isPrimed = true;
+				}
+				LockSupport.unpark(this.outputThread);
+			}
+
+			if (length > 0)
+			{
+				// The decoder is ahead of the output, so wait for the output to make space
+				if (!hasWaited)
+				{
+					this.overrunCount++;
+					hasWaited = true;
+				}
+				this.waitingWriter = Thread.currentThread();
+				LockSupport.parkNanos(this, WAIT_NANOS);
+				this.waitingWriter = null;
+			}
+		}
+	}
+
+	/**
+	 * Places a marker after the samples written so far. Must be called by the thread writing the samples.
+	 *
+	 * @param positionMillis - The playback position of the samples that follow the marker, or -1 to carry on counting
+	 *            from the previous marker.
+	 * @param action - Run on the output thread once the samples before the marker have been passed to the sink, or
+	 *            immediately if they are flushed. May be null.
+	 */
+	public void mark(long positionMillis, Runnable action)
+	{
+		this.startThread();
+
+		PcmRingBuffer currentBuffer = this.buffer;
+
+		synchronized (this.markers)
+		{
+			this.markers.add(new Marker((currentBuffer == null) ? 0 : currentBuffer.getWritePosition(), positionMillis, action, this.flushCount));
+		}
+		LockSupport.unpark(this.outputThread);
+	}
+
+	/**
+	 * Stops the output immediately, keeping the samples that haven't yet been played.
+	 */
+	@Override
+	public void pause()
+	{
+		this.isPaused = true;
+		this.sink.pause();
+	}
+
+	@Override
+	public void resume()
+	{
+		this.isPaused = false;
+		this.sink.resume();
+		LockSupport.unpark(this.outputThread);
+	}
+
+	/**
+	 * Discards the samples that haven't yet been played. Any markers between them are still run, in order. May be
+	 * called by any thread.
+	 */
+	@Override
+	public void flush()
+	{
+		synchronized (this.markers)
+		{
+			PcmRingBuffer currentBuffer = this.buffer;
+
+			if (currentBuffer != null)
+			{
+				// Hold the playback position until the next marker, rather than counting the discarded samples
+				long position = currentBuffer.getWritePosition();
+				this.baseMillis = this.getPositionMillis();
+				this.basePosition = position;
+				this.flushPosition = position;
+			}
+			this.flushCount++;
+			this.isPrimed = false;
+		}
+
+		// Release the output thread if it is waiting on the sink
+		this.sink.flush();
+
+		LockSupport.unpark(this.outputThread);
+		LockSupport.unpark(this.waitingWriter);
+	}
+
+	/**
+	 * Waits until all of the written samples have been played, including while paused. Returns early if the output is
+	 * flushed or closed.
+	 */
+	@Override
+	public void drain()
+	{
+		int flushes = this.flushCount;
+		this.isDraining = true;
+
+		try
+		{
+			while (!this.isClosed && this.flushCount == flushes && this.hasPendingOutput())
+			{
+				this.waitingWriter = Thread.currentThread();
+				LockSupport.parkNanos(this, WAIT_NANOS);
+				this.waitingWriter = null;
+			}
+
+			if (!this.isClosed && this.flushCount == flushes)
+			{
+				this.sink.drain();
+			}
+		}
+		finally
+		{
+			this.isDraining = false;
+			this.isPrimed = false;
+		}
+	}
+
+	/**
+	 * Identifies whether there are any samples or markers that haven't yet been passed to the sink.
+	 */
+	private boolean hasPendingOutput()
+	{
+		PcmRingBuffer currentBuffer = this.buffer;
+
+		if (currentBuffer != null && currentBuffer.getAvailable() > 0)
+		{
+			return true;
+		}
+
+		synchronized (this.markers)
+		{
+			return !this.markers.isEmpty();
+		}
+	}
+
+	/**
+	 * Stops the output thread and closes the sink. Any samples that haven't been played are discarded.
+	 */
+	@Override
+	public void close()
+	{
+		Thread thread;
+
+		synchronized (this)
+		{
+			this.isClosed = true;
+			thread = this.outputThread;
+		}
+
+		this.sink.flush();
+		LockSupport.unpark(thread);
+		LockSupport.unpark(this.waitingWriter);
+
+		if (thread != null && thread != Thread.currentThread())
+		{
+			try
+			{
+				thread.join(CLOSE_TIMEOUT_MILLIS);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		this.sink.close();
+	}
+
+	@Override
+	public boolean isOpen()
+	{
+		return this.sink.isOpen();
+	}
+
+	@Override
+	public int getSampleRate()
+	{
+		return this.sink.getSampleRate();
+	}
+
+	@Override
+	public int getChannels()
+	{
+		return this.sink.getChannels();
+	}
+
+	/**
+	 * Gets the playback position of the samples being passed to the sink, counted from the last marker reached.
+	 *
+	 * @return The position in milliseconds.
+	 */
+	public long getPositionMillis()
+	{
+		synchronized (this.markers)
+		{
+			PcmRingBuffer currentBuffer = this.buffer;
+			long samplesPerSecond = (long) this.sampleRate * this.channels;
+
+			if (currentBuffer == null || samplesPerSecond == 0)
+			{
+				return this.baseMillis;
+			}
+
+			long played = Math.max(0, currentBuffer.getReadPosition() - this.basePosition);
+			return this.baseMillis + (played * 1000) / samplesPerSecond;
+		}
+	}
+
+	/**
+	 * Gets the number of times the buffer has run empty while playing, after having been filled. Each underrun is a
+	 * point at which the decoder didn't keep up, and the sink may have run out of audio.
+	 *
+	 * @return The number of underruns.
+	 */
+	public long getUnderrunCount()
+	{
+		return this.underrunCount;
+	}
+
+	/**
+	 * Gets the number of writes that had to wait for space because the buffer was full. While playing steadily most
+	 * writes wait, as the decoder is faster than the output.
+	 *
+	 * @return The number of overruns.
+	 */
+	public long getOverrunCount()
+	{
+		return this.overrunCount;
+	}
+
+	/**
+	 * Gets the length of audio currently buffered.
+	 *
+	 * @return The buffered audio in milliseconds.
+	 */
+	public int getBufferedMillis()
+	{
+		PcmRingBuffer currentBuffer = this.buffer;
+		return (currentBuffer == null) ? 0 : this.toMillis(currentBuffer.getAvailable());
+	}
+
+	/**
+	 * Gets the lowest length of audio that has been buffered since the buffer was first filled, showing how close the
+	 * output has come to an underrun.
+	 *
+	 * @return The lowest buffered audio in milliseconds, or -1 if the buffer hasn't yet been filled.
+	 */
+	public int getMinimumBufferedMillis()
+	{
+		int minimum = this.minimumBuffered;
+		return (minimum < 0) ? -1 : this.toMillis(minimum);
+	}
+
+	/**
+	 * Gets the length of audio that the buffer can hold.
+	 *
+	 * @return The capacity in milliseconds.
+	 */
+	public int getBufferMillis()
+	{
+		return this.bufferMillis;
+	}
+
+	/**
+	 * Resets the underrun and overrun counts and the lowest buffered length.
+	 */
+	public void resetStatistics()
+	{
+		this.underrunCount = 0;
+		this.overrunCount = 0;
+		this.minimumBuffered = -1;
+	}
+
+	/**
+	 * Converts a number of samples, across all channels, to milliseconds.
+	 */
+	private int toMillis(int samples)
+	{
+		long samplesPerSecond = (long) this.sampleRate * this.channels;
+		return (samplesPerSecond == 0) ? 0 : (int) ((samples * 1000L) / samplesPerSecond);
+	}
+
+	/**
+	 * Starts the output thread if it hasn't yet been started.
+	 */
+	private synchronized void startThread()
+	{
+		if (this.outputThread == null && !this.isClosed)
+		{
+			this.outputThread = new Thread("Audio Output")
+			{
+				@Override
+				public void run()
+				{
+					runOutput();
+				}
+			};
+			this.outputThread.setDaemon(true);
+			// Give the output priority over decoding, so that buffered audio keeps playing while the decoder is busy
+			this.outputThread.setPriority(Thread.MAX_PRIORITY);
+			this.outputThread.start();
+		}
+	}
+
+	/**
+	 * The main loop of the output thread. Passes samples from the buffer to the sink one chunk at a time, and runs
+	 * the markers that are reached.
+	 */
+	private void runOutput()
+	{
+		short[] chunk = new short[CHUNK_SIZE];
+
+		while (!this.isClosed)
+		{
+			List<Marker> reachedMarkers;
+			boolean isWritten = false;
+			boolean isWaitingForMarker = false;
+
+			synchronized (this.outputLock)
+			{
+				PcmRingBuffer currentBuffer = this.buffer;
+				long readPosition = 0;
+				long nextMarkerPosition = Long.MAX_VALUE;
+
+				if (currentBuffer != null)
+				{
+					currentBuffer.skipTo(this.flushPosition);
+					readPosition = currentBuffer.getReadPosition();
+				}
+
+				synchronized (this.markers)
+				{
+					reachedMarkers = this.takeReachedMarkers(readPosition);
+
+					if (!this.markers.isEmpty())
+					{
+						nextMarkerPosition = this.markers.peek().position;
+						isWaitingForMarker = !this.isPaused;
+					}
+				}
+
+				// Run the reached markers before passing on the samples that follow them
+				if (reachedMarkers.isEmpty() && currentBuffer != null && !this.isPaused)
+				{
+					int length = (int) Math.min(CHUNK_SIZE, nextMarkerPosition - readPosition);
+					int count = currentBuffer.peek(chunk, 0, length);
+
+					if (count > 0)
+					{
+						// Blocks until the sink has accepted the samples, which are only then counted as read
+						this.sink.write(chunk, 0, count);
+						currentBuffer.advance(count);
+						isWritten = true;
+
+						if (this.isPrimed && !this.isDraining)
+						{
+							int buffered = currentBuffer.getAvailable();
+							if (this.minimumBuffered < 0 || buffered < this.minimumBuffered)
+							{
+								this.minimumBuffered = buffered;
+							}
+						}
+					}
+					else if (this.isPrimed && !this.isDraining && currentBuffer.getAvailable() == 0)
+					{
+						// The buffer was filled, so running empty means that the decoder has fallen behind
+						this.underrunCount++;
+						this.isPrimed = false;
+					}
+				}
+			}
+
+			for (Marker marker : reachedMarkers)
+			{
+				if (marker.action != null)
+				{
+					try
+					{
+						marker.action.run();
+					}
+					catch (RuntimeException e)
+					{
+						e.printStackTrace();
+					}
+				}
+			}
+
+			if (isWritten || !reachedMarkers.isEmpty())
+			{
+				LockSupport.unpark(this.waitingWriter);
+			}
+			else if (isWaitingForMarker)
+			{
+				// The engine may be waiting on the marker's action, so check again shortly in case a wake up was missed
+				LockSupport.parkNanos(this, WAIT_NANOS);
+			}
+			else
+			{
+				// Nothing to do until samples are written, a marker is placed or the output is opened, resumed,
+				// flushed or closed, each of which wakes this thread
+				LockSupport.park(this);
+			}
+		}
+	}
+
+	/**
+	 * Removes the markers that have been reached, updating the playback position from each one that wasn't flushed.
+	 * Must be called while holding the markers lock.
+	 *
+	 * @param readPosition - The position of the next sample to be passed to the sink.
+	 * @return The reached markers, in order.
+	 */
+	private List<Marker> takeReachedMarkers(long readPosition)
+	{
+		List<Marker> reachedMarkers = new ArrayList<Marker>();
+
+		while (!this.markers.isEmpty() && this.markers.peek().position <= readPosition)
+		{
+			Marker marker = this.markers.poll();
+
+			// A marker placed before a flush is out of date, as the flush holds the position until the next marker
+			if (marker.positionMillis >= 0 && marker.flushCount == this.flushCount)
+			{
+				this.basePosition = marker.position;
+				this.baseMillis = marker.positionMillis;
+			}
+			reachedMarkers.add(marker);
+		}
+		return reachedMarkers;
+	}
+
+	/**
+	 * A point between samples at which to run an action and reset the playback position.
+	 */
+	private static class Marker
+	{
+		// The position of the sample that follows the marker
+		private final long position;
+
+		// The playback position of that sample, or -1 if it isn't set
+		private final long positionMillis;
+
+		// The action to be run, or null
+		private final Runnable action;
+
+		// The number of flushes when the marker was placed
+		private final int flushCount;
+
+		private Marker(long position, long positionMillis, Runnable action, int flushCount)
+		{
+			this.position = position;
+			this.positionMillis = positionMillis;
+			this.action = action;
+			this.flushCount = flushCount;
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package com.pe.audio;
+
+import java.io.IOException;
+
+/**
+ * Represents a destination for decoded audio samples.
+ *
+ * @author olly.rowe
+ */
+public interface AudioSink
+{
+	/**
+	 * Opens the sink for audio of the given format, closing it first if it is already open.
+	 *
+	 * @param sampleRate - The number of samples per second.
+	 * @param channels - The number of channels.
+	 */
+	void open(int sampleRate, int channels) throws IOException;
+
+	/**
+	 * Writes interleaved 16-bit samples, blocking until they have all been accepted or the sink is flushed.
+	 *
+	 * @param samples - The buffer containing the samples.
+	 * @param offset - The offset of the first sample within the buffer.
+	 * @param length - The number of samples, across all channels.
+	 */
+	void write(short[] samples, int offset, int length);
+
+	/**
+	 * Stops the output immediately, keeping any samples that have not yet been played.
+	 */
+	void pause();
+
+	/**
+	 * Restarts the output after it has been paused.
+	 */
+	void resume();
+
+	/**
+	 * Discards any samples that have not yet been played.
+	 */
+	void flush();
+
+	/**
+	 * Blocks until all of the written samples have been played.
+	 */
+	void drain();
+
+	/**
+	 * Closes the sink, releasing any resources held.
+	 */
+	void close();
+
+	/**
+	 * Identifies whether the sink is open.
+	 */
+	boolean isOpen();
+
+	/**
+	 * Gets the sample rate that the sink was last opened with.
+	 */
+	int getSampleRate();
+
+	/**
+	 * Gets the number of channels that the sink was last opened with.
+	 */
+	int getChannels();
+}
@@ -0,0 +1,312 @@
+package com.pe.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.mpatric.mp3agic.ID3v2;
+import com.mpatric.mp3agic.ID3v24Tag;
+import com.mpatric.mp3agic.NotSupportedException;
+import com.pe.formats.CueSheet;
+
+/**
+ * Splits an mp3 file into many tracks at once, such as a recording of a live set.
+ *
+ * The split points are read from a CUE sheet or from a list of timestamps, one per line. The segments are written in
+ * order with a single pass over the source file, and each is given its own ID3v2 tag, based on the tag of the source
+ * with the title, artist and track number of the segment.
+ *
+ * @author olly.rowe
+ */
+public class BatchSplitter
+{
+	/**
+	 * Class Constructor. Not used as all methods are static.
+	 */
+	private BatchSplitter()
+	{
+	}
+
+	/**
+	 * Reads the segments from a CUE sheet, if the file has the .cue extension, or otherwise from a list of timestamps.
+	 *
+	 * Each line of a timestamp list holds the start of a segment, as [hh:]mm:ss[.fff], optionally followed by the title
+	 * or by the artist and title separated by " - ". Blank lines and lines starting with # are ignored.
+	 *
+	 * @param file - The CUE sheet or timestamp list.
+	 * @return The segments, in the order in which they are listed.
+	 */
+	public static List<Segment> readSegments(File file) throws IOException
+	{
+		List<Segment> segments = new ArrayList<Segment>();
+
+		if (file.getName().toLowerCase().endsWith(".cue"))
+		{
+			CueSheet sheet = CueSheet.read(file);
+
+			for (CueSheet.Track track : sheet.getTracks())
+			{
+				String artist = (track.getPerformer() != null) ? track.getPerformer() : sheet.getPerformer();
+				segments.add(new Segment(track.getStartMillis(), track.getTitle(), artist));
+			}
+			return segments;
+		}
+
+		for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8))
+		{
+			line = line.trim();
+
+			if (line.isEmpty() || line.startsWith("#"))
+			{
+				continue;
+			}
+
+			int separator = line.indexOf(' ');
+			String time = (separator < 0) ? line : line.substring(0, separator);
+			String description = (separator < 0) ? "" : line.substring(separator + 1).trim();
+
+			String title = description.isEmpty() ? null : description;
+			String artist = null;
+
+			// Separate the artist from the title if both are given
+			int dash = description.indexOf(" - ");
+			if (dash > 0)
+			{
+				artist = description.substring(0, dash).trim();
+				title = description.substring(dash + 3).trim();
+			}
+
+			segments.add(new Segment(parseTimestamp(time, line), title, artist));
+		}
+		return segments;
+	}
+
+	/**
+	 * Parses a timestamp of the form [hh:]mm:ss[.fff].
+	 *
+	 * @param time - The timestamp.
+	 * @param line - The line containing the timestamp, for reporting errors.
+	 * @return The time in milliseconds.
+	 */
+	private static long parseTimestamp(String time, String line) throws IOException
+	{
+		try
+		{
+			String[] parts = time.split(":");
+
+			if (parts.length < 2 || parts.length > 3)
+			{
+				throw new NumberFormatException();
+			}
+
+			long millis = Math.round(Double.parseDouble(parts[parts.length - 1]) * 1000);
+			millis += Long.parseLong(parts[parts.length - 2]) * 60 * 1000;
+
+			if (parts.length == 3)
+			{
+				millis += Long.parseLong(parts[0]) * 60 * 60 * 1000;
+			}
+			return millis;
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IOException("Invalid timestamp: " + line);
+		}
+	}
+
+	/**
+	 * Splits a file into segments, writing each to its own file within the output directory.
+	 *
+	 * Each segment runs until the start of the next. The first segment always starts at the beginning of the file, so
+	 * that no audio is lost.
+	 *
+	 * @param source - The mp3 file to be split.
+	 * @param segments - The segments to be written.
+	 * @param outputDirectory - The directory to which the segments are written.
+	 * @param listener - The listener to be notified of the progress of the whole split, or null.
+	 * @return The files written, in order.
+	 */
+	public static List<File> split(File source, List<Segment> segments, File outputDirectory, final TrackSplitter.ProgressListener listener)
+			throws IOException
+	{
+		if (segments.isEmpty())
+		{
+			throw new IOException("There are no split points");
+		}
+
+		// Write the segments in order of their start times so that the source is read from start to end
+		List<Segment> orderedSegments = new ArrayList<Segment>(segments);
+		Collections.sort(orderedSegments, new Comparator<Segment>()
+		{
+			@Override
+			public int compare(Segment first, Segment second)
+			{
+				return Long.compare(first.startMillis, second.startMillis);
+			}
+		});
+
+		FrameIndex frameIndex = FrameIndex.build(source);
+
+		// Base the tag of each segment on that of the source
+		ID3v2 tag = Mp3HeaderReader.read(source).getId3v2Tag();
+		if (tag == null)
+		{
+			tag = new ID3v24Tag();
+		}
+		String sourceTitle = (tag.getTitle() != null) ? tag.getTitle() : source.getName().replaceAll("(?i)\\.mp3$", "");
+		String sourceArtist = tag.getArtist();
+		// The length of the source no longer applies
+		tag.clearFrameSet("TLEN");
+
+		if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs())
+		{
+			throw new IOException("Unable to create the directory " + outputDirectory.getAbsolutePath());
+		}
+
+		// The number of bytes of audio to be written, for reporting progress
+		final long totalBytes = frameIndex.getAudioEndOffset() - frameIndex.getFrameOffset(0);
+		long bytesWritten = 0;
+
+		List<File> outputFiles = new ArrayList<File>();
+
+		for (int i = 0; i < orderedSegments.size(); i++)
+		{
+			Segment segment = orderedSegments.get(i);
+
+			int startFrame = (i == 0) ? 0 : frameIndex.getFrameAt(segment.startMillis);
+			int endFrame = (i + 1 < orderedSegments.size()) ? frameIndex.getFrameAt(orderedSegments.get(i + 1).startMillis) : frameIndex.getFrameCount();
+
+			// Skip segments that contain no audio, such as those with the same start time as the next
+			if (endFrame <= startFrame)
+			{
+				continue;
+			}
+
+			int trackNumber = outputFiles.size() + 1;
+			String title = (segment.title != null) ? segment.title : sourceTitle + " (Part " + trackNumber + ")";
+
+			tag.setTitle(title);
+			tag.setArtist((segment.artist != null) ? segment.artist : sourceArtist);
+			tag.setTrack(String.valueOf(trackNumber));
+
+			byte[] tagBytes;
+			try
+			{
+				tagBytes = tag.toBytes();
+			}
+			catch (NotSupportedException e)
+			{
+				throw new IOException("Unable to write the tag of " + title, e);
+			}
+
+			File output = new File(outputDirectory, String.format("%02d - %s.mp3", trackNumber, toFileName(title)));
+
+			final long segmentStart = bytesWritten;
+			TrackSplitter.writeSegment(source, frameIndex, startFrame, endFrame, tagBytes, output, new TrackSplitter.ProgressListener()
+			{
+				@Override
+				public void progressed(long segmentBytesWritten, long segmentTotalBytes)
+				{
+					if (listener != null)
+					{
+						listener.progressed(segmentStart + segmentBytesWritten, totalBytes);
+					}
+				}
+			});
+			bytesWritten += frameIndex.getFrameOffset(endFrame) - frameIndex.getFrameOffset(startFrame);
+
+			outputFiles.add(output);
+		}
+		return outputFiles;
+	}
+
+	/**
+	 * Replaces the characters of a title that aren't allowed within file names.
+	 *
+	 * @param title - The title.
+	 * @return The file name.
+	 */
+	private static String toFileName(String title)
+	{
+		return title.replaceAll("[\\\\/:*?\"<>|]", "_").trim();
+	}
+
+	/**
+	 * Splits a file from the command line.
+	 *
+	 * Usage: BatchSplitter &lt;source.mp3&gt; &lt;points.cue | points.txt&gt; [output directory]
+	 *
+	 * @param args - The command line arguments.
+	 */
+	public static void main(String[] args)
+	{
+		if (args.length < 2 || args.length > 3)
+		{
+			System.err.println("Usage: BatchSplitter <source.mp3> <points.cue | points.txt> [output directory]");
+			System.exit(2);
+		}
+
+		File source = new File(args[0]);
+		File outputDirectory = (args.length == 3) ? new File(args[2]) : source.getAbsoluteFile().getParentFile();
+
+		try
+		{
+			for (File output : split(source, readSegments(new File(args[1])), outputDirectory, null))
+			{
+				System.out.println(output.getPath());
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("Unable to split " + source.getName() + ": " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Represents a segment of the source file to be written as a track of its own.
+	 */
+	public static class Segment
+	{
+		// The start of the segment within the source
+		private long startMillis;
+
+		// The title and artist of the segment, null to use those of the source
+		private String title;
+		private String artist;
+
+		/**
+		 * Class Constructor.
+		 *
+		 * @param startMillis - The start of the segment within the source, in milliseconds.
+		 * @param title - The title, or null to use that of the source.
+		 * @param artist - The artist, or null to use that of the source.
+		 */
+		public Segment(long startMillis, String title, String artist)
+		{
+			this.startMillis = startMillis;
+			this.title = title;
+			this.artist = artist;
+		}
+
+		public long getStartMillis()
+		{
+			return this.startMillis;
+		}
+
+		public String getTitle()
+		{
+			return this.title;
+		}
+
+		public String getArtist()
+		{
+			return this.artist;
+		}
+	}
+}
@@ -0,0 +1,528 @@
+package com.pe.audio;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import com.mpatric.mp3agic.MpegFrame;
+
+/**
+ * An index of the byte offset and start time of every MPEG audio frame within an mp3 file.
+ *
+ * The index is built with a single pass over the frame headers, and allows playback and splitting to start exactly on a
+ * frame boundary. Any Xing / Info or VBRI frame at the start of the file is excluded as it contains no audio.
+ *
+ * If the file has a LAME tag, the silence added by the encoder to the start and end of the audio is excluded from the
+ * times and duration, so that consecutive tracks can be played without a gap.
+ *
+ * A compact copy of the index, its seek table, holds the offset of only every nth frame so that it can be stored with
+ * the metadata of the file. The times and duration are still exact, and playback seeks to the nearest preceding frame
+ * in the table then skips forward frame by frame.
+ *
+ * @author olly.rowe
+ */
+public class FrameIndex
+{
+	// The number of samples by which the decoder output lags behind its input
+	private static final int DECODER_DELAY = 529;
+
+	// The number of frame offsets held by the seek table stored with the metadata of a file
+	public static final int SEEK_TABLE_POINTS = 100;
+
+	// The total length of the ID3v2 tag at the start of the file, 0 if there isn't one
+	private int tagLength;
+
+	// The byte offset of each frame, or of every nth frame in a seek table
+	private long[] frameOffsets;
+	// The number of frames within the index
+	private int frameCount;
+	// The number of frames between each offset held, 1 if the offset of every frame is held
+	private int offsetStep = 1;
+
+	// The byte offset immediately following the last frame
+	private long audioEndOffset;
+
+	// The number of samples per channel within each frame and the number of samples per second
+	private int samplesPerFrame;
+	private int sampleRate;
+
+	// The encoder delay and padding from the LAME tag, in samples per channel, -1 if there isn't a tag
+	private int encoderDelay = -1;
+	private int encoderPadding = -1;
+
+	/**
+	 * Class Constructor. Use {@link #build(File)} to create an instance.
+	 */
+	private FrameIndex()
+	{
+		this.frameOffsets = new long[0];
+	}
+
+	/**
+	 * Builds the frame index of an mp3 file.
+	 *
+	 * @param file - The mp3 file to be indexed.
+	 * @return The frame index.
+	 */
+	public static FrameIndex build(File file) throws IOException
+	{
+		try (TrackInput input = TrackInput.open(file))
+		{
+			return build(file, input);
+		}
+	}
+
+	/**
+	 * Builds the frame index of an mp3 file that is already open, leaving the input positioned at the end of the
+	 * audio.
+	 *
+	 * @param file - The mp3 file to be indexed.
+	 * @param input - The open file.
+	 * @return The frame index.
+	 */
+	static FrameIndex build(File file, TrackInput input) throws IOException
+	{
+		FrameIndex index = new FrameIndex();
+		index.frameOffsets = new long[1024];
+
+		// The offset at which the audio ends, excluding any ID3v1 tag
+		long audioLength;
+
+		try (RandomAccessFile tagInput = new RandomAccessFile(file, "r"))
+		{
+			index.tagLength = Mp3HeaderReader.readTagLength(tagInput);
+			audioLength = tagInput.length() - (Mp3HeaderReader.hasId3v1Tag(tagInput) ? Mp3HeaderReader.ID3V1_TAG_LENGTH : 0);
+		}
+
+		input.seek(0);
+		index.scan(input, audioLength);
+
+		// Release the unused capacity
+		index.frameOffsets = Arrays.copyOf(index.frameOffsets, index.frameCount);
+
+		return index;
+	}
+
+	/**
+	 * Scans the frame headers of the file, recording the offset of each frame.
+	 *
+	 * @param input - The file input stream, positioned at the start of the file.
+	 * @param audioLength - The offset at which the audio ends.
+	 */
+	private void scan(InputStream input, long audioLength) throws IOException
+	{
+		// Skip past the ID3v2 tag
+		skipFully(input, this.tagLength);
+
+		long position = this.tagLength;
+		byte[] header = new byte[4];
+
+		// Whether the previous header was valid, after which the next frame is trusted without further checks
+		boolean isSynced = false;
+
+		if (!readFully(input, header, 0, 4))
+		{
+			return;
+		}
+
+		while (position + 4 <= audioLength)
+		{
+			MpegFrame frame = Mp3HeaderReader.parseHeader(header, 0);
+
+			// When searching for the first frame, or after corrupt data, also check that the following frame is valid
+			if (frame != null && !isSynced && !isFollowedByFrame(input, frame.getLengthInBytes()))
+			{
+				frame = null;
+			}
+
+			if (frame == null || frame.getLengthInBytes() <= 4)
+			{
+				// Move forward a single byte and try again
+				isSynced = false;
+				System.arraycopy(header, 1, header, 0, 3);
+				int next = input.read();
+				if (next == -1)
+				{
+					break;
+				}
+				header[3] = (byte) next;
+				position++;
+				continue;
+			}
+
+			int frameLength = frame.getLengthInBytes();
+
+			// Ignore a truncated frame at the end of the file
+			if (position + frameLength > audioLength)
+			{
+				break;
+			}
+
+			if (this.frameCount == 0 && !isSynced)
+			{
+				// Check whether the first frame is an information frame, which is excluded from the index
+				byte[] frameBytes = new byte[frameLength];
+				System.arraycopy(header, 0, frameBytes, 0, 4);
+				if (!readFully(input, frameBytes, 4, frameLength - 4))
+				{
+					break;
+				}
+
+				this.samplesPerFrame = Mp3HeaderReader.getSamplesPerFrame(frame);
+				this.sampleRate = frame.getSampleRate();
+
+				if (!Mp3HeaderReader.isInfoFrame(frameBytes, 0, frame))
+				{
+					this.addFrame(position, frameLength);
+				}
+				else
+				{
+					// Read the encoder delay and padding if the information frame contains them
+					int[] encoderDelay = Mp3HeaderReader.readEncoderDelay(frameBytes, 0, frame);
+					if (encoderDelay != null)
+					{
+						this.encoderDelay = encoderDelay[0];
+						this.encoderPadding = encoderDelay[1];
+					}
+				}
+			}
+			else
+			{
+				if (this.frameCount == 0)
+				{
+					this.samplesPerFrame = Mp3HeaderReader.getSamplesPerFrame(frame);
+					this.sampleRate = frame.getSampleRate();
+				}
+				this.addFrame(position, frameLength);
+				skipFully(input, frameLength - 4);
+			}
+
+			isSynced = true;
+			position += frameLength;
+
+			// Read the header of the next frame
+			if (!readFully(input, header, 0, 4))
+			{
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Records a frame.
+	 *
+	 * @param offset - The byte offset of the frame.
+	 * @param length - The length of the frame in bytes.
+	 */
+	private void addFrame(long offset, int length)
+	{
+		if (this.frameCount == this.frameOffsets.length)
+		{
+			this.frameOffsets = Arrays.copyOf(this.frameOffsets, this.frameCount * 2);
+		}
+		this.frameOffsets[this.frameCount++] = offset;
+		this.audioEndOffset = offset + length;
+	}
+
+	/**
+	 * Checks whether the bytes following the current frame begin with a valid frame header, without consuming them.
+	 *
+	 * @param input - The input stream, positioned after the header of the current frame.
+	 * @param frameLength - The length of the current frame.
+	 * @return Whether the next frame header is valid, or true if the current frame is the last in the file.
+	 */
+	private static boolean isFollowedByFrame(InputStream input, int frameLength) throws IOException
+	{
+		if (frameLength <= 4)
+		{
+			return false;
+		}
+
+		byte[] nextHeader = new byte[4];
+
+		input.mark(frameLength + 4);
+		try
+		{
+			skipFully(input, frameLength - 4);
+			return !readFully(input, nextHeader, 0, 4) || Mp3HeaderReader.parseHeader(nextHeader, 0) != null;
+		}
+		catch (EOFException e)
+		{
+			return true;
+		}
+		finally
+		{
+			input.reset();
+		}
+	}
+
+	/**
+	 * Reads a number of bytes, unless the end of the stream is reached first.
+	 *
+	 * @return Whether all of the bytes were read.
+	 */
+	private static boolean readFully(InputStream input, byte[] buffer, int offset, int length) throws IOException
+	{
+		while (length > 0)
+		{
+			int read = input.read(buffer, offset, length);
+			if (read == -1)
+			{
+				return false;
+			}
+			offset += read;
+			length -= read;
+		}
+		return true;
+	}
+
+	/**
+	 * Skips a number of bytes, throwing an exception if the end of the stream is reached first.
+	 */
+	private static void skipFully(InputStream input, long length) throws IOException
+	{
+		while (length > 0)
+		{
+			long skipped = input.skip(length);
+			if (skipped <= 0)
+			{
+				// Skip may return 0 before the end of the stream, so check by reading a byte
+				if (input.read() == -1)
+				{
+					throw new EOFException();
+				}
+				skipped = 1;
+			}
+			length -= skipped;
+		}
+	}
+
+	/**
+	 * Gets the number of the frame that is playing at a given time.
+	 *
+	 * @param millis - The time in milliseconds from the start of the audio.
+	 * @return The frame number, limited to the valid range of frames.
+	 */
+	public int getFrameAt(long millis)
+	{
+		if (this.frameCount == 0)
+		{
+			return 0;
+		}
+		long frame = ((millis * this.sampleRate) / 1000 + this.getFirstSample()) / this.samplesPerFrame;
+		return (int) Math.max(0, Math.min(frame, this.frameCount - 1));
+	}
+
+	/**
+	 * Gets the byte offset of a frame.
+	 *
+	 * @param frame - The frame number, which must be a seek point if this is a seek table.
+	 * @return The byte offset, or the end of the audio if the frame number is beyond the last frame.
+	 */
+	public long getFrameOffset(int frame)
+	{
+		if (frame >= this.frameCount)
+		{
+			return this.audioEndOffset;
+		}
+		if (frame % this.offsetStep != 0)
+		{
+			throw new IllegalArgumentException("The offset of frame " + frame + " isn't held by the seek table");
+		}
+		return this.frameOffsets[frame / this.offsetStep];
+	}
+
+	/**
+	 * Gets the nearest frame at or before a frame whose offset is held, from which the frame can be reached by
+	 * skipping forward.
+	 *
+	 * @param frame - The frame number.
+	 * @return The frame number of the seek point, the frame itself if the offset of every frame is held.
+	 */
+	public int getSeekPoint(int frame)
+	{
+		return frame - frame % this.offsetStep;
+	}
+
+	/**
+	 * Identifies whether the offset of every frame is held, as needed to split the file, rather than this being a
+	 * seek table.
+	 */
+	public boolean isComplete()
+	{
+		return this.offsetStep == 1;
+	}
+
+	/**
+	 * Creates a seek table from the index, holding no more than a given number of frame offsets.
+	 *
+	 * @param maxPoints - The maximum number of offsets held.
+	 * @return The seek table.
+	 */
+	public FrameIndex toSeekTable(int maxPoints)
+	{
+		FrameIndex table = this.copyFormat();
+		table.offsetStep = this.offsetStep * Math.max(1, (this.frameCount + maxPoints * this.offsetStep - 1) / (maxPoints * this.offsetStep));
+
+		int step = table.offsetStep / this.offsetStep;
+		table.frameOffsets = new long[(this.frameOffsets.length + step - 1) / step];
+		for (int i = 0; i < table.frameOffsets.length; i++)
+		{
+			table.frameOffsets[i] = this.frameOffsets[i * step];
+		}
+		return table;
+	}
+
+	/**
+	 * Creates an index without any frame offsets, with the same frames and format as this one.
+	 */
+	private FrameIndex copyFormat()
+	{
+		FrameIndex copy = new FrameIndex();
+		copy.tagLength = this.tagLength;
+		copy.frameCount = this.frameCount;
+		copy.audioEndOffset = this.audioEndOffset;
+		copy.samplesPerFrame = this.samplesPerFrame;
+		copy.sampleRate = this.sampleRate;
+		copy.encoderDelay = this.encoderDelay;
+		copy.encoderPadding = this.encoderPadding;
+		return copy;
+	}
+
+	/**
+	 * Writes the index, such as a seek table to be stored with the metadata of the file. The offsets are written as
+	 * the distance from the one before.
+	 *
+	 * @param output - The output to write to.
+	 */
+	public void write(DataOutput output) throws IOException
+	{
+		output.writeInt(this.tagLength);
+		output.writeInt(this.frameCount);
+		output.writeLong(this.audioEndOffset);
+		output.writeInt(this.samplesPerFrame);
+		output.writeInt(this.sampleRate);
+		output.writeInt(this.encoderDelay);
+		output.writeInt(this.encoderPadding);
+		output.writeInt(this.offsetStep);
+		output.writeInt(this.frameOffsets.length);
+
+		long previousOffset = 0;
+		for (long offset : this.frameOffsets)
+		{
+			output.writeInt((int) (offset - previousOffset));
+			previousOffset = offset;
+		}
+	}
+
+	/**
+	 * Reads an index written by {@link #write(DataOutput)}.
+	 *
+	 * @param input - The input to read from.
+	 * @return The index.
+	 */
+	public static FrameIndex read(DataInput input) throws IOException
+	{
+		FrameIndex index = new FrameIndex();
+		index.tagLength = input.readInt();
+		index.frameCount = input.readInt();
+		index.audioEndOffset = input.readLong();
+		index.samplesPerFrame = input.readInt();
+		index.sampleRate = input.readInt();
+		index.encoderDelay = input.readInt();
+		index.encoderPadding = input.readInt();
+		index.offsetStep = input.readInt();
+
+		int offsetCount = input.readInt();
+		if (index.offsetStep < 1 || offsetCount < 0 || offsetCount != (index.frameCount + index.offsetStep - 1) / index.offsetStep)
+		{
+			throw new IOException("Invalid frame index");
+		}
+
+		index.frameOffsets = new long[offsetCount];
+		long offset = 0;
+		for (int i = 0; i < offsetCount; i++)
+		{
+			offset += input.readInt();
+			index.frameOffsets[i] = offset;
+		}
+		return index;
+	}
+
+	/**
+	 * Gets the start time of a frame.
+	 *
+	 * @param frame - The frame number.
+	 * @return The time in milliseconds from the start of the audio.
+	 */
+	public long getFrameTime(int frame)
+	{
+		if (this.sampleRate == 0)
+		{
+			return 0;
+		}
+		long sample = Math.min((long) frame * this.samplesPerFrame, this.getEndSample()) - this.getFirstSample();
+		return (Math.max(0, sample) * 1000) / this.sampleRate;
+	}
+
+	/**
+	 * Gets the index of the first sample of the decoded output that is part of the audio, after the encoder delay.
+	 *
+	 * @return The sample index, per channel.
+	 */
+	public long getFirstSample()
+	{
+		return (this.encoderDelay < 0) ? 0 : this.encoderDelay + DECODER_DELAY;
+	}
+
+	/**
+	 * Gets the index of the sample of the decoded output immediately following the audio, before the encoder padding.
+	 *
+	 * @return The sample index, per channel.
+	 */
+	public long getEndSample()
+	{
+		long totalSamples = (long) this.frameCount * this.samplesPerFrame;
+
+		if (this.encoderPadding < 0)
+		{
+			return totalSamples;
+		}
+		return Math.max(this.getFirstSample(), Math.min(totalSamples, totalSamples - this.encoderPadding + DECODER_DELAY));
+	}
+
+	public int getFrameCount()
+	{
+		return this.frameCount;
+	}
+
+	public long getDurationMillis()
+	{
+		return (this.sampleRate == 0) ? 0 : ((this.getEndSample() - this.getFirstSample()) * 1000) / this.sampleRate;
+	}
+
+	public int getTagLength()
+	{
+		return this.tagLength;
+	}
+
+	public long getAudioEndOffset()
+	{
+		return this.audioEndOffset;
+	}
+
+	public int getSampleRate()
+	{
+		return this.sampleRate;
+	}
+
+	public int getSamplesPerFrame()
+	{
+		return this.samplesPerFrame;
+	}
+}
@@ -0,0 +1,255 @@
+package com.pe.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the gap between two tracks played one after the other, without an output device.
+ *
+ * The end of the first track and the start of the second are played in real time into a {@link NullSink}, first with
+ * the second track prepared in advance as the next track, then by opening the second track once the first has
+ * finished, as the player did before gapless playback. For each, the silence heard at the boundary between the tracks,
+ * the longest silence and the number of dropouts are printed, along with whether the first track wrote exactly the
+ * samples between its encoder delay and padding.
+ *
+ * Exits with 1 if the gapless run leaves a gap or writes the wrong number of samples, and 2 if the arguments are
+ * invalid.
+ *
+ * @author olly.rowe
+ */
+public class GaplessCheck
+{
+	// The length of the end of the first track that is played, in milliseconds
+	private static final long LEAD_IN_MILLIS = 3000;
+
+	// The length of the start of the second track that is played
+	private static final long LEAD_OUT_MILLIS = 1000;
+
+	// The silence at the boundary above which the tracks are not gapless, in milliseconds
+	private static final double MAX_GAPLESS_SILENCE_MILLIS = 1.0;
+
+	// How long to wait for each track to be played before giving up
+	private static final long TIMEOUT_MILLIS = 30000;
+
+	/**
+	 * Plays two tracks from the command line.
+	 *
+	 * Usage: GaplessCheck &lt;first.mp3&gt; &lt;second.mp3&gt; [pre-buffer milliseconds]
+	 *
+	 * @param args - The command line arguments.
+	 */
+	public static void main(String[] args)
+	{
+		int preBufferMillis = PlaybackEngine.DEFAULT_PRE_BUFFER_MILLIS;
+
+		try
+		{
+			if (args.length == 3)
+			{
+				preBufferMillis = Integer.parseInt(args[2]);
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			args = new String[0];
+		}
+
+		if (args.length < 2 || args.length > 3)
+		{
+			System.err.println("Usage: GaplessCheck <first.mp3> <second.mp3> [pre-buffer milliseconds]");
+			System.exit(2);
+		}
+
+		File first = new File(args[0]);
+		File second = new File(args[1]);
+
+		try
+		{
+			boolean isGapless = measure(first, second, preBufferMillis, true);
+			measure(first, second, preBufferMillis, false);
+
+			System.exit(isGapless ? 0 : 1);
+		}
+		catch (IOException | InterruptedException e)
+		{
+			System.err.println("Unable to play " + first.getName() + " and " + second.getName() + ": " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Plays the end of one track followed by the start of another, printing the gap between them.
+	 *
+	 * @param first - The first track.
+	 * @param second - The second track.
+	 * @param preBufferMillis - The length of the second track decoded in advance.
+	 * @param isGapless - Whether the second track is set as the next track, rather than being opened once the first
+	 *            has finished.
+	 * @return Whether the tracks were played without a gap, and the first track wrote exactly its samples.
+	 */
+	private static boolean measure(File first, final File second, int preBufferMillis, boolean isGapless) throws IOException, InterruptedException
+	{
+		FrameIndex firstIndex = FrameIndex.build(first);
+		long startMillis = Math.max(0, firstIndex.getDurationMillis() - LEAD_IN_MILLIS);
+
+		// Playback starts from the frame playing at the start time, without the encoder delay
+		long firstSample = Math.max(firstIndex.getFirstSample(), (long) firstIndex.getFrameAt(startMillis) * firstIndex.getSamplesPerFrame());
+		long expectedSamples = firstIndex.getEndSample() - firstSample;
+
+		final RecordingSink sink = new RecordingSink();
+		final CountDownLatch firstFinished = new CountDownLatch(1);
+		final CountDownLatch secondOpened = new CountDownLatch(1);
+
+		PlaybackEngine engine = new PlaybackEngine(sink, new PlaybackEngine.Listener()
+		{
+			@Override
+			public void trackOpened(File file, long durationMillis)
+			{
+				if (file.equals(second))
+				{
+					secondOpened.countDown();
+				}
+			}
+
+			@Override
+			public void trackFinished(File file, File nextFile)
+			{
+				// Run before any samples of the second track are passed to the sink
+				sink.markBoundary();
+				firstFinished.countDown();
+			}
+
+			@Override
+			public void trackFailed(File file, Exception cause)
+			{
+				System.err.println("Unable to play " + file.getName() + ": " + cause);
+				firstFinished.countDown();
+				secondOpened.countDown();
+			}
+		});
+
+		try
+		{
+			engine.setPreBufferMillis(preBufferMillis);
+			if (isGapless)
+			{
+				engine.setNextTrack(second);
+			}
+			engine.open(first, startMillis);
+			engine.play();
+
+			if (!firstFinished.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+			{
+				throw new IOException("the first track didn't finish");
+			}
+			if (!isGapless)
+			{
+				engine.open(second, 0);
+			}
+			if (!secondOpened.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+			{
+				throw new IOException("the second track didn't start");
+			}
+			Thread.sleep(LEAD_OUT_MILLIS);
+		}
+		finally
+		{
+			engine.close();
+		}
+
+		long writtenSamples = sink.getBoundarySamples() / Math.max(1, sink.getChannels());
+		double boundarySilenceMillis = sink.getBoundarySilenceNanos() / 1000000.0;
+
+		System.out.println(String.format(Locale.ROOT,
+				"%-8s pre-buffer %d ms: silence at boundary %.2f ms, longest silence %.2f ms, dropouts %d, first track samples %d of %d",
+				isGapless ? "gapless" : "reopen", preBufferMillis, boundarySilenceMillis, sink.getMaxSilenceNanos() / 1000000.0,
+				sink.getDropoutCount(), writtenSamples, expectedSamples));
+
+		return boundarySilenceMillis <= MAX_GAPLESS_SILENCE_MILLIS && sink.getDropoutCount() == 0 && writtenSamples == expectedSamples;
+	}
+
+	/**
+	 * Real time sink that records the silences between the samples written, as they would be heard.
+	 */
+	private static class RecordingSink extends NullSink
+	{
+		// The time at which the samples written so far finish playing, or 0 if nothing has been written
+		private long playEndNanos;
+
+		// The longest silence before a write, and the silence before the first write after the boundary, in nanoseconds
+		private long maxSilenceNanos;
+		private long boundarySilenceNanos = -1;
+
+		// The number of samples written before the boundary, or -1 if it hasn't been reached
+		private long boundarySamples = -1;
+
+		// Whether the boundary has been reached and the next write is the first after it
+		private boolean isAtBoundary = false;
+
+		private RecordingSink()
+		{
+			super(true);
+		}
+
+		@Override
+		public void write(short[] samples, int offset, int length)
+		{
+			synchronized (this)
+			{
+				long now = System.nanoTime();
+				long silence = (this.playEndNanos == 0) ? 0 : Math.max(0, now - this.playEndNanos);
+
+				this.maxSilenceNanos = Math.max(this.maxSilenceNanos, silence);
+				if (this.isAtBoundary)
+				{
+					this.boundarySilenceNanos = silence;
+					this.isAtBoundary = false;
+				}
+
+				this.playEndNanos = Math.max(now, this.playEndNanos) + (length * 1000000000L) / ((long) this.getSampleRate() * this.getChannels());
+			}
+			super.write(samples, offset, length);
+		}
+
+		@Override
+		public void flush()
+		{
+			synchronized (this)
+			{
+				// Any samples that haven't been played are discarded, so playback stops now
+				this.playEndNanos = Math.min(this.playEndNanos, System.nanoTime());
+			}
+			super.flush();
+		}
+
+		/**
+		 * Marks the boundary between the tracks, after the samples written so far.
+		 */
+		private synchronized void markBoundary()
+		{
+			if (this.boundarySamples < 0)
+			{
+				this.boundarySamples = this.getWrittenSamples();
+				this.isAtBoundary = true;
+			}
+		}
+
+		private synchronized long getBoundarySamples()
+		{
+			return this.boundarySamples;
+		}
+
+		private synchronized long getBoundarySilenceNanos()
+		{
+			return this.boundarySilenceNanos;
+		}
+
+		private synchronized long getMaxSilenceNanos()
+		{
+			return this.maxSilenceNanos;
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package com.pe.audio;
+
+import java.io.IOException;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Audio sink that plays samples through the default Java Sound output line.
+ *
+ * @author olly.rowe
+ */
+public class JavaSoundSink implements AudioSink
+{
+	// The length of audio held by the output line, in milliseconds
+	private static final int LINE_BUFFER_MILLIS = 200;
+
+	// The output line, null if the sink isn't open
+	private volatile SourceDataLine line;
+
+	// The format of the open line
+	private int sampleRate;
+	private int channels;
+
+	// Whether the output has been paused
+	private volatile boolean isPaused = false;
+
+	// Reusable buffer for converting samples to bytes
+	private byte[] bytes = new byte[0];
+
+	@Override
+	public synchronized void open(int sampleRate, int channels) throws IOException
+	{
+		this.close();
+
+		// Signed 16-bit little-endian samples, as output by the decoder
+		AudioFormat format = new AudioFormat(sampleRate, 16, channels, true, false);
+
+		try
+		{
+			SourceDataLine newLine = AudioSystem.getSourceDataLine(format);
+			newLine.open(format, (sampleRate * channels * 2 * LINE_BUFFER_MILLIS) / 1000);
+			// Leave the line stopped if the output is currently paused
+			if (!this.isPaused)
+			{
+				newLine.start();
+			}
+			this.line = newLine;
+		}
+		catch (LineUnavailableException | IllegalArgumentException e)
+		{
+			throw new IOException("Unable to open audio output", e);
+		}
+		this.sampleRate = sampleRate;
+		this.channels = channels;
+	}
+
+	@Override
+	public void write(short[] samples, int offset, int length)
+	{
+		SourceDataLine currentLine = this.line;
+
+		if (currentLine == null)
+		{
+			return;
+		}
+
+		// Convert the samples to little-endian bytes
+		if (this.bytes.length < length * 2)
+		{
+			this.bytes = new byte[length * 2];
+		}
+		for (int i = 0; i < length; i++)
+		{
+			short sample = samples[offset + i];
+			this.bytes[i * 2] = (byte) sample;
+			this.bytes[i * 2 + 1] = (byte) (sample >> 8);
+		}
+
+		// Blocks until written, returning early if the line is flushed or closed
+		currentLine.write(this.bytes, 0, length * 2);
+	}
+
+	@Override
+	public void pause()
+	{
+		this.isPaused = true;
+
+		SourceDataLine currentLine = this.line;
+
+		if (currentLine != null)
+		{
+			currentLine.stop();
+		}
+	}
+
+	@Override
+	public void resume()
+	{
+		this.isPaused = false;
+
+		SourceDataLine currentLine = this.line;
+
+		if (currentLine != null)
+		{
+			currentLine.start();
+		}
+	}
+
+	@Override
+	public void flush()
+	{
+		SourceDataLine currentLine = this.line;
+
+		if (currentLine != null)
+		{
+			currentLine.flush();
+		}
+	}
+
+	@Override
+	public void drain()
+	{
+		SourceDataLine currentLine = this.line;
+
+		// Draining a stopped line would block until it is restarted
+		if (currentLine != null && !this.isPaused)
+		{
+			currentLine.drain();
+		}
+	}
+
+	@Override
+	public synchronized void close()
+	{
+		if (this.line != null)
+		{
+			this.line.close();
+			this.line = null;
+		}
+	}
+
+	@Override
+	public boolean isOpen()
+	{
+		return this.line != null;
+	}
+
+	@Override
+	public int getSampleRate()
+	{
+		return this.sampleRate;
+	}
+
+	@Override
+	public int getChannels()
+	{
+		return this.channels;
+	}
+}
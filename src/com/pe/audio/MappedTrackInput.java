@@ -0,0 +1,89 @@
+package com.pe.audio;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Input that memory maps the whole of a file, so that reads are copies from the page cache.
+ *
+ * The mapping is released by the garbage collector once the input is no longer referenced, rather than when it is
+ * closed, which is why only smaller files are mapped.
+ *
+ * @author olly.rowe
+ */
+public class MappedTrackInput extends TrackInput
+{
+	// The open file
+	private final FileChannel channel;
+
+	// The mapped contents of the file, positioned at the next byte to be read
+	private final MappedByteBuffer buffer;
+
+	/**
+	 * Class Constructor.
+	 *
+	 * @param channel - The open file, which is closed with the input.
+	 * @param size - The size of the file, no more than 2GB.
+	 */
+	MappedTrackInput(FileChannel channel, long size) throws IOException
+	{
+		this.channel = channel;
+		this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+	}
+
+	@Override
+	public int read(byte[] destination, int offset, int length)
+	{
+		if (length == 0)
+		{
+			return 0;
+		}
+
+		int count = Math.min(length, this.buffer.remaining());
+
+		if (count == 0)
+		{
+			return -1;
+		}
+
+		this.buffer.get(destination, offset, count);
+		return count;
+	}
+
+	@Override
+	public int read()
+	{
+		return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+	}
+
+	@Override
+	public void seek(long position)
+	{
+		this.buffer.position((int) Math.max(0, Math.min(position, this.buffer.limit())));
+	}
+
+	@Override
+	public long getPosition()
+	{
+		return this.buffer.position();
+	}
+
+	@Override
+	public long getLength()
+	{
+		return this.buffer.limit();
+	}
+
+	@Override
+	public long getFileReadCount()
+	{
+		return 0;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		this.channel.close();
+	}
+}
@@ -0,0 +1,475 @@
+package com.pe.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import com.mpatric.mp3agic.ID3v2;
+import com.mpatric.mp3agic.ID3v2TagFactory;
+import com.mpatric.mp3agic.InvalidDataException;
+import com.mpatric.mp3agic.MpegFrame;
+import com.mpatric.mp3agic.NoSuchTagException;
+import com.mpatric.mp3agic.UnsupportedTagException;
+
+/**
+ * Reads the metadata of an mp3 file from its ID3v2 tag and first MPEG frame header only.
+ *
+ * Unlike MP3agic's Mp3File, which scans every frame in the file to calculate its length, the length
+ * is taken from the Xing / VBRI header of the first frame if there is one, and otherwise estimated
+ * from the bitrate of the first frame.
+ *
+ * @author olly.rowe
+ */
+public class Mp3HeaderReader
+{
+	// The length of an ID3v2 tag header and footer
+	private static final int ID3V2_HEADER_LENGTH = 10;
+	// The length of an ID3v1 tag, found at the end of the file
+	static final int ID3V1_TAG_LENGTH = 128;
+	// The number of bytes after the ID3v2 tag searched for the first frame
+	private static final int FRAME_SEARCH_LENGTH = 64 * 1024;
+
+	// The file that was read
+	private File file;
+	// The ID3v2 tag, null if the file doesn't have one
+	private ID3v2 tag;
+	// The total length of the ID3v2 tag in bytes, including its header
+	private int tagLength;
+	// The byte offset of the first MPEG frame, -1 if none was found
+	private long firstFrameOffset = -1;
+	// The length of the audio in milliseconds
+	private long lengthInMilliseconds;
+
+	/**
+	 * Class Constructor. Use {@link #read(File)} to create an instance.
+	 *
+	 * @param file - The file being read.
+	 */
+	private Mp3HeaderReader(File file)
+	{
+		this.file = file;
+	}
+
+	/**
+	 * Reads the ID3v2 tag and first frame header of an mp3 file.
+	 *
+	 * @param file - The mp3 file to be read.
+	 * @return The metadata of the file.
+	 */
+	public static Mp3HeaderReader read(File file) throws IOException
+	{
+		Mp3HeaderReader reader = new Mp3HeaderReader(file);
+
+		try (RandomAccessFile input = new RandomAccessFile(file, "r"))
+		{
+			// Read the ID3v2 tag, if there is one
+			byte[] tagBytes = readTagBytes(input);
+
+			if (tagBytes != null)
+			{
+				reader.tagLength = tagBytes.length;
+
+				try
+				{
+					reader.tag = ID3v2TagFactory.createTag(tagBytes);
+				}
+				catch (NoSuchTagException | UnsupportedTagException | InvalidDataException e)
+				{
+					// The tag is unreadable, continue without it so that the defaults are used
+					reader.tag = null;
+				}
+			}
+			// Locate the first frame and calculate the length from it
+			reader.readFirstFrame(input);
+		}
+		return reader;
+	}
+
+	/**
+	 * Reads the album image data from the ID3v2 tag of an mp3 file.
+	 *
+	 * @param file - The mp3 file to be read.
+	 * @return The image data or null if the file does not contain any.
+	 */
+	public static byte[] readAlbumImage(File file) throws IOException
+	{
+		try (RandomAccessFile input = new RandomAccessFile(file, "r"))
+		{
+			byte[] tagBytes = readTagBytes(input);
+
+			if (tagBytes != null)
+			{
+				try
+				{
+					return ID3v2TagFactory.createTag(tagBytes).getAlbumImage();
+				}
+				catch (NoSuchTagException | UnsupportedTagException | InvalidDataException e)
+				{
+					return null;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the raw bytes of the ID3v2 tag at the start of the file.
+	 *
+	 * @param input - The file being read, positioned at the start.
+	 * @return The tag bytes, including the header, or null if the file does not start with a tag.
+	 */
+	private static byte[] readTagBytes(RandomAccessFile input) throws IOException
+	{
+		int length = readTagLength(input);
+
+		if (length == 0)
+		{
+			return null;
+		}
+
+		byte[] tagBytes = new byte[length];
+		input.seek(0);
+		input.readFully(tagBytes);
+		return tagBytes;
+	}
+
+	/**
+	 * Reads the length of the ID3v2 tag at the start of the file from its header.
+	 *
+	 * @param input - The file being read, positioned at the start.
+	 * @return The total length of the tag in bytes, including its header and footer, or 0 if the file does not start
+	 *         with a tag.
+	 */
+	public static int readTagLength(RandomAccessFile input) throws IOException
+	{
+		byte[] header = new byte[ID3V2_HEADER_LENGTH];
+
+		// Check for the "ID3" identifier
+		if (input.read(header) != header.length || header[0] != 'I' || header[1] != 'D' || header[2] != '3')
+		{
+			return 0;
+		}
+
+		// The tag size is stored as a synchsafe integer and excludes the header and footer
+		int size = ((header[6] & 0x7F) << 21) | ((header[7] & 0x7F) << 14) | ((header[8] & 0x7F) << 7) | (header[9] & 0x7F);
+		// Account for the footer if the flag for it is set
+		int length = ID3V2_HEADER_LENGTH + size + (((header[5] & 0x10) != 0) ? ID3V2_HEADER_LENGTH : 0);
+
+		// Ensure the tag does not claim to be larger than the file
+		if (length > input.length())
+		{
+			return 0;
+		}
+		return length;
+	}
+
+	/**
+	 * Locates the first MPEG frame after the tag and calculates the length of the audio from it.
+	 *
+	 * @param input - The file being read.
+	 */
+	private void readFirstFrame(RandomAccessFile input) throws IOException
+	{
+		long fileLength = input.length();
+
+		// Read a window of bytes following the tag in which to search for the first frame
+		byte[] buffer = new byte[(int) Math.min(FRAME_SEARCH_LENGTH, Math.max(0, fileLength - this.tagLength))];
+		input.seek(this.tagLength);
+		input.readFully(buffer);
+
+		for (int i = 0; i + 4 <= buffer.length; i++)
+		{
+			MpegFrame frame = parseHeader(buffer, i);
+
+			// A sync pattern within junk or padding after the tag is unlikely to be followed by another frame
+			if (frame == null || !this.isFollowedByFrame(input, buffer, i, frame.getLengthInBytes()))
+			{
+				continue;
+			}
+
+			this.firstFrameOffset = this.tagLength + i;
+
+			// Use the frame count from the Xing / VBRI header if there is one
+			int frameCount = readFrameCount(buffer, i, frame);
+
+			if (frameCount > 0)
+			{
+				this.lengthInMilliseconds = (long) frameCount * getSamplesPerFrame(frame) * 1000 / frame.getSampleRate();
+			}
+			// Otherwise estimate the length from the bitrate, which is exact for constant bitrate files
+			else if (frame.getBitrate() > 0)
+			{
+				long audioLength = fileLength - this.firstFrameOffset;
+
+				// Exclude the ID3v1 tag if there is one
+				if (hasId3v1Tag(input))
+				{
+					audioLength -= ID3V1_TAG_LENGTH;
+				}
+				// The bitrate is in kilobits per second, which equals bits per millisecond
+				this.lengthInMilliseconds = (audioLength * 8) / frame.getBitrate();
+			}
+			return;
+		}
+	}
+
+	/**
+	 * Checks whether a frame found while searching for the first frame is followed by a valid frame header, in the same
+	 * way as {@link FrameIndex} when it searches for a frame.
+	 *
+	 * @param input - The file being read.
+	 * @param buffer - The bytes following the tag.
+	 * @param offset - The offset of the frame within the buffer.
+	 * @param frameLength - The length of the frame.
+	 * @return Whether the next frame header is valid, or true if the frame is the last in the file.
+	 */
+	private boolean isFollowedByFrame(RandomAccessFile input, byte[] buffer, int offset, int frameLength) throws IOException
+	{
+		if (frameLength <= 4)
+		{
+			return false;
+		}
+
+		int nextOffset = offset + frameLength;
+
+		if (nextOffset + 4 <= buffer.length)
+		{
+			return parseHeader(buffer, nextOffset) != null;
+		}
+
+		// The next header is beyond the bytes searched, so read it from the file
+		long nextPosition = this.tagLength + nextOffset;
+
+		if (nextPosition + 4 > input.length())
+		{
+			return true;
+		}
+
+		byte[] nextHeader = new byte[4];
+		input.seek(nextPosition);
+		input.readFully(nextHeader);
+		return parseHeader(nextHeader, 0) != null;
+	}
+
+	/**
+	 * Parses a frame header.
+	 *
+	 * @param buffer - The buffer containing the header.
+	 * @param offset - The offset of the header within the buffer.
+	 * @return The parsed frame, or null if the bytes are not a valid header.
+	 */
+	static MpegFrame parseHeader(byte[] buffer, int offset)
+	{
+		// Check for the frame sync bits before attempting to parse a header
+		if ((buffer[offset] & 0xFF) != 0xFF || (buffer[offset + 1] & 0xE0) != 0xE0)
+		{
+			return null;
+		}
+		try
+		{
+			return new MpegFrame(buffer[offset], buffer[offset + 1], buffer[offset + 2], buffer[offset + 3]);
+		}
+		catch (InvalidDataException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the number of frames from the Xing / Info or VBRI header within the first frame.
+	 *
+	 * @param buffer - The buffer containing the frame.
+	 * @param offset - The offset of the frame within the buffer.
+	 * @param frame - The parsed frame header.
+	 * @return The number of frames, or -1 if there is no header specifying it.
+	 */
+	static int readFrameCount(byte[] buffer, int offset, MpegFrame frame)
+	{
+		// The Xing header follows the side information, the length of which depends on the version and channel mode
+		int xingOffset = offset + 4 + getSideInfoLength(frame);
+
+		if (matches(buffer, xingOffset, "Xing") || matches(buffer, xingOffset, "Info"))
+		{
+			// The frame count is present if the first flag is set
+			if (xingOffset + 12 <= buffer.length && (buffer[xingOffset + 7] & 0x01) != 0)
+			{
+				return readInt(buffer, xingOffset + 8);
+			}
+			return -1;
+		}
+
+		// The VBRI header is always found 32 bytes after the frame header
+		int vbriOffset = offset + 4 + 32;
+
+		if (matches(buffer, vbriOffset, "VBRI") && vbriOffset + 18 <= buffer.length)
+		{
+			return readInt(buffer, vbriOffset + 14);
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks whether a frame holds a Xing / Info or VBRI header rather than audio.
+	 *
+	 * @param buffer - The buffer containing the frame.
+	 * @param offset - The offset of the frame within the buffer.
+	 * @param frame - The parsed frame header.
+	 * @return Whether the frame is an information frame.
+	 */
+	static boolean isInfoFrame(byte[] buffer, int offset, MpegFrame frame)
+	{
+		int xingOffset = offset + 4 + getSideInfoLength(frame);
+
+		return matches(buffer, xingOffset, "Xing") || matches(buffer, xingOffset, "Info") || matches(buffer, offset + 4 + 32, "VBRI");
+	}
+
+	/**
+	 * Reads the encoder delay and padding from the LAME tag that follows a Xing / Info header. These are the number of
+	 * silent samples added by the encoder to the start and end of the audio.
+	 *
+	 * @param buffer - The buffer containing the frame.
+	 * @param offset - The offset of the frame within the buffer.
+	 * @param frame - The parsed frame header.
+	 * @return The delay and padding in samples per channel, or null if the frame doesn't contain a LAME tag.
+	 */
+	static int[] readEncoderDelay(byte[] buffer, int offset, MpegFrame frame)
+	{
+		int xingOffset = offset + 4 + getSideInfoLength(frame);
+
+		if (!(matches(buffer, xingOffset, "Xing") || matches(buffer, xingOffset, "Info")) || xingOffset + 8 > buffer.length)
+		{
+			return null;
+		}
+
+		// Skip past the optional fields of the Xing header, which are present if their flags are set
+		int flags = readInt(buffer, xingOffset + 4);
+		int lameOffset = xingOffset + 8;
+		lameOffset += ((flags & 0x01) != 0) ? 4 : 0;
+		lameOffset += ((flags & 0x02) != 0) ? 4 : 0;
+		lameOffset += ((flags & 0x04) != 0) ? 100 : 0;
+		lameOffset += ((flags & 0x08) != 0) ? 4 : 0;
+
+		// The tag is written by LAME and by FFmpeg's libavcodec / libavformat
+		if (lameOffset + 24 > buffer.length || !(matches(buffer, lameOffset, "LAME") || matches(buffer, lameOffset, "Lav")))
+		{
+			return null;
+		}
+
+		// The delay and padding are stored as two 12 bit values
+		int delay = ((buffer[lameOffset + 21] & 0xFF) << 4) | ((buffer[lameOffset + 22] & 0xFF) >> 4);
+		int padding = ((buffer[lameOffset + 22] & 0x0F) << 8) | (buffer[lameOffset + 23] & 0xFF);
+
+		return new int[] { delay, padding };
+	}
+
+	/**
+	 * Gets the length of the side information that follows the header of a frame.
+	 *
+	 * @param frame - The frame header.
+	 * @return The side information length in bytes.
+	 */
+	static int getSideInfoLength(MpegFrame frame)
+	{
+		boolean isMono = MpegFrame.CHANNEL_MODE_MONO.equals(frame.getChannelMode());
+
+		if (MpegFrame.MPEG_VERSION_1_0.equals(frame.getVersion()))
+		{
+			return isMono ? 17 : 32;
+		}
+		return isMono ? 9 : 17;
+	}
+
+	/**
+	 * Gets the number of audio samples per channel contained within a frame.
+	 *
+	 * @param frame - The frame header.
+	 * @return The number of samples.
+	 */
+	public static int getSamplesPerFrame(MpegFrame frame)
+	{
+		if (MpegFrame.MPEG_LAYER_1.equals(frame.getLayer()))
+		{
+			return 384;
+		}
+		else if (MpegFrame.MPEG_LAYER_3.equals(frame.getLayer()) && !MpegFrame.MPEG_VERSION_1_0.equals(frame.getVersion()))
+		{
+			return 576;
+		}
+		return 1152;
+	}
+
+	/**
+	 * Checks whether the file ends with an ID3v1 tag.
+	 *
+	 * @param input - The file being read.
+	 * @return Whether there is an ID3v1 tag.
+	 */
+	static boolean hasId3v1Tag(RandomAccessFile input) throws IOException
+	{
+		if (input.length() < ID3V1_TAG_LENGTH)
+		{
+			return false;
+		}
+		byte[] identifier = new byte[3];
+		input.seek(input.length() - ID3V1_TAG_LENGTH);
+		input.readFully(identifier);
+		return matches(identifier, 0, "TAG");
+	}
+
+	/**
+	 * Checks whether the bytes at a given offset match an ASCII string.
+	 */
+	private static boolean matches(byte[] buffer, int offset, String value)
+	{
+		if (offset < 0 || offset + value.length() > buffer.length)
+		{
+			return false;
+		}
+		for (int i = 0; i < value.length(); i++)
+		{
+			if (buffer[offset + i] != value.charAt(i))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads a big-endian integer from a buffer.
+	 */
+	private static int readInt(byte[] buffer, int offset)
+	{
+		return ((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16) | ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+	}
+
+	public File getFile()
+	{
+		return this.file;
+	}
+
+	public boolean hasId3v2Tag()
+	{
+		return this.tag != null;
+	}
+
+	public ID3v2 getId3v2Tag()
+	{
+		return this.tag;
+	}
+
+	public int getTagLength()
+	{
+		return this.tagLength;
+	}
+
+	public long getFirstFrameOffset()
+	{
+		return this.firstFrameOffset;
+	}
+
+	public long getLengthInMilliseconds()
+	{
+		return this.lengthInMilliseconds;
+	}
+}
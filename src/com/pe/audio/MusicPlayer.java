@@ -1,20 +1,27 @@
 package com.pe.audio;
 
+import com.pe.AlbumArtCache;
 import com.pe.Song;
+import com.pe.PlayOrder;
 import com.pe.Playlist;
+import com.pe.utils.SplitWorker;
 
 import java.awt.Image;
 import java.awt.Point;
 import java.awt.SystemColor;
+import java.awt.image.BufferedImage;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.BorderFactory;
 import javax.swing.ImageIcon;
@@ -24,11 +31,9 @@ import javax.swing.JPanel;
 import javax.swing.JSlider;
 import javax.swing.JTextField;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 import javax.swing.plaf.basic.BasicSliderUI;
 
-import javazoom.jl.decoder.JavaLayerException;
-import javazoom.jl.player.Player;
-
 /**
  * Represent the music player component.
  * 
@@ -37,25 +42,30 @@ import javazoom.jl.player.Player;
 @SuppressWarnings("serial")
 public class MusicPlayer extends JPanel implements ActionListener
 {	
-	// The javazoom player object
-	private Player player;
-	
-	// The thread object that the player will run within
-	private Thread playerThread;
+	// The default time between updates of the progress bar, in milliseconds
+	public static final int DEFAULT_PROGRESS_REFRESH_MILLIS = 100;
 	
-	// The member variables associated with the player
-	private FileInputStream stream;
-	private long totalSongLength;
+	// The engine that decodes and plays the songs
+	private PlaybackEngine engine;
 	
 	// Whether the player is currently in a paused state
-	private volatile boolean isPaused = false;
+	private boolean isPaused = false;
 	
 	// The song that is currently playing
 	private Song currentSong;
 	
+	// The song that is currently open within the engine
+	private Song loadedSong;
+	
+	// The number of songs in a row that couldn't be played, so that a playlist of unplayable songs isn't tried endlessly
+	private int failedSongCount;
+	
 	// The playlist being played
 	private Playlist playlist;
 	
+	// The order in which the songs of the playlist are played, kept up to date as the playlist changes
+	private PlayOrder playOrder;
+	
 	// The song title text field
 	private JTextField txtSongTitle;
 	
@@ -67,6 +77,36 @@ public class MusicPlayer extends JPanel implements ActionListener
 	// The song progress bar
 	private JSlider progressBar;
 	
+	// The thread that schedules updates of the progress bar, and the updates currently scheduled
+	private final ScheduledExecutorService progressBarUpdater;
+	private ScheduledFuture<?> progressBarUpdate;
+	private int progressRefreshMillis = DEFAULT_PROGRESS_REFRESH_MILLIS;
+	
+	// Whether an update of the progress bar is waiting to be run on the event dispatch thread
+	private final AtomicBoolean isProgressBarUpdatePending = new AtomicBoolean();
+	
+	// Updates the progress bar, run on the event dispatch thread
+	private final Runnable progressBarRefresh = new Runnable()
+	{
+		public void run()
+		{
+			isProgressBarUpdatePending.set(false);
+			updateProgressBar();
+		}
+	};
+	
+	// Run at the refresh rate. Skips the update if the previous one hasn't yet run, so updates never queue up
+	private final Runnable progressBarTick = new Runnable()
+	{
+		public void run()
+		{
+			if (isProgressBarUpdatePending.compareAndSet(false, true))
+			{
+				SwingUtilities.invokeLater(progressBarRefresh);
+			}
+		}
+	};
+	
 	// Play icon
 	private final Image PLAY_ICON = (new ImageIcon(getClass().getResource("/images/play.png"))).getImage().getScaledInstance(12, 12, Image.SCALE_SMOOTH);
 	// Pause icon
@@ -74,6 +114,13 @@ public class MusicPlayer extends JPanel implements ActionListener
 	
 	// The album art JPanel component
 	private JLabel albumArtLabel;
+	
+	// The width and height of the album art, in pixels
+	private static final int ALBUM_ART_SIZE = 70;
+	
+	// The loading of the current song's album art, if it hasn't yet been shown
+	private Future<?> albumArtLoad;
+	private Song albumArtSong;
 		
 	// The default album art cover
 	private final Image DEFAULT_ALBUM_ART_ICON = (new ImageIcon(getClass().getResource("/images/default album art.png"))).getImage().getScaledInstance(70, 70, Image.SCALE_SMOOTH);
@@ -88,11 +135,99 @@ public class MusicPlayer extends JPanel implements ActionListener
 	{
 		super();
 		
-		// Set the playlist
+		// Set the playlist and follow its changes within the play order
 		this.playlist = playlist;
+		this.playOrder = new PlayOrder(playlist.getSize());
+		this.playlist.addPlaylistListener(this.playOrder);
 		// Set the album art label
 		this.albumArtLabel = albumArtLabel;
 		
+		// Create the single thread that schedules the progress bar updates for the lifetime of the player
+		this.progressBarUpdater = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "Progress Bar Updater");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		
+		// Create the playback engine, handling its notifications on the event dispatch thread
+		this.engine = new PlaybackEngine(new JavaSoundSink(), new PlaybackEngine.Listener()
+		{
+			@Override
+			public void trackOpened(final File file, final long durationMillis)
+			{
+				SwingUtilities.invokeLater(new Runnable()
+				{
+					public void run()
+					{
+						failedSongCount = 0;
+						
+						// Set the max value of the progress bar to the exact length of the song
+						if (currentSong != null && currentSong.getFile().equals(file))
+						{
+							progressBar.setMaximum((int) durationMillis);
+						}
+					}
+				});
+			}
+			
+			@Override
+			public void trackFinished(File file, final File nextFile)
+			{
+				SwingUtilities.invokeLater(new Runnable()
+				{
+					public void run()
+					{
+						// If the engine has already moved on to the next song without a gap, then follow it
+						if (nextFile != null && loadedSong == currentSong)
+						{
+							Song nextSong = getNextSong();
+
+							if (nextSong != null && nextSong.getFile().equals(nextFile))
+							{
+								songAdvanced(nextSong);
+								return;
+							}
+						}
+						// Once the song is complete, move on to the next song in the play order
+						moveToNextSong(false);
+					}
+				});
+			}
+			
+			@Override
+			public void trackFailed(final File file, Exception cause)
+			{
+				SwingUtilities.invokeLater(new Runnable()
+				{
+					public void run()
+					{
+						// Ignore a song that has already been moved on from
+						if (loadedSong == null || !loadedSong.getFile().equals(file))
+						{
+							return;
+						}
+						
+						// Skip the song, even if it repeats, unless every song has failed in a row
+						if (++failedSongCount < playlist.getSize())
+						{
+							moveToNextSong(true);
+						}
+						else
+						{
+							failedSongCount = 0;
+							pause();
+							progressBar.setValue(0);
+						}
+					}
+				});
+			}
+		});
+		
 		// Remove the layout
 		this.setLayout(null);
 		
@@ -143,12 +278,7 @@ public class MusicPlayer extends JPanel implements ActionListener
 		                Point p = e.getPoint();
 		                int value = ui.valueForXPosition(p.x);
 		                setValue(value);
-		                if (!isPaused)
-		                {
-			                pause();
-			                setValue(value);
-			                resume();
-		                }
+		                seek(value);
 		            }
 		            
 		            @Override public boolean shouldScroll(int dir) {
@@ -194,7 +324,7 @@ public class MusicPlayer extends JPanel implements ActionListener
 	 */
 	public void playPauseSong()
 	{
-		if (this.player != null)
+		if (this.loadedSong != null)
 		{
 			if (this.isPaused)
 			{
@@ -210,8 +340,8 @@ public class MusicPlayer extends JPanel implements ActionListener
 			// Check that the playlist isn't empty
 			if (this.playlist.getSong(0) != null)
 			{
-				// If the player is not yet initialised, default the current song to the first one in the playlist
-				this.currentSong = this.playlist.getSongs().get(0);
+				// If the player is not yet initialised, default the current song to the first one in the play order
+				this.currentSong = this.playlist.getSong(this.playOrder.getFirstIndex());
 				// Play the song from the start
 				this.playSong(0);
 			}
@@ -221,7 +351,7 @@ public class MusicPlayer extends JPanel implements ActionListener
 	/**
 	 * Plays the current song.
 	 * 
-	 * @param startPoint - The point within the song to start playing form.
+	 * @param startPoint - The point within the song to start playing from, in milliseconds.
 	 */
 	private void playSong(long startPoint)
 	{
@@ -229,98 +359,110 @@ public class MusicPlayer extends JPanel implements ActionListener
 		if (this.currentSong != null)
 		{
 			this.isPaused = false;
-
-			if (player != null)
-			{
-				player.close();
-				player = null;
-			}
-			// Attempt to play the audio file
-			try
-			{
-				this.stream = new FileInputStream(this.currentSong.getFile());
-				
-				this.totalSongLength = this.stream.available();
-				
-				this.progressBar.setMaximum((int) this.totalSongLength);
-				
-				this.stream.skip(startPoint);
-				
-				player = new Player(this.stream);
-				
-			    this.playerThread = new Thread("Music Player")
-			    {
-			        public void run()
-			        {
-			            try
-			            {			                
-			                updateGUI();
-			                		                
-			    			btnPlayPause.setIcon(new ImageIcon(PAUSE_ICON));
-			    			
-			                player.play();
-			                		                
-			                // Once the player is complete, skip to the next song in the playlist
-			                if (player != null && player.isComplete())
-			                {
-			        			skipForwardSong();
-			                }
-			            }
-			            catch (JavaLayerException e)
-			            {
-			                e.printStackTrace();
-			            }
-			        }
-			    };
-			    
-			    this.playerThread.start();
-			    
-			    // Get all currently running threads
-			    Set<Thread> threadSet = Thread.getAllStackTraces().keySet();
-			    
-			    // End method if there is currently a progress bar updater thread running
-			    for (Thread thread : threadSet)
-			    {
-			    	if (thread.getName().equals("Progress Bar Updater"))
-			    	{
-			    		return;
-			    	}
-			    }
-			    
-			    // Create a new thread to update the progress bar
-				Thread updateProgressBarThread = new Thread("Progress Bar Updater") {
-					public void run()
-					{
-						// maybe check if one of these threads is already running as they can double up when you navigate through a song using progress bar
-		        		while (!this.isInterrupted())
-		        		{
-		        			// If player's state changes before song ends then catch the null pointer exception
-		        			try
-		        			{
-		            			if (player.isComplete() || isPaused)
-		            			{
-		            				break;
-		            			}
-
-		            			// Update the progress bar
-		            			updateProgressBar();
-		            			
-		            			Thread.sleep(100);
-		        			}
-		        			catch (NullPointerException | InterruptedException e)
-		        			{
-		        				break;
-		        			}
-		        		}
-					}
-				};
-				
-				updateProgressBarThread.start();
-			}
-			catch (JavaLayerException | IOException e)
-			{
-				e.printStackTrace();
-			}
+			
+			// Open the song within the engine and start playing it
+			this.engine.open(this.currentSong.getFile(), startPoint);
+			this.engine.play();
+			this.loadedSong = this.currentSong;
+			this.updateNextSong();
+			
+			// Use the length from the song's metadata until the engine has measured it exactly
+			this.progressBar.setMaximum((int) this.currentSong.getLengthInMilliseconds());
+			this.progressBar.setValue((int) startPoint);
+			
+			updateGUI();
+			
+			btnPlayPause.setIcon(new ImageIcon(PAUSE_ICON));
+			
+			this.startProgressBarUpdater();
+		}
+	}
+	
+	/**
+	 * Makes the song that the engine has moved on to without a gap the current song.
+	 * 
+	 * @param nextSong - The song now playing.
+	 */
+	private void songAdvanced(Song nextSong)
+	{
+		this.currentSong = nextSong;
+		this.loadedSong = nextSong;
+		this.updateNextSong();
+		
+		// Use the length from the song's metadata until the engine has measured it exactly
+		this.progressBar.setMaximum((int) nextSong.getLengthInMilliseconds());
+		this.progressBar.setValue(0);
+		
+		updateGUI();
+	}
+	
+	/**
+	 * Gets the song played once the current song finishes, which is the current song again if it is repeating.
+	 * 
+	 * @return The next song, or null if playback should stop after the current song.
+	 */
+	private Song getNextSong()
+	{
+		return this.playlist.getSong(this.playOrder.getNextIndex(this.playlist.getIndexOf(this.currentSong), false));
+	}
+	
+	/**
+	 * Tells the engine which song follows the current song, so that it can be prepared in advance. Should be called
+	 * whenever the order of the playlist changes.
+	 */
+	public void updateNextSong()
+	{
+		Song nextSong = this.getNextSong();
+		this.engine.setNextTrack(nextSong != null ? nextSong.getFile() : null);
+	}
+	
+	/**
+	 * Sets the amount of the next song that is decoded before the current song finishes.
+	 * 
+	 * @param millis - The length of audio to be decoded in advance, in milliseconds.
+	 */
+	public void setPreBufferMillis(int millis)
+	{
+		this.engine.setPreBufferMillis(millis);
+	}
+	
+	/**
+	 * Starts updating the progress bar at the refresh rate, if it isn't already being updated.
+	 */
+	private void startProgressBarUpdater()
+	{
+		if (this.progressBarUpdate == null)
+		{
+			this.progressBarUpdate = this.progressBarUpdater.scheduleAtFixedRate(this.progressBarTick, 0, this.progressRefreshMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	/**
+	 * Stops updating the progress bar.
+	 */
+	private void stopProgressBarUpdater()
+	{
+		if (this.progressBarUpdate != null)
+		{
+			this.progressBarUpdate.cancel(false);
+			this.progressBarUpdate = null;
+		}
+	}
+	
+	/**
+	 * Sets how often the progress bar is updated while a song is playing.
+	 * 
+	 * @param millis - The time between updates in milliseconds.
+	 */
+	public void setProgressRefreshMillis(int millis)
+	{
+		this.progressRefreshMillis = Math.max(1, millis);
+		
+		// Restart the updates at the new rate
+		if (this.progressBarUpdate != null)
+		{
+			this.stopProgressBarUpdater();
+			this.startProgressBarUpdater();
 		}
 	}
 	
@@ -339,11 +481,11 @@ public class MusicPlayer extends JPanel implements ActionListener
 	{	
 		this.btnPlayPause.setIcon(new ImageIcon(PLAY_ICON));
 
-		if (player != null)
-		{
-			this.player.close();
-		}
+		// Pause the engine, keeping the song open so that it can be resumed without reopening it
+		this.engine.pause();
 		this.isPaused = true;
+		
+		this.stopProgressBarUpdater();
 	}
 	
 	/**
@@ -351,106 +493,141 @@ public class MusicPlayer extends JPanel implements ActionListener
 	 */
 	private void resume()
 	{
-		// Play the song from pause location
-		playSong(this.progressBar.getValue());
+		// If the current song has changed since it was paused, or has finished, then open it at the pause location
+		if (this.loadedSong != this.currentSong || this.engine.getFile() == null)
+		{
+			playSong(this.progressBar.getValue());
+			return;
+		}
+		this.isPaused = false;
+		this.engine.play();
+		this.btnPlayPause.setIcon(new ImageIcon(PAUSE_ICON));
+		this.startProgressBarUpdater();
 	}
 	
 	/**
-	 * Skips the song currently being played back to the previous one in the playlist.
+	 * Moves the playback position of the current song.
+	 * 
+	 * @param position - The new position in milliseconds.
+	 */
+	private void seek(long position)
+	{
+		// If the current song isn't open then it will be opened at the progress bar position when resumed
+		if (this.loadedSong == this.currentSong)
+		{
+			this.engine.seek(position);
+		}
+	}
+	
+	/**
+	 * Skips the song currently being played back to the previous one in the play order.
 	 */
 	private void skipBackSong()
 	{
-		// Check that the first song in the playlist isn't currently being played
-		if (this.currentSong != this.playlist.getSong(0) && this.playlist.getSize() > 0)
+		// Change the current song to the previous one, unless the first song is currently being played
+		Song previousSong = this.playlist.getSong(this.playOrder.getPreviousIndex(this.playlist.getIndexOf(this.currentSong)));
+		if (previousSong != null)
 		{
-			// Change the current song to the previous on in the playlist
-			this.currentSong = this.playlist.getSong(this.playlist.getIndexOf(this.currentSong) - 1);
+			this.currentSong = previousSong;
 		}
 		// Play the current song from the start
 		this.playSong(0);
 	}
 	
 	/**
-	 * Skips the song currently being played forward to the next one in the playlist.
+	 * Skips the song currently being played forward to the next one in the play order.
 	 */
 	public void skipForwardSong()
 	{
-		// Check that the playlist has a final song before doing anything
-		if (this.playlist.getLastSong() != null)
+		this.moveToNextSong(true);
+	}
+	
+	/**
+	 * Plays the next song in the play order, or goes into a paused state if there isn't one.
+	 * 
+	 * @param isSkipping - Whether the user is skipping the current song, rather than it having finished.
+	 */
+	private void moveToNextSong(boolean isSkipping)
+	{
+		// Check that the playlist has songs before doing anything
+		if (this.playlist.getSize() == 0)
 		{
-			// Check that the final song in the playlist isn't currently being played
-			if (this.currentSong != this.playlist.getLastSong())
-			{
-				// Update the current song to the previous one in the playlist
-				this.currentSong = this.playlist.getSong(this.playlist.getIndexOf(this.currentSong) + 1);
-				// Play the next song
-				this.playSong(0);
-			}
-			// Otherwise, go into a paused state
-			else
-			{
-				// Enter paused state
-				this.pause();
-				// Reset the progress bar
-				this.progressBar.setValue(0);
-			}
+			return;
+		}
+		
+		Song nextSong = this.playlist.getSong(this.playOrder.getNextIndex(this.playlist.getIndexOf(this.currentSong), isSkipping));
+		
+		if (nextSong != null)
+		{
+			// Update the current song and play it
+			this.currentSong = nextSong;
+			this.playSong(0);
+		}
+		// Otherwise, go into a paused state
+		else
+		{
+			// Enter paused state
+			this.pause();
+			// Reset the progress bar
+			this.progressBar.setValue(0);
 		}
 	}
 	
 	/**
-	 * Splits the current song at the current progress into two.
+	 * Turns shuffling on or off. Turning it on starts a new shuffled order from the current song.
+	 * 
+	 * @param isShuffled - Whether the songs are played in a shuffled order.
 	 */
-	public void splitCurrentTrackAndWriteToFile(File outputFile, boolean outputPreSplitPoint)
+	public void setShuffled(boolean isShuffled)
+	{
+		this.playOrder.setShuffled(isShuffled);
+		this.updateNextSong();
+	}
+	
+	public boolean isShuffled()
+	{
+		return this.playOrder.isShuffled();
+	}
+	
+	/**
+	 * Sets whether the playlist or the current song repeats.
+	 * 
+	 * @param repeatMode - The repeat mode.
+	 */
+	public void setRepeatMode(PlayOrder.RepeatMode repeatMode)
+	{
+		this.playOrder.setRepeatMode(repeatMode);
+		this.updateNextSong();
+	}
+	
+	public PlayOrder.RepeatMode getRepeatMode()
+	{
+		return this.playOrder.getRepeatMode();
+	}
+	
+	/**
+	 * Creates a worker that splits the current song at the current progress into two, and writes one part to a file.
+	 * 
+	 * @param outputFile - The file to be written.
+	 * @param outputPreSplitPoint - Whether to write the part before the split point, rather than the part after it.
+	 * @return The worker to be executed, or null if there isn't a current song.
+	 */
+	public SplitWorker splitCurrentTrackAndWriteToFile(File outputFile, boolean outputPreSplitPoint)
 	{		
 		// Check that there is a current track
-		if (this.currentSong != null)
+		if (this.currentSong == null)
 		{
-			try
-			{
-				// Create a new temporary input stream for the current song
-				FileInputStream tempInputStream = new FileInputStream(this.currentSong.getFile());
-				
-				int startPoint, endPoint;
-				
-				// Calculate the start and end points based upon argument
-				if (outputPreSplitPoint)
-				{
-					startPoint = 0;
-					endPoint = this.progressBar.getValue();
-				}
-				else
-				{
-					startPoint = this.progressBar.getValue(); 
-					endPoint = (int) this.totalSongLength;
-				}
-				
-				// Skip to the start point
-				tempInputStream.skip((long) startPoint);
-				
-				// Create a new output stream to the output file
-				FileOutputStream outputStream = new FileOutputStream(outputFile);
-				
-				// The number of remaining bytes to be read and outputted
-				int remainingBytes = endPoint - startPoint;
-				
-				// Create the buffer to be written to
-				byte[] buffer = new byte[remainingBytes];
-				
-				// Populate contents of the buffer from the input stream
-				tempInputStream.read(buffer);
-				// Write the contents of the buffer to the output stream
-				outputStream.write(buffer);
-				
-				// Close the opened streams
-				tempInputStream.close();
-				outputStream.close();
-			}
-			catch (IOException e)
-			{
-				e.printStackTrace();
-				return;
-			}
+			return null;
+		}
+		
+		// Use the frame index of the song if it is open and complete, otherwise the worker will build one
+		FrameIndex frameIndex = this.engine.getFrameIndex();
+		if (frameIndex != null && (!frameIndex.isComplete() || !this.currentSong.getFile().equals(this.engine.getFile())))
+		{
+			frameIndex = null;
 		}
+		
+		return new SplitWorker(this.currentSong.getFile(), frameIndex, this.progressBar.getValue(), outputPreSplitPoint, outputFile);
 	}
 	
 	/**
@@ -460,18 +637,22 @@ public class MusicPlayer extends JPanel implements ActionListener
 	 */
 	public void updatePlaylist(Playlist playlist)
 	{
-		// Update the playlist member variable
+		// Update the playlist member variable, moving the play order over to it
+		this.playlist.removePlaylistListener(this.playOrder);
 		this.playlist = playlist;
+		this.playlist.addPlaylistListener(this.playOrder);
+		this.playOrder.reset(playlist.getSize());
 		
 		if (playlist.getSize() > 0)
 		{
-			// Get the first song from the playlist
-			Song firstSong = playlist.getSongs().get(0);
+			// Get the first song in the play order
+			Song firstSong = playlist.getSong(this.playOrder.getFirstIndex());
 			
 			// Set the current song
 			this.currentSong = firstSong;
 
 		}
+		this.updateNextSong();
 		
 		// Update the GUI components
 		this.updateGUI();
@@ -482,18 +663,27 @@ public class MusicPlayer extends JPanel implements ActionListener
 	 */
 	public void updateProgressBar()
 	{
- 		int progress;
-		try
+		// Don't move the slider while the user is dragging it
+		if (this.progressBar.getValueIsAdjusting())
 		{
-			// Calculate progress as the total length of the song minus the length of song left
-			progress = (int) (this.totalSongLength - this.stream.available());
+			return;
 		}
-		catch (IOException e)
+		// Update the progress bar value with the position of the engine
+		this.progressBar.setValue((int) this.engine.getPositionMillis());
+	}
+	
+	/**
+	 * Cancels the loading of album art that hasn't yet been shown. If it has already started then its result is
+	 * ignored.
+	 */
+	private void cancelAlbumArtLoad()
+	{
+		if (this.albumArtLoad != null)
 		{
-			return;
+			this.albumArtLoad.cancel(false);
+			this.albumArtLoad = null;
+			this.albumArtSong = null;
 		}
-		// Update the progress bar value
-		this.progressBar.setValue(progress);
 	}
 	
 	/**
@@ -501,14 +691,42 @@ public class MusicPlayer extends JPanel implements ActionListener
 	 */
 	public void updateGUI()
 	{
-		// Update the album art
-		try
+		// Update the album art, showing the cached thumbnail straight away if there is one, otherwise loading it in the
+		// background so that changing song never waits for the image to be read and scaled
+		BufferedImage thumbnail = AlbumArtCache.getInstance().getThumbnail(this.currentSong, ALBUM_ART_SIZE);
+		
+		if (thumbnail != null)
 		{
-			this.albumArtLabel.setIcon(new ImageIcon(new ImageIcon(this.currentSong.getAlbumArt()).getImage().getScaledInstance(70, 70, Image.SCALE_SMOOTH)));
+			this.cancelAlbumArtLoad();
+			this.albumArtLabel.setIcon(new ImageIcon(thumbnail));
 		}
-		catch (NullPointerException e)
+		else if (this.albumArtLoad == null || this.albumArtSong != this.currentSong)
 		{
+			this.cancelAlbumArtLoad();
 			this.albumArtLabel.setIcon(new ImageIcon(DEFAULT_ALBUM_ART_ICON));
+			
+			if (this.currentSong.hasAlbumArt())
+			{
+				this.albumArtSong = this.currentSong;
+				this.albumArtLoad = AlbumArtCache.getInstance().loadThumbnail(this.currentSong, ALBUM_ART_SIZE, new AlbumArtCache.Listener()
+				{
+					@Override
+					public void thumbnailLoaded(Song song, BufferedImage thumbnail)
+					{
+						// Ignore the thumbnail if the song has changed since it was requested
+						if (song == albumArtSong)
+						{
+							albumArtLoad = null;
+							albumArtSong = null;
+							
+							if (thumbnail != null && song == currentSong)
+							{
+								albumArtLabel.setIcon(new ImageIcon(thumbnail));
+							}
+						}
+					}
+				});
+			}
 		}
 		
 		// Update the song title and artist text field with the details of the current song
@@ -528,20 +746,8 @@ public class MusicPlayer extends JPanel implements ActionListener
 		this.pause();
 		// Reset the progress bar
 		this.progressBar.setValue(0);
-		// Update the max value
-		try
-		{
-			// Open a new temporary stream
-			FileInputStream tempStream = new FileInputStream(this.currentSong.getFile());
-			// Set the max value
-			this.progressBar.setMaximum((int) tempStream.available());
-			// Close the stream
-			tempStream.close();
-		}
-		catch (IOException e)
-		{
-			return;
-		}
+		// Update the max value using the length from the song's metadata
+		this.progressBar.setMaximum((int) this.currentSong.getLengthInMilliseconds());
 	}
 	
 	/**
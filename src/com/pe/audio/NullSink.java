@@ -0,0 +1,193 @@
+package com.pe.audio;
+
+/**
+ * Audio sink that discards samples, for playing audio without an output device such as when testing.
+ *
+ * In real time mode the sink accepts samples at the rate at which they would be played, holding a short buffer like an
+ * output line, and counts the dropouts where the buffer ran out before more samples were written. Otherwise samples
+ * are accepted as fast as they are written.
+ *
+ * @author olly.rowe
+ */
+public class NullSink implements AudioSink
+{
+	// The length of audio held as if by an output line in real time mode, in nanoseconds
+	private static final long LINE_BUFFER_NANOS = 200000000L;
+
+	// Whether samples are accepted at the rate at which they would be played
+	private final boolean isRealTime;
+
+	// The format of the open sink
+	private volatile boolean isOpen = false;
+	private volatile int sampleRate;
+	private volatile int channels;
+
+	// Whether the output has been paused
+	private volatile boolean isPaused = false;
+
+	// The number of flushes, so that a paused write can tell that it has been flushed
+	private volatile int flushCount;
+
+	// The time at which the samples written so far would finish playing, or 0 if nothing is playing
+	private long endNanos;
+
+	// The number of samples written and the number of dropouts
+	private volatile long writtenSamples;
+	private volatile long dropoutCount;
+
+	/**
+	 * Class Constructor.
+	 *
+	 * @param isRealTime - Whether samples are accepted at the rate at which they would be played.
+	 */
+	public NullSink(boolean isRealTime)
+	{
+		this.isRealTime = isRealTime;
+	}
+
+	@Override
+	public synchronized void open(int sampleRate, int channels)
+	{
+		this.sampleRate = sampleRate;
+		this.channels = channels;
+		this.endNanos = 0;
+		this.isOpen = true;
+	}
+
+	@Override
+	public void write(short[] samples, int offset, int length)
+	{
+		this.writtenSamples += length;
+
+		if (!this.isRealTime || !this.isOpen)
+		{
+			return;
+		}
+
+		// Like a stopped output line, hold on to the samples while paused
+		int flushes = this.flushCount;
+		while (this.isPaused && this.flushCount == flushes && this.isOpen)
+		{
+			sleepNanos(LINE_BUFFER_NANOS / 20);
+		}
+
+		long waitNanos;
+		synchronized (this)
+		{
+			long now = System.nanoTime();
+
+			// The previous samples have finished playing, so there was a gap before these ones unless it had stopped
+			if (this.endNanos != 0 && this.endNanos < now)
+			{
+				this.dropoutCount++;
+			}
+			if (this.endNanos < now)
+			{
+				this.endNanos = now;
+			}
+
+			this.endNanos += (length * 1000000000L) / ((long) this.sampleRate * this.channels);
+			waitNanos = this.endNanos - LINE_BUFFER_NANOS - now;
+		}
+
+		// Wait until there is room in the buffer
+		if (waitNanos > 0)
+		{
+			sleepNanos(waitNanos);
+		}
+	}
+
+	@Override
+	public synchronized void pause()
+	{
+		this.isPaused = true;
+		this.endNanos = 0;
+	}
+
+	@Override
+	public synchronized void resume()
+	{
+		this.isPaused = false;
+		this.endNanos = 0;
+	}
+
+	@Override
+	public synchronized void flush()
+	{
+		this.flushCount++;
+		this.endNanos = 0;
+	}
+
+	@Override
+	public void drain()
+	{
+		long waitNanos;
+
+		synchronized (this)
+		{
+			waitNanos = this.isPaused ? 0 : this.endNanos - System.nanoTime();
+			this.endNanos = 0;
+		}
+
+		if (this.isRealTime && waitNanos > 0)
+		{
+			sleepNanos(waitNanos);
+		}
+	}
+
+	@Override
+	public synchronized void close()
+	{
+		this.isOpen = false;
+		this.endNanos = 0;
+	}
+
+	@Override
+	public boolean isOpen()
+	{
+		return this.isOpen;
+	}
+
+	@Override
+	public int getSampleRate()
+	{
+		return this.sampleRate;
+	}
+
+	@Override
+	public int getChannels()
+	{
+		return this.channels;
+	}
+
+	/**
+	 * Gets the number of samples that have been written, across all channels.
+	 */
+	public long getWrittenSamples()
+	{
+		return this.writtenSamples;
+	}
+
+	/**
+	 * Gets the number of times that the audio ran out while playing in real time mode, which would be heard as a gap.
+	 */
+	public long getDropoutCount()
+	{
+		return this.dropoutCount;
+	}
+
+	/**
+	 * Sleeps for a length of time, stopping early if interrupted.
+	 */
+	private static void sleepNanos(long nanos)
+	{
+		try
+		{
+			Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package com.pe.audio;
+
+/**
+ * A fixed size ring buffer of 16-bit samples, passing audio from a single producer thread to a single consumer thread
+ * without locking.
+ *
+ * Positions count every sample written or read since the buffer was created, starting from a given position, so they
+ * only ever increase. The producer alone moves the write position and the consumer alone moves the read position, and
+ * each publishes its position through a volatile field after the samples have been copied.
+ *
+ * @author olly.rowe
+ */
+public class PcmRingBuffer
+{
+	// The samples, with a power of two length so that positions can be wrapped with a mask
+	private final short[] samples;
+	private final int mask;
+
+	// The position after the last sample written, only moved by the producer
+	private volatile long writePosition;
+
+	// The position of the next sample to be read, only moved by the consumer
+	private volatile long readPosition;
+
+	/**
+	 * Class Constructor.
+	 *
+	 * @param minimumCapacity - The minimum number of samples held, rounded up to a power of two.
+	 * @param startPosition - The position of the first sample to be written.
+	 */
+	public PcmRingBuffer(int minimumCapacity, long startPosition)
+	{
+		int capacity = Integer.highestOneBit(Math.max(2, minimumCapacity) - 1) << 1;
+
+		this.samples = new short[capacity];
+		this.mask = capacity - 1;
+		this.writePosition = startPosition;
+		this.readPosition = startPosition;
+	}
+
+	/**
+	 * Writes as many samples as there is space for. Must only be called by the producer.
+	 *
+	 * @param source - The buffer containing the samples.
+	 * @param offset - The offset of the first sample within the buffer.
+	 * @param length - The number of samples.
+	 * @return The number of samples written, which may be 0 if the buffer is full.
+	 */
+	public int write(short[] source, int offset, int length)
+	{
+		long position = this.writePosition;
+		int count = Math.min(length, this.samples.length - (int) (position - this.readPosition));
+
+		if (count <= 0)
+		{
+			return 0;
+		}
+
+		// Copy in up to two parts, either side of the end of the array
+		int start = (int) position & this.mask;
+		int firstPart = Math.min(count, this.samples.length - start);
+		System.arraycopy(source, offset, this.samples, start, firstPart);
+		System.arraycopy(source, offset + firstPart, this.samples, 0, count - firstPart);
+
+		// Publish the samples to the consumer
+		this.writePosition = position + count;
+		return count;
+	}
+
+	/**
+	 * Copies the next samples without reading them, so that they are still counted as buffered until
+	 * {@link #advance(int)} is called. Must only be called by the consumer.
+	 *
+	 * @param destination - The buffer to copy the samples into.
+	 * @param offset - The offset within the buffer.
+	 * @param length - The maximum number of samples to be copied.
+	 * @return The number of samples copied, which may be 0 if the buffer is empty.
+	 */
+	public int peek(short[] destination, int offset, int length)
+	{
+		long position = this.readPosition;
+		int count = (int) Math.min(length, this.writePosition - position);
+
+		if (count <= 0)
+		{
+			return 0;
+		}
+
+		int start = (int) position & this.mask;
+		int firstPart = Math.min(count, this.samples.length - start);
+		System.arraycopy(this.samples, start, destination, offset, firstPart);
+		System.arraycopy(this.samples, 0, destination, offset + firstPart, count - firstPart);
+		return count;
+	}
+
+	/**
+	 * Reads samples that have been copied by {@link #peek(short[], int, int)}, freeing their space for the producer.
+	 * Must only be called by the consumer.
+	 *
+	 * @param count - The number of samples.
+	 */
+	public void advance(int count)
+	{
+		this.readPosition = Math.min(this.readPosition + count, this.writePosition);
+	}
+
+	/**
+	 * Discards the samples before a position, if it hasn't already been reached. Must only be called by the consumer.
+	 *
+	 * @param position - The position of the first sample to be kept.
+	 */
+	public void skipTo(long position)
+	{
+		if (position > this.readPosition)
+		{
+			this.readPosition = Math.min(position, this.writePosition);
+		}
+	}
+
+	/**
+	 * Gets the number of samples written that haven't yet been read.
+	 */
+	public int getAvailable()
+	{
+		return (int) (this.writePosition - this.readPosition);
+	}
+
+	/**
+	 * Gets the number of samples that can be held.
+	 */
+	public int getCapacity()
+	{
+		return this.samples.length;
+	}
+
+	public long getWritePosition()
+	{
+		return this.writePosition;
+	}
+
+	public long getReadPosition()
+	{
+		return this.readPosition;
+	}
+}
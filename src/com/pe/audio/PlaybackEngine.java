@@ -0,0 +1,940 @@
+package com.pe.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.BitstreamException;
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.Header;
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.decoder.SampleBuffer;
+
+import com.pe.MetadataCache;
+
+/**
+ * Decodes and plays mp3 files on a dedicated thread.
+ *
+ * Decoded audio is passed to the sink through an {@link AudioOutput}, which plays it on a separate output thread from
+ * a ring buffer, so that a stall while reading or decoding a file doesn't interrupt the audio. Track changes and the
+ * playback position follow the audio as it is played, rather than as it is decoded.
+ *
+ * The decoder and audio output are kept open while a track is paused, resumed or seeked. Seeking uses a frame index
+ * built once per track, so playback always restarts on a frame boundary rather than part way through a frame.
+ *
+ * Once the current track is close to its end, the next track is opened and the start of it decoded in the background.
+ * When the current track finishes, the next one is then written straight after it without draining the audio output,
+ * so that there is no gap between the two. The silence added by the encoder to each track is removed where the track
+ * has a LAME tag describing it.
+ *
+ * @author olly.rowe
+ */
+public class PlaybackEngine
+{
+	// The number of frames decoded and discarded before the target of a seek, which refills the decoder's bit reservoir
+	private static final int SEEK_PRIMING_FRAMES = 2;
+
+	// How long before the end of the current track the next track starts being prepared
+	private static final long PRELOAD_AHEAD_MILLIS = 15000;
+
+	// The default amount of the next track that is decoded before the current track finishes
+	public static final int DEFAULT_PRE_BUFFER_MILLIS = 500;
+
+	/**
+	 * Receives notifications from the engine. Methods are called on the audio output thread, once the audio before
+	 * the change has been played, so they must not block.
+	 */
+	public interface Listener
+	{
+		/**
+		 * Called once a track has been opened and indexed.
+		 *
+		 * @param file - The file of the track.
+		 * @param durationMillis - The length of the track in milliseconds.
+		 */
+		void trackOpened(File file, long durationMillis);
+
+		/**
+		 * Called once the whole of a track has been played.
+		 *
+		 * @param file - The file of the track.
+		 * @param nextFile - The file of the next track which has started playing in its place, or null if playback
+		 *            has stopped.
+		 */
+		void trackFinished(File file, File nextFile);
+
+		/**
+		 * Called once the audio before a track that couldn't be opened or decoded has been played. Playback has
+		 * stopped.
+		 *
+		 * @param file - The file of the track.
+		 * @param cause - The error that stopped the track.
+		 */
+		void trackFailed(File file, Exception cause);
+	}
+
+	// The destination of the decoded audio, played from a ring buffer on its own thread
+	private final AudioOutput output;
+
+	// The listener to be notified of track changes
+	private final Listener listener;
+
+	// The thread on which the audio is decoded
+	private Thread thread;
+
+	// The thread on which the next track is prepared
+	private ExecutorService preloader;
+
+	// Requests from other threads, waiting to be carried out by the engine thread
+	private File requestedFile;
+	private long requestedSeekMillis = -1;
+	private boolean isStopRequested = false;
+
+	// The state of the engine, guarded by this object's lock
+	private boolean isPaused = true;
+	private boolean isClosed = false;
+	private File nextFile;
+	private int preBufferMillis = DEFAULT_PRE_BUFFER_MILLIS;
+
+	// The track currently open, only accessed by the engine thread
+	private Track track;
+
+	// The next track being prepared and its file, only accessed by the engine thread
+	private Future<Track> preparation;
+	private File preparationFile;
+
+	// The position that the current track has been decoded up to, only accessed by the engine thread
+	private long decodedMillis;
+
+	// The track being played, which may be read by any thread. Updated by the output thread as the audio is played
+	private volatile File file;
+	private volatile FrameIndex frameIndex;
+
+	/**
+	 * Class Constructor. The audio is buffered for {@link AudioOutput#DEFAULT_BUFFER_MILLIS}.
+	 *
+	 * @param sink - The destination of the decoded audio.
+	 * @param listener - The listener to be notified of track changes.
+	 */
+	public PlaybackEngine(AudioSink sink, Listener listener)
+	{
+		this(sink, listener, AudioOutput.DEFAULT_BUFFER_MILLIS);
+	}
+
+	/**
+	 * Alternative Class Constructor.
+	 *
+	 * @param sink - The destination of the decoded audio.
+	 * @param listener - The listener to be notified of track changes.
+	 * @param bufferMillis - The length of decoded audio buffered ahead of the sink, in milliseconds.
+	 */
+	public PlaybackEngine(AudioSink sink, Listener listener, int bufferMillis)
+	{
+		this.output = new AudioOutput(sink, bufferMillis);
+		this.listener = listener;
+	}
+
+	/**
+	 * Opens a track, replacing the current one. The engine remains paused or playing as it was.
+	 *
+	 * @param file - The mp3 file to be opened.
+	 * @param startMillis - The position to start playing from.
+	 */
+	public synchronized void open(File file, long startMillis)
+	{
+		this.requestedFile = file;
+		this.requestedSeekMillis = startMillis;
+		this.isStopRequested = false;
+		// Discard the audio of the previous track that has not yet been played
+		this.output.flush();
+		this.startThread();
+		this.notifyAll();
+	}
+
+	/**
+	 * Sets the track to be played once the current one finishes.
+	 *
+	 * @param file - The mp3 file of the next track, or null if playback should stop after the current track.
+	 */
+	public synchronized void setNextTrack(File file)
+	{
+		this.nextFile = file;
+	}
+
+	/**
+	 * Sets the amount of the next track that is decoded before the current track finishes.
+	 *
+	 * @param millis - The length of audio to be decoded in advance, in milliseconds.
+	 */
+	public synchronized void setPreBufferMillis(int millis)
+	{
+		this.preBufferMillis = Math.max(0, millis);
+	}
+
+	public synchronized int getPreBufferMillis()
+	{
+		return this.preBufferMillis;
+	}
+
+	/**
+	 * Starts or resumes playback of the current track.
+	 */
+	public synchronized void play()
+	{
+		if (this.isPaused)
+		{
+			this.isPaused = false;
+			this.output.resume();
+			this.notifyAll();
+		}
+	}
+
+	/**
+	 * Pauses playback, keeping the track, decoder and audio output open.
+	 */
+	public synchronized void pause()
+	{
+		this.isPaused = true;
+		this.output.pause();
+	}
+
+	/**
+	 * Moves the playback position of the current track.
+	 *
+	 * @param millis - The new position in milliseconds.
+	 */
+	public synchronized void seek(long millis)
+	{
+		this.requestedSeekMillis = millis;
+		// Discard the audio from the old position that has not yet been played
+		this.output.flush();
+		this.notifyAll();
+	}
+
+	/**
+	 * Pauses playback and closes the current track.
+	 */
+	public synchronized void stop()
+	{
+		this.requestedFile = null;
+		this.requestedSeekMillis = -1;
+		this.isStopRequested = true;
+		this.pause();
+		this.output.flush();
+		this.notifyAll();
+	}
+
+	/**
+	 * Stops the engine thread and closes the audio output. The engine cannot be used again.
+	 */
+	public synchronized void close()
+	{
+		this.isClosed = true;
+		this.output.flush();
+		this.notifyAll();
+	}
+
+	/**
+	 * Starts the engine and preloader threads if they haven't yet been started.
+	 */
+	private void startThread()
+	{
+		if (this.thread == null)
+		{
+			this.thread = new Thread("Music Player")
+			{
+				@Override
+				public void run()
+				{
+					runEngine();
+				}
+			};
+			this.thread.setDaemon(true);
+			this.thread.start();
+
+			this.preloader = Executors.newSingleThreadExecutor(new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable runnable)
+				{
+					Thread thread = new Thread(runnable, "Track Preloader");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	/**
+	 * The main loop of the engine thread. Carries out requests and decodes one frame at a time while playing.
+	 */
+	private void runEngine()
+	{
+		while (true)
+		{
+			File fileToOpen;
+			long seekMillis;
+			boolean isStopping;
+
+			synchronized (this)
+			{
+				// Wait until there is a request to carry out or a track to play
+				while (!this.isClosed && this.requestedFile == null && this.requestedSeekMillis < 0 && !this.isStopRequested
+						&& (this.isPaused || this.track == null))
+				{
+					try
+					{
+						this.wait();
+					}
+					catch (InterruptedException e)
+					{
+						this.isClosed = true;
+					}
+				}
+
+				if (this.isClosed)
+				{
+					break;
+				}
+
+				// Take the pending requests
+				fileToOpen = this.requestedFile;
+				seekMillis = this.requestedSeekMillis;
+				isStopping = this.isStopRequested;
+				this.requestedFile = null;
+				this.requestedSeekMillis = -1;
+				this.isStopRequested = false;
+			}
+
+			// The caller flushed the output so that the old audio stops straight away, but a frame decoded before the
+			// request was taken may have been written since. Nothing more from before the request is written now
+			if (fileToOpen != null || seekMillis >= 0 || isStopping)
+			{
+				this.output.flush();
+			}
+
+			try
+			{
+				if (isStopping)
+				{
+					this.closeTrack();
+					this.cancelPreparation();
+					this.markStopped(null);
+					continue;
+				}
+				if (fileToOpen != null)
+				{
+					this.openTrack(fileToOpen);
+				}
+				if (seekMillis >= 0 && this.track != null)
+				{
+					this.track.seek(seekMillis);
+					this.decodedMillis = this.track.getPositionMillis();
+					// The audio that follows starts from the new position
+					this.output.mark(this.decodedMillis, null);
+				}
+				// Check for any further requests before decoding
+				if (fileToOpen != null || seekMillis >= 0)
+				{
+					continue;
+				}
+
+				if (this.track.decodeFrame())
+				{
+					this.write(this.track.decoder, this.track.output.getBuffer(), this.track.outputStart, this.track.outputEnd);
+					this.decodedMillis = this.track.getPositionMillis();
+					this.updatePreparation();
+				}
+				else
+				{
+					this.finishTrack();
+				}
+			}
+			catch (IOException | JavaLayerException | RuntimeException e)
+			{
+				// Corrupt data can make the decoder throw any exception, which mustn't end the engine thread
+				e.printStackTrace();
+				File failedFile = (this.track != null) ? this.track.file : fileToOpen;
+				this.closeTrack();
+				this.markFailed(failedFile, e);
+			}
+		}
+
+		this.closeTrack();
+		this.cancelPreparation();
+		this.preloader.shutdown();
+		this.output.close();
+	}
+
+	/**
+	 * Opens and indexes a track, closing the previous one.
+	 *
+	 * @param file - The mp3 file to be opened.
+	 */
+	private void openTrack(File file) throws IOException
+	{
+		this.closeTrack();
+		this.setTrack(Track.open(file));
+
+		// The audio of the previous track has been flushed, so the new track plays straight away
+		final Track openedTrack = this.track;
+		this.output.mark(this.decodedMillis, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				setPlayingTrack(openedTrack.file, openedTrack.frameIndex);
+				listener.trackOpened(openedTrack.file, openedTrack.frameIndex.getDurationMillis());
+			}
+		});
+	}
+
+	/**
+	 * Makes a track the one being decoded.
+	 *
+	 * @param track - The open track.
+	 */
+	private void setTrack(Track track)
+	{
+		this.track = track;
+		this.decodedMillis = track.getPositionMillis();
+	}
+
+	/**
+	 * Sets the track being played, once its audio has reached the output.
+	 *
+	 * @param file - The file of the track, or null if nothing is playing.
+	 * @param frameIndex - The frame index of the track, or null if nothing is playing.
+	 */
+	private void setPlayingTrack(File file, FrameIndex frameIndex)
+	{
+		this.file = file;
+		this.frameIndex = frameIndex;
+	}
+
+	/**
+	 * Marks the point in the output after which nothing is playing, notifying the listener there if a track has
+	 * finished.
+	 *
+	 * @param finishedFile - The file of the track that finished, or null if it was stopped.
+	 */
+	private void markStopped(final File finishedFile)
+	{
+		this.output.mark(0, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				setPlayingTrack(null, null);
+
+				if (finishedFile != null)
+				{
+					listener.trackFinished(finishedFile, null);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Marks the point in the output after which nothing is playing because a track failed, notifying the listener
+	 * there so that it can move on from the track.
+	 *
+	 * @param failedFile - The file of the track that failed, or null if it isn't known.
+	 * @param cause - The error that stopped the track.
+	 */
+	private void markFailed(final File failedFile, final Exception cause)
+	{
+		this.output.mark(0, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				setPlayingTrack(null, null);
+
+				if (failedFile != null)
+				{
+					listener.trackFailed(failedFile, cause);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Writes decoded samples to the sink, opening the sink first if needed.
+	 *
+	 * @param decoder - The decoder that produced the samples, which determines their format.
+	 * @param samples - The interleaved samples.
+	 * @param start - The index of the first sample to be written.
+	 * @param end - The index after the last sample to be written.
+	 */
+	private void write(Decoder decoder, short[] samples, int start, int end) throws IOException
+	{
+		if (start >= end)
+		{
+			return;
+		}
+
+		// Open the sink, or reopen it if the format of the audio has changed
+		if (!this.output.isOpen() || this.output.getSampleRate() != decoder.getOutputFrequency()
+				|| this.output.getChannels() != decoder.getOutputChannels())
+		{
+			// Let the audio in the old format finish playing first
+			if (this.output.isOpen())
+			{
+				this.output.drain();
+			}
+			this.output.open(decoder.getOutputFrequency(), decoder.getOutputChannels());
+		}
+		this.output.write(samples, start, end - start);
+	}
+
+	/**
+	 * Starts preparing the next track once the current one is close to its end, and discards a prepared track that
+	 * is no longer the next track.
+	 */
+	private void updatePreparation()
+	{
+		File next;
+		int preBuffer;
+
+		synchronized (this)
+		{
+			next = this.nextFile;
+			preBuffer = this.preBufferMillis;
+		}
+
+		if (this.preparation != null && (next == null || !next.equals(this.preparationFile)))
+		{
+			this.cancelPreparation();
+		}
+
+		if (this.preparation == null && next != null
+				&& this.track.frameIndex.getDurationMillis() - this.decodedMillis <= PRELOAD_AHEAD_MILLIS)
+		{
+			final File fileToPrepare = next;
+			final int millisToDecode = preBuffer;
+
+			this.preparationFile = next;
+			this.preparation = this.preloader.submit(new Callable<Track>()
+			{
+				@Override
+				public Track call() throws IOException, JavaLayerException
+				{
+					Track nextTrack = Track.open(fileToPrepare);
+					nextTrack.preBuffer(millisToDecode);
+					return nextTrack;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Takes the prepared next track, waiting for it to finish being prepared if need be.
+	 *
+	 * @return The prepared track, or null if the next track hasn't been prepared or couldn't be opened.
+	 */
+	private Track takePreparedTrack()
+	{
+		File next;
+
+		synchronized (this)
+		{
+			next = this.nextFile;
+		}
+
+		if (this.preparation == null || next == null || !next.equals(this.preparationFile))
+		{
+			this.cancelPreparation();
+			return null;
+		}
+
+		Future<Track> prepared = this.preparation;
+		this.preparation = null;
+		this.preparationFile = null;
+
+		try
+		{
+			return prepared.get();
+		}
+		catch (ExecutionException e)
+		{
+			e.getCause().printStackTrace();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		return null;
+	}
+
+	/**
+	 * Discards the next track being prepared, closing it once it has finished being prepared.
+	 */
+	private void cancelPreparation()
+	{
+		if (this.preparation == null)
+		{
+			return;
+		}
+
+		final Future<Track> cancelled = this.preparation;
+		this.preparation = null;
+		this.preparationFile = null;
+
+		// The preloader runs one task at a time, so this runs once the preparation has finished or been cancelled
+		if (!cancelled.cancel(false))
+		{
+			this.preloader.submit(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						cancelled.get().close();
+					}
+					catch (ExecutionException | InterruptedException e)
+					{
+						// The track was never opened, so there is nothing to close
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Moves on to the prepared next track if there is one, otherwise waits for the current track to finish playing and
+	 * closes it. Notifies the listener either way.
+	 */
+	private void finishTrack() throws IOException
+	{
+		final File finishedFile = this.track.file;
+		final Track nextTrack = this.takePreparedTrack();
+
+		if (nextTrack != null)
+		{
+			this.closeTrack();
+			this.setTrack(nextTrack);
+
+			// The next track starts playing once the output reaches the end of the previous one
+			this.output.mark(0, new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					setPlayingTrack(nextTrack.file, nextTrack.frameIndex);
+					listener.trackFinished(finishedFile, nextTrack.file);
+					listener.trackOpened(nextTrack.file, nextTrack.frameIndex.getDurationMillis());
+				}
+			});
+
+			// Write the audio decoded in advance immediately after the end of the previous track
+			for (short[] samples : nextTrack.preBuffered)
+			{
+				this.write(nextTrack.decoder, samples, 0, samples.length);
+			}
+			nextTrack.preBuffered.clear();
+			return;
+		}
+
+		this.output.drain();
+		this.closeTrack();
+
+		synchronized (this)
+		{
+			// Don't notify the listener if another track has been requested in the meantime
+			if (this.requestedFile != null || this.isStopRequested)
+			{
+				return;
+			}
+		}
+		this.markStopped(finishedFile);
+	}
+
+	/**
+	 * Closes the track being decoded.
+	 */
+	private void closeTrack()
+	{
+		if (this.track != null)
+		{
+			this.track.close();
+		}
+		this.track = null;
+	}
+
+	/**
+	 * Gets the playback position within the current track, following the audio that has reached the output.
+	 *
+	 * @return The position in milliseconds.
+	 */
+	public long getPositionMillis()
+	{
+		return this.output.getPositionMillis();
+	}
+
+	/**
+	 * Gets the buffered output, for its underrun, overrun and buffer level statistics.
+	 *
+	 * @return The output.
+	 */
+	public AudioOutput getOutput()
+	{
+		return this.output;
+	}
+
+	/**
+	 * Gets the frame index of the current track, which is only a seek table if the track has been played before.
+	 *
+	 * @return The frame index, or null if there isn't a track open.
+	 */
+	public FrameIndex getFrameIndex()
+	{
+		return this.frameIndex;
+	}
+
+	/**
+	 * Gets the file of the current track.
+	 *
+	 * @return The file, or null if there isn't a track open.
+	 */
+	public File getFile()
+	{
+		return this.file;
+	}
+
+	public synchronized boolean isPaused()
+	{
+		return this.isPaused;
+	}
+
+	/**
+	 * An open track and the state of its decoder. Only used by one thread at a time.
+	 */
+	private static class Track
+	{
+		// The file and its frame index
+		private final File file;
+		private final FrameIndex frameIndex;
+
+		// The file, the bitstream reading from it and the decoder, both replaced on each seek
+		private final TrackInput input;
+		private Bitstream bitstream;
+		private Decoder decoder;
+
+		// The next frame to be decoded
+		private int frameNumber;
+		// The first frame to be output, any frames before it are decoded and discarded
+		private int firstAudibleFrame;
+
+		// The output of the last decoded frame, and the range of it that is part of the audio
+		private SampleBuffer output;
+		private int outputStart;
+		private int outputEnd;
+
+		// Audio decoded in advance, to be written before decoding any further frames
+		private final List<short[]> preBuffered = new ArrayList<short[]>();
+
+		/**
+		 * Class Constructor.
+		 *
+		 * @param file - The mp3 file.
+		 * @param frameIndex - The frame index of the file.
+		 * @param input - The open file.
+		 */
+		private Track(File file, FrameIndex frameIndex, TrackInput input)
+		{
+			this.file = file;
+			this.frameIndex = frameIndex;
+			this.input = input;
+		}
+
+		/**
+		 * Opens and indexes a track, positioned at its start.
+		 *
+		 * @param file - The mp3 file to be opened.
+		 * @return The open track.
+		 */
+		private static Track open(File file) throws IOException
+		{
+			TrackInput input = TrackInput.open(file);
+
+			try
+			{
+				Track track = new Track(file, getFrameIndex(file, input), input);
+				track.seek(0);
+				return track;
+			}
+			catch (IOException | RuntimeException e)
+			{
+				input.close();
+				throw e;
+			}
+		}
+
+		/**
+		 * Gets the seek table of a track stored with its metadata, otherwise indexes the frames of the track and
+		 * stores its seek table, so that the track doesn't need to be scanned again when it is next opened.
+		 *
+		 * @param file - The mp3 file.
+		 * @param input - The open file.
+		 * @return The seek table or frame index of the track.
+		 */
+		private static FrameIndex getFrameIndex(File file, TrackInput input) throws IOException
+		{
+			BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+			String path = file.getAbsolutePath();
+
+			FrameIndex seekTable = MetadataCache.getInstance().getSeekTable(path, attributes);
+			if (seekTable != null)
+			{
+				return seekTable;
+			}
+
+			// Index the frames once, so that any later seeks don't need to scan the file
+			FrameIndex frameIndex = FrameIndex.build(file, input);
+			MetadataCache.getInstance().putSeekTable(path, attributes, frameIndex.toSeekTable(FrameIndex.SEEK_TABLE_POINTS));
+			return frameIndex;
+		}
+
+		/**
+		 * Positions the track at the start of the frame playing at a given time.
+		 *
+		 * @param millis - The time in milliseconds.
+		 */
+		private void seek(long millis) throws IOException
+		{
+			int targetFrame = this.frameIndex.getFrameAt(millis);
+			// Start decoding a few frames early so that the first audible frame decodes cleanly
+			int startFrame = Math.max(0, targetFrame - SEEK_PRIMING_FRAMES);
+			int seekPoint = this.frameIndex.getSeekPoint(startFrame);
+
+			this.input.seek(this.frameIndex.getFrameOffset(seekPoint));
+			// The bitstream reads from the input's current position, which does its own buffering. It is never
+			// closed, as that would close the file
+			this.bitstream = new Bitstream(this.input);
+			// The bit reservoir of the old decoder holds data from the old position, which frames after the seek would
+			// refer back into. A new decoder starts with an empty reservoir, so it skips such frames instead
+			this.decoder = new Decoder();
+
+			// Skip from the nearest frame in a seek table to the start frame by reading only the frame headers
+			try
+			{
+				for (int frame = seekPoint; frame < startFrame && this.bitstream.readFrame() != null; frame++)
+				{
+					this.bitstream.closeFrame();
+				}
+			}
+			catch (BitstreamException e)
+			{
+				throw new IOException(e);
+			}
+
+			this.frameNumber = startFrame;
+			this.firstAudibleFrame = targetFrame;
+			this.preBuffered.clear();
+		}
+
+		/**
+		 * Decodes the next frame, setting the range of its output that should be played.
+		 *
+		 * @return Whether a frame was decoded, false if the end of the track has been reached.
+		 */
+		private boolean decodeFrame() throws JavaLayerException
+		{
+			if (this.frameNumber >= this.frameIndex.getFrameCount())
+			{
+				return false;
+			}
+
+			Header header = this.bitstream.readFrame();
+
+			if (header == null)
+			{
+				return false;
+			}
+
+			this.output = (SampleBuffer) this.decoder.decodeFrame(header, this.bitstream);
+			this.bitstream.closeFrame();
+
+			this.outputStart = 0;
+			this.outputEnd = 0;
+
+			if (this.frameNumber >= this.firstAudibleFrame)
+			{
+				// Only output the part of the frame between the encoder delay and padding
+				int channels = this.decoder.getOutputChannels();
+				long frameStart = (long) this.frameNumber * this.frameIndex.getSamplesPerFrame();
+				long frameEnd = frameStart + this.output.getBufferLength() / channels;
+				long start = Math.max(frameStart, this.frameIndex.getFirstSample());
+				long end = Math.min(frameEnd, this.frameIndex.getEndSample());
+
+				if (start < end)
+				{
+					this.outputStart = (int) (start - frameStart) * channels;
+					this.outputEnd = (int) (end - frameStart) * channels;
+				}
+			}
+
+			this.frameNumber++;
+
+			return true;
+		}
+
+		/**
+		 * Decodes the start of the track in advance, so that it can be written as soon as the previous track finishes.
+		 *
+		 * @param millis - The length of audio to be decoded.
+		 */
+		private void preBuffer(int millis) throws JavaLayerException
+		{
+			long samplesToDecode = ((long) millis * this.frameIndex.getSampleRate()) / 1000;
+			long samplesDecoded = 0;
+
+			while (samplesDecoded < samplesToDecode && this.decodeFrame())
+			{
+				if (this.outputStart < this.outputEnd)
+				{
+					this.preBuffered.add(Arrays.copyOfRange(this.output.getBuffer(), this.outputStart, this.outputEnd));
+					samplesDecoded += (this.outputEnd - this.outputStart) / this.decoder.getOutputChannels();
+				}
+			}
+		}
+
+		/**
+		 * Gets the time of the next frame to be decoded.
+		 *
+		 * @return The position in milliseconds.
+		 */
+		private long getPositionMillis()
+		{
+			return this.frameIndex.getFrameTime(Math.max(this.frameNumber, this.firstAudibleFrame));
+		}
+
+		/**
+		 * Closes the file.
+		 */
+		private void close()
+		{
+			try
+			{
+				this.input.close();
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+	}
+}
@@ -0,0 +1,328 @@
+package com.pe.audio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Input that reads a file in large chunks, reading the next chunk on a background thread while the current one is
+ * being consumed. Each input uses two direct buffers, which are pooled between inputs rather than allocated per file.
+ *
+ * @author olly.rowe
+ */
+public class ReadAheadTrackInput extends TrackInput
+{
+	// The size of each chunk read from the file
+	private static final int CHUNK_SIZE = 256 * 1024;
+
+	// The maximum number of unused buffers kept for later inputs
+	private static final int MAX_POOLED_BUFFERS = 4;
+
+	// The unused buffers, guarded by its own lock
+	private static final ArrayDeque<ByteBuffer> bufferPool = new ArrayDeque<ByteBuffer>();
+
+	// The thread on which the chunks are read, shared by all inputs
+	private static final ExecutorService reader = Executors.newSingleThreadExecutor(new ThreadFactory()
+	{
+		@Override
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, "Track Read-Ahead");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	// The open file and its size
+	private final FileChannel channel;
+	private final long length;
+
+	// The chunk being consumed, positioned at the next byte to be read, and its offset within the file
+	private ByteBuffer current;
+	private long currentOffset;
+
+	// The buffer that the next chunk is read into, the read in progress and the offset it is reading from
+	private ByteBuffer spare;
+	private Future<ByteBuffer> pendingRead;
+	private long pendingOffset;
+
+	// The number of read calls made on the file
+	private final AtomicLong fileReadCount = new AtomicLong();
+
+	/**
+	 * Class Constructor.
+	 *
+	 * @param channel - The open file, which is closed with the input.
+	 * @param size - The size of the file.
+	 */
+	ReadAheadTrackInput(FileChannel channel, long size)
+	{
+		this.channel = channel;
+		this.length = size;
+
+		this.current = takeBuffer();
+		this.current.limit(0);
+		this.spare = takeBuffer();
+
+		// Start reading the first chunk straight away
+		this.readAhead(0);
+	}
+
+	@Override
+	public int read(byte[] destination, int offset, int length) throws IOException
+	{
+		if (length == 0)
+		{
+			return 0;
+		}
+
+		if (!this.current.hasRemaining() && !this.nextChunk())
+		{
+			return -1;
+		}
+
+		int count = Math.min(length, this.current.remaining());
+		this.current.get(destination, offset, count);
+		return count;
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		if (!this.current.hasRemaining() && !this.nextChunk())
+		{
+			return -1;
+		}
+		return this.current.get() & 0xFF;
+	}
+
+	/**
+	 * Makes the chunk at the current position the one being consumed, waiting for it to be read if need be, and
+	 * starts reading the chunk after it.
+	 *
+	 * @return Whether there was a chunk, false at the end of the file.
+	 */
+	private boolean nextChunk() throws IOException
+	{
+		long position = this.getPosition();
+
+		if (position >= this.length)
+		{
+			return false;
+		}
+
+		// The chunk being read ahead is only of use if it starts at the current position, such as after a seek
+		if (this.pendingRead == null || this.pendingOffset != position)
+		{
+			this.readAhead(position);
+		}
+
+		ByteBuffer chunk = this.awaitRead();
+
+		// Swap the buffers, so that the old chunk's buffer is reused for the next read
+		this.spare = this.current;
+		this.current = chunk;
+		this.currentOffset = position;
+
+		if (!this.current.hasRemaining())
+		{
+			// The file has been truncated since it was opened
+			return false;
+		}
+
+		this.readAhead(position + this.current.limit());
+		return true;
+	}
+
+	/**
+	 * Starts reading a chunk into the spare buffer, after waiting for any read already in progress.
+	 *
+	 * @param offset - The offset within the file of the chunk.
+	 */
+	private void readAhead(final long offset)
+	{
+		if (this.pendingRead != null)
+		{
+			try
+			{
+				this.awaitRead();
+			}
+			catch (IOException e)
+			{
+				// The chunk is no longer needed
+			}
+		}
+
+		if (offset >= this.length)
+		{
+			return;
+		}
+
+		final ByteBuffer buffer = this.spare;
+
+		this.pendingOffset = offset;
+		this.pendingRead = reader.submit(new Callable<ByteBuffer>()
+		{
+			@Override
+			public ByteBuffer call() throws IOException
+			{
+				buffer.clear();
+
+				// Fill the buffer unless the end of the file is reached first
+				while (buffer.hasRemaining())
+				{
+					int read = channel.read(buffer, offset + buffer.position());
+					fileReadCount.incrementAndGet();
+
+					if (read == -1)
+					{
+						break;
+					}
+				}
+
+				buffer.flip();
+				return buffer;
+			}
+		});
+	}
+
+	/**
+	 * Waits for the read in progress to finish.
+	 *
+	 * @return The buffer containing the chunk that was read.
+	 */
+	private ByteBuffer awaitRead() throws IOException
+	{
+		Future<ByteBuffer> read = this.pendingRead;
+		this.pendingRead = null;
+
+		boolean isInterrupted = false;
+
+		try
+		{
+			while (true)
+			{
+				try
+				{
+					return read.get();
+				}
+				catch (InterruptedException e)
+				{
+					// The buffer can't be reused until the read has finished, so keep waiting
+					isInterrupted = true;
+				}
+			}
+		}
+		catch (ExecutionException e)
+		{
+			throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e.getCause());
+		}
+		finally
+		{
+			if (isInterrupted)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	@Override
+	public void seek(long position)
+	{
+		position = Math.max(0, Math.min(position, this.length));
+
+		// Seek within the current chunk where possible
+		if (position >= this.currentOffset && position <= this.currentOffset + this.current.limit())
+		{
+			this.current.position((int) (position - this.currentOffset));
+			return;
+		}
+
+		this.current.limit(0);
+		this.currentOffset = position;
+
+		// Start reading the chunk at the new position before it is needed
+		if (this.pendingRead == null || this.pendingOffset != position)
+		{
+			this.readAhead(position);
+		}
+	}
+
+	@Override
+	public long getPosition()
+	{
+		return this.currentOffset + this.current.position();
+	}
+
+	@Override
+	public long getLength()
+	{
+		return this.length;
+	}
+
+	@Override
+	public long getFileReadCount()
+	{
+		return this.fileReadCount.get();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if (this.pendingRead != null)
+		{
+			try
+			{
+				this.awaitRead();
+			}
+			catch (IOException e)
+			{
+				// The file is being closed anyway
+			}
+		}
+
+		if (this.current != null)
+		{
+			releaseBuffer(this.current);
+			releaseBuffer(this.spare);
+			this.current = null;
+			this.spare = null;
+		}
+		this.channel.close();
+	}
+
+	/**
+	 * Takes an unused buffer from the pool, or allocates one if the pool is empty.
+	 */
+	private static ByteBuffer takeBuffer()
+	{
+		synchronized (bufferPool)
+		{
+			ByteBuffer buffer = bufferPool.poll();
+			return (buffer != null) ? buffer : ByteBuffer.allocateDirect(CHUNK_SIZE);
+		}
+	}
+
+	/**
+	 * Returns a buffer to the pool, unless the pool is full.
+	 */
+	private static void releaseBuffer(ByteBuffer buffer)
+	{
+		synchronized (bufferPool)
+		{
+			if (bufferPool.size() < MAX_POOLED_BUFFERS)
+			{
+				buffer.clear();
+				bufferPool.push(buffer);
+			}
+		}
+	}
+}
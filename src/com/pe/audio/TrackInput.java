@@ -0,0 +1,143 @@
+package com.pe.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A seekable input stream over an mp3 file, which keeps track of its own position and buffers the file itself so that
+ * it doesn't need to be wrapped in a buffered stream.
+ *
+ * Files up to the map limit are memory mapped, so the data is read straight from the page cache without any system
+ * calls once it is resident. Larger files are read ahead in large chunks on a background thread instead, as mapping
+ * them would use a large amount of address space for data that is read once.
+ *
+ * @author olly.rowe
+ */
+public abstract class TrackInput extends InputStream
+{
+	// The default size of file up to which files are memory mapped
+	public static final long DEFAULT_MAP_LIMIT = 32L * 1024 * 1024;
+
+	// The size of file up to which files are memory mapped, 0 to never map files
+	private static volatile long mapLimit = DEFAULT_MAP_LIMIT;
+
+	// The position to return to when reset
+	private long markPosition = 0;
+
+	/**
+	 * Opens a file with the input strategy for its size.
+	 *
+	 * @param file - The file to be opened.
+	 * @return The input, positioned at the start of the file.
+	 */
+	public static TrackInput open(File file) throws IOException
+	{
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+		try
+		{
+			long size = channel.size();
+
+			// A mapping is limited to 2GB
+			if (size <= Math.min(mapLimit, Integer.MAX_VALUE))
+			{
+				return new MappedTrackInput(channel, size);
+			}
+			return new ReadAheadTrackInput(channel, size);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Sets the size of file up to which files are memory mapped, rather than read ahead. Only affects files opened
+	 * afterwards.
+	 *
+	 * @param bytes - The size in bytes, 0 to never map files.
+	 */
+	public static void setMapLimit(long bytes)
+	{
+		mapLimit = Math.max(0, bytes);
+	}
+
+	public static long getMapLimit()
+	{
+		return mapLimit;
+	}
+
+	/**
+	 * Moves the position at which the next byte is read.
+	 *
+	 * @param position - The byte offset within the file.
+	 */
+	public abstract void seek(long position) throws IOException;
+
+	/**
+	 * Gets the position at which the next byte is read.
+	 *
+	 * @return The byte offset within the file.
+	 */
+	public abstract long getPosition();
+
+	/**
+	 * Gets the size of the file.
+	 *
+	 * @return The size in bytes.
+	 */
+	public abstract long getLength();
+
+	/**
+	 * Gets the number of read calls made on the file so far, so that the strategies can be compared.
+	 *
+	 * @return The number of reads, 0 for a mapped file as it isn't read with system calls.
+	 */
+	public abstract long getFileReadCount();
+
+	@Override
+	public int read() throws IOException
+	{
+		byte[] single = new byte[1];
+		return (this.read(single, 0, 1) == -1) ? -1 : single[0] & 0xFF;
+	}
+
+	@Override
+	public long skip(long count) throws IOException
+	{
+		long skipped = Math.max(0, Math.min(count, this.getLength() - this.getPosition()));
+		this.seek(this.getPosition() + skipped);
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported()
+	{
+		return true;
+	}
+
+	/**
+	 * Marks the current position to return to. As the input is seekable, the position is kept however much is read.
+	 */
+	@Override
+	public void mark(int readLimit)
+	{
+		this.markPosition = this.getPosition();
+	}
+
+	@Override
+	public void reset() throws IOException
+	{
+		this.seek(this.markPosition);
+	}
+
+	@Override
+	public int available()
+	{
+		return (int) Math.min(Integer.MAX_VALUE, this.getLength() - this.getPosition());
+	}
+}
@@ -0,0 +1,158 @@
+package com.pe.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a range of the frames of an mp3 file to a new file, without decoding or re-encoding the audio.
+ *
+ * The frames are copied from file to file by the operating system, a chunk at a time, so that the memory used is the
+ * same however long the segment is. Segments always start and end on a frame boundary, and start with either the
+ * ID3v2 tag of the original file or a tag of their own.
+ *
+ * @author olly.rowe
+ */
+public class TrackSplitter
+{
+	// The number of bytes copied at a time, between which progress is reported
+	private static final long CHUNK_SIZE = 4 * 1024 * 1024;
+
+	/**
+	 * Receives the progress of a split.
+	 */
+	public interface ProgressListener
+	{
+		/**
+		 * Called after each chunk of the segment has been written.
+		 *
+		 * @param bytesWritten - The number of bytes written so far.
+		 * @param totalBytes - The total number of bytes to be written.
+		 */
+		void progressed(long bytesWritten, long totalBytes);
+	}
+
+	/**
+	 * Class Constructor. Not used as all methods are static.
+	 */
+	private TrackSplitter()
+	{
+	}
+
+	/**
+	 * Writes a range of frames to a new file, along with the ID3v2 tag of the original file. The ID3v1 tag is also
+	 * copied if the range includes the last frame.
+	 *
+	 * @param source - The original mp3 file.
+	 * @param frameIndex - The frame index of the original file.
+	 * @param startFrame - The first frame to be written.
+	 * @param endFrame - The frame after the last frame to be written.
+	 * @param output - The file to be written, replacing any existing file.
+	 * @param listener - The listener to be notified of progress, or null.
+	 */
+	public static void writeSegment(File source, FrameIndex frameIndex, int startFrame, int endFrame, File output, ProgressListener listener)
+			throws IOException
+	{
+		writeSegment(source, frameIndex, startFrame, endFrame, null, output, listener);
+	}
+
+	/**
+	 * Writes a range of frames to a new file, preceded by the given ID3v2 tag. If no tag is given then the tags of
+	 * the original file are copied, as by {@link #writeSegment(File, FrameIndex, int, int, File, ProgressListener)}.
+	 *
+	 * @param source - The original mp3 file.
+	 * @param frameIndex - The frame index of the original file.
+	 * @param startFrame - The first frame to be written.
+	 * @param endFrame - The frame after the last frame to be written.
+	 * @param tag - The encoded ID3v2 tag to be written at the start of the file, or null to copy the original tags.
+	 * @param output - The file to be written, replacing any existing file.
+	 * @param listener - The listener to be notified of progress, or null.
+	 */
+	public static void writeSegment(File source, FrameIndex frameIndex, int startFrame, int endFrame, byte[] tag, File output,
+			ProgressListener listener) throws IOException
+	{
+		if (source.getCanonicalFile().equals(output.getCanonicalFile()))
+		{
+			throw new IOException("Unable to split a track into itself: " + output.getAbsolutePath());
+		}
+
+		try (FileChannel input = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+				FileChannel outputChannel = FileChannel.open(output.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			long audioStart = frameIndex.getFrameOffset(startFrame);
+			long audioEnd = frameIndex.getFrameOffset(endFrame);
+
+			// Keep the trailing ID3v1 tag of the original if the segment runs to the end of the audio
+			long end = (tag == null && endFrame >= frameIndex.getFrameCount()) ? input.size() : audioEnd;
+
+			long tagLength = (tag == null) ? frameIndex.getTagLength() : tag.length;
+			long totalBytes = tagLength + (end - audioStart);
+			long written = 0;
+
+			if (tag == null)
+			{
+				written += transfer(input, 0, tagLength, outputChannel, written, totalBytes, listener);
+			}
+			else
+			{
+				ByteBuffer tagBuffer = ByteBuffer.wrap(tag);
+				while (tagBuffer.hasRemaining())
+				{
+					outputChannel.write(tagBuffer);
+				}
+				written += tagLength;
+			}
+			transfer(input, audioStart, end - audioStart, outputChannel, written, totalBytes, listener);
+		}
+		catch (IOException e)
+		{
+			// Don't leave a truncated file behind
+			output.delete();
+			throw e;
+		}
+	}
+
+	/**
+	 * Copies a range of bytes from one file to the end of another, a chunk at a time.
+	 *
+	 * @param input - The file to be copied from.
+	 * @param position - The offset of the first byte to be copied.
+	 * @param count - The number of bytes to be copied.
+	 * @param output - The file to be copied to.
+	 * @param written - The number of bytes of the segment written before this range, for reporting progress.
+	 * @param totalBytes - The total number of bytes of the segment, for reporting progress.
+	 * @param listener - The listener to be notified of progress, or null.
+	 * @return The number of bytes copied.
+	 */
+	private static long transfer(FileChannel input, long position, long count, FileChannel output, long written, long totalBytes,
+			ProgressListener listener) throws IOException
+	{
+		long copied = 0;
+
+		while (copied < count)
+		{
+			// The transfer may copy fewer bytes than requested, so continue from wherever it stopped
+			long transferred = input.transferTo(position + copied, Math.min(CHUNK_SIZE, count - copied), output);
+
+			if (transferred <= 0)
+			{
+				throw new IOException("Unexpected end of file after " + (position + copied) + " bytes");
+			}
+			copied += transferred;
+
+			if (listener != null)
+			{
+				listener.progressed(written + copied, totalBytes);
+			}
+
+			if (Thread.currentThread().isInterrupted())
+			{
+				throw new IOException("The split was cancelled");
+			}
+		}
+		return copied;
+	}
+}
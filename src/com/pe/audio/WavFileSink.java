@@ -0,0 +1,221 @@
+package com.pe.audio;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * Audio sink that writes samples to a 16-bit PCM WAV file instead of playing them, such as for checking the output of
+ * the player without an output device. Samples are accepted as fast as they are written.
+ *
+ * The file is started again each time the sink is opened, and its header is completed when the sink is closed or
+ * reopened.
+ *
+ * @author olly.rowe
+ */
+public class WavFileSink implements AudioSink
+{
+	// The size of the WAV header, after which the samples start
+	private static final int HEADER_SIZE = 44;
+
+	// The size of the buffer used when writing the file
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// The file written to
+	private final File file;
+
+	// The open file, null if the sink isn't open
+	private OutputStream output;
+
+	// The format of the open file
+	private int sampleRate;
+	private int channels;
+
+	// The number of bytes of samples written to the open file
+	private long dataSize;
+
+	// Reusable buffer for converting samples to bytes
+	private byte[] bytes = new byte[0];
+
+	/**
+	 * Class Constructor.
+	 *
+	 * @param file - The WAV file to be written.
+	 */
+	public WavFileSink(File file)
+	{
+		this.file = file;
+	}
+
+	@Override
+	public synchronized void open(int sampleRate, int channels) throws IOException
+	{
+		this.close();
+
+		this.sampleRate = sampleRate;
+		this.channels = channels;
+		this.dataSize = 0;
+
+		this.output = new BufferedOutputStream(new FileOutputStream(this.file), BUFFER_SIZE);
+		// The sizes are filled in once the length is known
+		this.output.write(this.createHeader(0));
+	}
+
+	@Override
+	public synchronized void write(short[] samples, int offset, int length)
+	{
+		if (this.output == null)
+		{
+			return;
+		}
+
+		// Convert the samples to little-endian bytes
+		if (this.bytes.length < length * 2)
+		{
+			this.bytes = new byte[length * 2];
+		}
+		for (int i = 0; i < length; i++)
+		{
+			short sample = samples[offset + i];
+			this.bytes[i * 2] = (byte) sample;
+			this.bytes[i * 2 + 1] = (byte) (sample >> 8);
+		}
+
+		try
+		{
+			this.output.write(this.bytes, 0, length * 2);
+			this.dataSize += length * 2;
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public void pause()
+	{
+		// Nothing is playing
+	}
+
+	@Override
+	public void resume()
+	{
+		// Nothing is playing
+	}
+
+	@Override
+	public void flush()
+	{
+		// The samples have already been written
+	}
+
+	@Override
+	public synchronized void drain()
+	{
+		if (this.output != null)
+		{
+			try
+			{
+				this.output.flush();
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+	}
+
+	@Override
+	public synchronized void close()
+	{
+		if (this.output == null)
+		{
+			return;
+		}
+
+		try
+		{
+			this.output.close();
+
+			// Fill in the sizes now that the length is known
+			try (RandomAccessFile wav = new RandomAccessFile(this.file, "rw"))
+			{
+				wav.write(this.createHeader(this.dataSize));
+			}
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		this.output = null;
+	}
+
+	@Override
+	public synchronized boolean isOpen()
+	{
+		return this.output != null;
+	}
+
+	@Override
+	public synchronized int getSampleRate()
+	{
+		return this.sampleRate;
+	}
+
+	@Override
+	public synchronized int getChannels()
+	{
+		return this.channels;
+	}
+
+	/**
+	 * Creates the WAV header for the current format.
+	 *
+	 * @param dataSize - The number of bytes of samples.
+	 */
+	private byte[] createHeader(long dataSize)
+	{
+		byte[] header = new byte[HEADER_SIZE];
+		int blockAlign = this.channels * 2;
+
+		putAscii(header, 0, "RIFF");
+		putInt(header, 4, (int) Math.min(0xFFFFFFFFL, dataSize + HEADER_SIZE - 8));
+		putAscii(header, 8, "WAVE");
+		putAscii(header, 12, "fmt ");
+		putInt(header, 16, 16);
+		// PCM format
+		putShort(header, 20, 1);
+		putShort(header, 22, this.channels);
+		putInt(header, 24, this.sampleRate);
+		putInt(header, 28, this.sampleRate * blockAlign);
+		putShort(header, 32, blockAlign);
+		putShort(header, 34, 16);
+		putAscii(header, 36, "data");
+		putInt(header, 40, (int) Math.min(0xFFFFFFFFL, dataSize));
+		return header;
+	}
+
+	private static void putAscii(byte[] buffer, int offset, String text)
+	{
+		for (int i = 0; i < text.length(); i++)
+		{
+			buffer[offset + i] = (byte) text.charAt(i);
+		}
+	}
+
+	private static void putShort(byte[] buffer, int offset, int value)
+	{
+		buffer[offset] = (byte) value;
+		buffer[offset + 1] = (byte) (value >> 8);
+	}
+
+	private static void putInt(byte[] buffer, int offset, int value)
+	{
+		putShort(buffer, offset, value);
+		putShort(buffer, offset + 2, value >> 16);
+	}
+}
@@ -0,0 +1,552 @@
+package com.pe.cli;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import com.pe.MetadataCache;
+import com.pe.Playlist;
+import com.pe.PlaylistLoader;
+import com.pe.PlaylistStats;
+import com.pe.Song;
+import com.pe.audio.BatchSplitter;
+import com.pe.formats.PlaylistFormat;
+import com.pe.formats.PlaylistFormats;
+
+/**
+ * Command line entry point for working with playlists without a display, such as from scripts on a server.
+ *
+ * Playlists are loaded, validated, merged and written in batch mode using the same classes as the GUI. The songs are
+ * read on a pool of threads whose size can be set with --threads, and --timing reports the time taken by each stage
+ * as one JSON object per line on the standard error stream, so that throughput can be tracked.
+ *
+ * Exits with 0 on success, 1 if a command fails, a playlist doesn't validate or songs that couldn't be read were left
+ * out of a playlist written, and 2 if the arguments are invalid.
+ *
+ * @author olly.rowe
+ */
+public class PlaylistTool
+{
+	// The usage text, printed when the arguments are invalid
+	private static final String USAGE = String.join(System.lineSeparator(),
+			"Usage: PlaylistTool [options] <command> <arguments>",
+			"",
+			"Commands:",
+			"  info <playlist>...                          Print the details of each playlist",
+			"  validate <playlist>...                      Check that every song can be read",
+			"  merge <output> <playlist>...                Join playlists into one",
+			"  convert <input> <output>                    Write a playlist in the format of the output file",
+			"  create <output> <folder | mp3>...           Create a playlist of every song within the folders",
+			"  split <source.mp3> <points.cue | points.txt> [output directory]",
+			"                                              Split a recording into tracks",
+			"",
+			"Options:",
+			"  --threads <n>       The number of songs read at the same time",
+			"  --timing            Print the time taken by each stage as JSON to standard error",
+			"  --name <name>       The name of the playlist written",
+			"  --author <author>   The author of the playlist written",
+			"  --unique            Leave out songs whose file is already on the playlist written");
+
+	// The number of songs read at the same time
+	private int threads = PlaylistLoader.getDefaultThreads();
+
+	// Whether the timing of each stage is printed
+	private boolean isTiming = false;
+
+	// The details of the playlist written, null to keep those of the input
+	private String name;
+	private String author;
+
+	// Whether repeated files are left out of the playlist written
+	private boolean isUnique = false;
+
+	// The command and its arguments
+	private String command;
+	private List<String> arguments = new ArrayList<String>();
+
+	/**
+	 * Runs the tool from the command line.
+	 *
+	 * @param args - The command line arguments.
+	 */
+	public static void main(String[] args)
+	{
+		PlaylistTool tool = new PlaylistTool();
+
+		if (!tool.parseArguments(args))
+		{
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+
+		int status;
+		try
+		{
+			status = tool.run();
+		}
+		catch (IOException e)
+		{
+			System.err.println(tool.command + " failed: " + e.getMessage());
+			status = 1;
+		}
+
+		// Keep the metadata that was read for the next run
+		MetadataCache.getInstance().saveToFile();
+
+		System.exit(status);
+	}
+
+	/**
+	 * Reads the options, command and arguments.
+	 *
+	 * @param args - The command line arguments.
+	 * @return Whether the arguments are valid.
+	 */
+	private boolean parseArguments(String[] args)
+	{
+		for (int i = 0; i < args.length; i++)
+		{
+			String arg = args[i];
+
+			try
+			{
+				if (arg.equals("--threads"))
+				{
+					this.threads = Integer.parseInt(args[++i]);
+					if (this.threads < 1)
+					{
+						return false;
+					}
+				}
+				else if (arg.equals("--timing"))
+				{
+					this.isTiming = true;
+				}
+				else if (arg.equals("--name"))
+				{
+					this.name = args[++i];
+				}
+				else if (arg.equals("--author"))
+				{
+					this.author = args[++i];
+				}
+				else if (arg.equals("--unique"))
+				{
+					this.isUnique = true;
+				}
+				else if (arg.startsWith("--"))
+				{
+					return false;
+				}
+				else if (this.command == null)
+				{
+					this.command = arg;
+				}
+				else
+				{
+					this.arguments.add(arg);
+				}
+			}
+			catch (ArrayIndexOutOfBoundsException | NumberFormatException e)
+			{
+				// An option is missing its value
+				return false;
+			}
+		}
+
+		if (this.command == null)
+		{
+			return false;
+		}
+
+		switch (this.command)
+		{
+			case "info":
+			case "validate":
+				return this.arguments.size() >= 1;
+			case "merge":
+			case "create":
+				return this.arguments.size() >= 2;
+			case "convert":
+				return this.arguments.size() == 2;
+			case "split":
+				return this.arguments.size() == 2 || this.arguments.size() == 3;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Runs the command.
+	 *
+	 * @return The exit status.
+	 */
+	private int run() throws IOException
+	{
+		switch (this.command)
+		{
+			case "info":
+				return this.info();
+			case "validate":
+				return this.validate();
+			case "merge":
+				return this.merge();
+			case "convert":
+				return this.convert();
+			case "create":
+				return this.create();
+			default:
+				return this.split();
+		}
+	}
+
+	/**
+	 * Prints the details of each playlist.
+	 */
+	private int info() throws IOException
+	{
+		for (String path : this.arguments)
+		{
+			Playlist playlist = this.load(new File(path));
+			PlaylistStats stats = playlist.getStats();
+
+			System.out.println(path);
+			System.out.println("  Name:      " + playlist.getName());
+			System.out.println("  Author:    " + playlist.getAuthor());
+			System.out.println("  Tracks:    " + stats.getTrackCount());
+			System.out.println("  Play time: " + stats.getFormattedPlayTime());
+			System.out.println("  Artists:   " + stats.getArtistCount());
+			System.out.println("  Albums:    " + stats.getAlbumCount());
+			System.out.println("  Size:      " + stats.getTotalBytes() + " bytes");
+			System.out.println("  Unreadable tracks: " + playlist.getLoadFailures().size());
+		}
+		return 0;
+	}
+
+	/**
+	 * Checks that every song on each playlist can be read, listing those that can't.
+	 *
+	 * @return 0 if every song can be read, otherwise 1.
+	 */
+	private int validate() throws IOException
+	{
+		int failureCount = 0;
+
+		for (String path : this.arguments)
+		{
+			// Read every song, rather than trusting the details held within the playlist file
+			Playlist playlist = this.load(new File(path), false);
+
+			for (PlaylistLoader.Failure failure : playlist.getLoadFailures())
+			{
+				String reason = "unreadable";
+				if (failure.getCause() instanceof FileNotFoundException)
+				{
+					reason = "not found";
+				}
+				else if (failure.getCause() != null)
+				{
+					reason = (failure.getCause().getMessage() != null) ? failure.getCause().getMessage() : failure.getCause().getClass().getSimpleName();
+				}
+				System.out.println(path + ": " + failure.getPath() + ": " + reason);
+			}
+			failureCount += playlist.getLoadFailures().size();
+		}
+
+		System.out.println(failureCount == 0 ? "All tracks are valid" : failureCount + " tracks could not be read");
+		return (failureCount == 0) ? 0 : 1;
+	}
+
+	/**
+	 * Joins playlists into one, in the order given.
+	 */
+	private int merge() throws IOException
+	{
+		File output = new File(this.arguments.get(0));
+		Playlist merged = new Playlist();
+		int failureCount = 0;
+
+		for (String path : this.arguments.subList(1, this.arguments.size()))
+		{
+			Playlist playlist = this.load(new File(path));
+
+			// Use the details of the first playlist unless others are given
+			if (merged.getSize() == 0 && merged.getName().isEmpty())
+			{
+				merged.setName(playlist.getName());
+				merged.setAuthor(playlist.getAuthor());
+			}
+			merged.addSongs(playlist.getSongs());
+			failureCount += playlist.getLoadFailures().size();
+		}
+
+		this.write(merged, output);
+		return getWriteStatus(output, failureCount);
+	}
+
+	/**
+	 * Writes a playlist in the format of the output file.
+	 */
+	private int convert() throws IOException
+	{
+		File output = new File(this.arguments.get(1));
+		Playlist playlist = this.load(new File(this.arguments.get(0)));
+
+		this.write(playlist, output);
+		return getWriteStatus(output, playlist.getLoadFailures().size());
+	}
+
+	/**
+	 * Creates a playlist of every song within folders, sorted by name, listing those that couldn't be read.
+	 */
+	private int create() throws IOException
+	{
+		File output = new File(this.arguments.get(0));
+		long startTime = System.nanoTime();
+
+		// Read the songs as they are found
+		PlaylistLoader loader = new PlaylistLoader(this.threads);
+		for (String path : this.arguments.subList(1, this.arguments.size()))
+		{
+			find(new File(path), loader);
+		}
+
+		Playlist playlist = new Playlist();
+		playlist.addSongs(loader.getSongs());
+
+		for (PlaylistLoader.Failure failure : loader.getFailures())
+		{
+			System.err.println("Unable to read " + failure.getPath());
+		}
+		this.printTiming("scan", output.getPath(), loader.getSubmittedCount(), loader.getFailures().size(), startTime);
+
+		// Name the playlist after its file unless a name is given
+		playlist.setName(output.getName().replaceAll("\\.[^.]*$", ""));
+
+		this.write(playlist, output);
+		return getWriteStatus(output, loader.getFailures().size());
+	}
+
+	/**
+	 * Submits an mp3 file to be read, or searches a folder and its subfolders for mp3 files.
+	 *
+	 * @param file - The file or folder.
+	 * @param loader - The loader by which the songs are read.
+	 */
+	private static void find(File file, PlaylistLoader loader)
+	{
+		if (file.isDirectory())
+		{
+			File[] children = file.listFiles();
+
+			if (children != null)
+			{
+				Arrays.sort(children);
+
+				for (File child : children)
+				{
+					find(child, loader);
+				}
+			}
+		}
+		else if (file.getName().toLowerCase(Locale.ROOT).endsWith(".mp3"))
+		{
+			loader.submit(file.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Splits a recording into tracks at the points listed within a CUE sheet or timestamp list.
+	 */
+	private int split() throws IOException
+	{
+		File source = new File(this.arguments.get(0));
+		File outputDirectory = (this.arguments.size() == 3) ? new File(this.arguments.get(2)) : source.getAbsoluteFile().getParentFile();
+		long startTime = System.nanoTime();
+
+		List<File> outputFiles = BatchSplitter.split(source, BatchSplitter.readSegments(new File(this.arguments.get(1))), outputDirectory, null);
+
+		for (File outputFile : outputFiles)
+		{
+			System.out.println(outputFile.getPath());
+		}
+		this.printTiming("split", source.getPath(), outputFiles.size(), 0, startTime);
+		return 0;
+	}
+
+	/**
+	 * Loads a playlist, taking the details of its songs from the file where it holds them, and lists the songs that
+	 * couldn't be read on the standard error stream.
+	 *
+	 * @param file - The playlist file.
+	 * @return The playlist.
+	 */
+	private Playlist load(File file) throws IOException
+	{
+		Playlist playlist = this.load(file, true);
+
+		for (PlaylistLoader.Failure failure : playlist.getLoadFailures())
+		{
+			System.err.println("Unable to read " + failure.getPath());
+		}
+		return playlist;
+	}
+
+	/**
+	 * Loads a playlist, reading its songs on the pool of threads.
+	 *
+	 * @param file - The playlist file.
+	 * @param isFastOpen - Whether to use the details held within the playlist file rather than reading every song.
+	 * @return The playlist.
+	 */
+	private Playlist load(File file, boolean isFastOpen) throws IOException
+	{
+		if (PlaylistFormats.forFile(file) == null)
+		{
+			throw new IOException("Unsupported playlist format: " + file.getName());
+		}
+		if (!file.isFile())
+		{
+			throw new FileNotFoundException("Playlist not found: " + file.getPath());
+		}
+
+		long startTime = System.nanoTime();
+		Playlist playlist = new Playlist(file, this.threads, isFastOpen);
+
+		this.printTiming("load", file.getPath(), playlist.getSize() + playlist.getLoadFailures().size(), playlist.getLoadFailures().size(),
+				startTime);
+		return playlist;
+	}
+
+	/**
+	 * Writes a playlist to a file, in the format given by the file's extension.
+	 *
+	 * @param playlist - The playlist.
+	 * @param file - The file to be written.
+	 */
+	private void write(Playlist playlist, File file) throws IOException
+	{
+		PlaylistFormat format = PlaylistFormats.forFile(file);
+		if (format == null)
+		{
+			throw new IOException("Unsupported playlist format: " + file.getName());
+		}
+
+		if (this.name != null)
+		{
+			playlist.setName(this.name);
+		}
+		if (this.author != null)
+		{
+			playlist.setAuthor(this.author);
+		}
+		if (this.isUnique)
+		{
+			playlist = withoutRepeats(playlist);
+		}
+
+		long startTime = System.nanoTime();
+		format.write(playlist, file);
+
+		this.printTiming("write", file.getPath(), playlist.getSize(), 0, startTime);
+		System.out.println("Wrote " + playlist.getSize() + " tracks to " + file.getPath());
+	}
+
+	/**
+	 * Gets the exit status of a command that wrote a playlist, warning if songs were left out of it.
+	 *
+	 * @param file - The playlist written.
+	 * @param failureCount - The number of songs that couldn't be read, and so weren't written.
+	 * @return 0 if every song was written, otherwise 1.
+	 */
+	private static int getWriteStatus(File file, int failureCount)
+	{
+		if (failureCount == 0)
+		{
+			return 0;
+		}
+
+		System.err.println(failureCount + " tracks could not be read and were left out of " + file.getPath());
+		return 1;
+	}
+
+	/**
+	 * Copies a playlist, leaving out songs whose file has already been listed.
+	 *
+	 * @param playlist - The playlist.
+	 * @return The copy.
+	 */
+	private static Playlist withoutRepeats(Playlist playlist)
+	{
+		Playlist copy = new Playlist();
+		copy.setName(playlist.getName());
+		copy.setAuthor(playlist.getAuthor());
+
+		Set<String> paths = new HashSet<String>();
+		List<Song> songs = new ArrayList<Song>();
+
+		for (Song song : playlist.getSongs())
+		{
+			if (paths.add(song.getFile().getAbsolutePath()))
+			{
+				songs.add(song);
+			}
+		}
+		copy.addSongs(songs);
+		return copy;
+	}
+
+	/**
+	 * Prints the time taken by a stage as a JSON object on the standard error stream, if timing is enabled.
+	 *
+	 * @param stage - The name of the stage.
+	 * @param file - The file that the stage worked on.
+	 * @param tracks - The number of tracks processed.
+	 * @param failures - The number of tracks that failed.
+	 * @param startTime - The value of System.nanoTime() when the stage started.
+	 */
+	private void printTiming(String stage, String file, int tracks, int failures, long startTime)
+	{
+		if (!this.isTiming)
+		{
+			return;
+		}
+
+		double millis = (System.nanoTime() - startTime) / 1000000.0;
+
+		System.err.println(String.format(Locale.ROOT,
+				"{\"command\":\"%s\",\"stage\":\"%s\",\"file\":\"%s\",\"tracks\":%d,\"failures\":%d,\"threads\":%d,\"millis\":%.3f,\"tracksPerSecond\":%.1f}",
+				this.command, stage, escape(file), tracks, failures, this.threads, millis, (millis > 0) ? tracks * 1000 / millis : 0));
+	}
+
+	/**
+	 * Escapes a string for use within a JSON string.
+	 */
+	private static String escape(String text)
+	{
+		StringBuilder escaped = new StringBuilder();
+
+		for (char c : text.toCharArray())
+		{
+			if (c == '"' || c == '\\')
+			{
+				escaped.append('\\').append(c);
+			}
+			else if (c < 0x20)
+			{
+				escaped.append(String.format("\\u%04x", (int) c));
+			}
+			else
+			{
+				escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+}
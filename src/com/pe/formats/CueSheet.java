@@ -0,0 +1,288 @@
+package com.pe.formats;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reader for CUE sheets, which describe the tracks within a single audio file.
+ *
+ * Only the commands needed to split the file are read: the FILE, TITLE and PERFORMER of the sheet and the TITLE,
+ * PERFORMER and INDEX 01 of each track. Any other commands are ignored.
+ *
+ * @author olly.rowe
+ */
+public class CueSheet
+{
+	// The number of CD frames within a second, used by INDEX times
+	private static final int FRAMES_PER_SECOND = 75;
+
+	// The audio file that the sheet describes, null if it isn't given
+	private File file;
+
+	// The title and performer of the whole sheet
+	private String title;
+	private String performer;
+
+	// The tracks, in the order in which they appear
+	private List<Track> tracks = new ArrayList<Track>();
+
+	/**
+	 * Class Constructor. Use {@link #read(File)} to create an instance.
+	 */
+	private CueSheet()
+	{
+	}
+
+	/**
+	 * Reads a CUE sheet.
+	 *
+	 * @param cueFile - The CUE file to be read.
+	 * @return The contents of the sheet.
+	 */
+	public static CueSheet read(File cueFile) throws IOException
+	{
+		CueSheet sheet = new CueSheet();
+		Track track = null;
+
+		for (String line : readLines(cueFile))
+		{
+			List<String> words = split(line);
+
+			if (words.isEmpty())
+			{
+				continue;
+			}
+
+			String command = words.get(0).toUpperCase();
+			String value = (words.size() > 1) ? words.get(1) : "";
+
+			if (command.equals("FILE"))
+			{
+				// The path is relative to the sheet
+				File audioFile = new File(value);
+				sheet.file = audioFile.isAbsolute() ? audioFile : new File(cueFile.getAbsoluteFile().getParentFile(), value);
+			}
+			else if (command.equals("TRACK"))
+			{
+				track = new Track();
+				track.number = parseNumber(value, line);
+				sheet.tracks.add(track);
+			}
+			else if (command.equals("TITLE"))
+			{
+				if (track == null)
+				{
+					sheet.title = value;
+				}
+				else
+				{
+					track.title = value;
+				}
+			}
+			else if (command.equals("PERFORMER"))
+			{
+				if (track == null)
+				{
+					sheet.performer = value;
+				}
+				else
+				{
+					track.performer = value;
+				}
+			}
+			else if (command.equals("INDEX") && track != null && words.size() > 2 && parseNumber(value, line) == 1)
+			{
+				track.startMillis = parseTime(words.get(2), line);
+			}
+		}
+
+		// Every track needs a start time to be split
+		for (Track eachTrack : sheet.tracks)
+		{
+			if (eachTrack.startMillis < 0)
+			{
+				throw new IOException("Track " + eachTrack.number + " of " + cueFile.getName() + " has no INDEX 01");
+			}
+		}
+		return sheet;
+	}
+
+	/**
+	 * Reads the lines of a file as UTF-8, falling back to ISO-8859-1 as many sheets are written by older software.
+	 *
+	 * @param file - The file to be read.
+	 * @return The lines of the file.
+	 */
+	private static List<String> readLines(File file) throws IOException
+	{
+		List<String> lines;
+
+		try
+		{
+			lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+		}
+		catch (CharacterCodingException e)
+		{
+			lines = Files.readAllLines(file.toPath(), StandardCharsets.ISO_8859_1);
+		}
+
+		// Remove any byte order mark
+		if (!lines.isEmpty() && lines.get(0).startsWith("\uFEFF"))
+		{
+			lines.set(0, lines.get(0).substring(1));
+		}
+		return lines;
+	}
+
+	/**
+	 * Splits a line into words, treating text within double quotes as a single word.
+	 *
+	 * @param line - The line to be split.
+	 * @return The words of the line.
+	 */
+	private static List<String> split(String line)
+	{
+		List<String> words = new ArrayList<String>();
+		StringBuilder word = new StringBuilder();
+		boolean isQuoted = false;
+		boolean hasWord = false;
+
+		for (int i = 0; i < line.length(); i++)
+		{
+			char c = line.charAt(i);
+
+			if (c == '"')
+			{
+				isQuoted = !isQuoted;
+				hasWord = true;
+			}
+			else if (Character.isWhitespace(c) && !isQuoted)
+			{
+				if (hasWord)
+				{
+					words.add(word.toString());
+					word.setLength(0);
+					hasWord = false;
+				}
+			}
+			else
+			{
+				word.append(c);
+				hasWord = true;
+			}
+		}
+		if (hasWord)
+		{
+			words.add(word.toString());
+		}
+		return words;
+	}
+
+	/**
+	 * Parses a track or index number.
+	 *
+	 * @param value - The number.
+	 * @param line - The line containing the number, for reporting errors.
+	 * @return The number.
+	 */
+	private static int parseNumber(String value, String line) throws IOException
+	{
+		try
+		{
+			return Integer.parseInt(value);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IOException("Invalid number in CUE sheet: " + line.trim());
+		}
+	}
+
+	/**
+	 * Parses an INDEX time, of the form mm:ss:ff where ff is a number of CD frames.
+	 *
+	 * @param value - The time.
+	 * @param line - The line containing the time, for reporting errors.
+	 * @return The time in milliseconds.
+	 */
+	private static long parseTime(String value, String line) throws IOException
+	{
+		String[] parts = value.split(":");
+
+		if (parts.length != 3)
+		{
+			throw new IOException("Invalid time in CUE sheet: " + line.trim());
+		}
+
+		long minutes = parseNumber(parts[0], line);
+		long seconds = parseNumber(parts[1], line);
+		long frames = parseNumber(parts[2], line);
+
+		return (minutes * 60 + seconds) * 1000 + (frames * 1000) / FRAMES_PER_SECOND;
+	}
+
+	/**
+	 * Gets the audio file that the sheet describes.
+	 *
+	 * @return The file, or null if the sheet doesn't name one.
+	 */
+	public File getFile()
+	{
+		return this.file;
+	}
+
+	public String getTitle()
+	{
+		return this.title;
+	}
+
+	public String getPerformer()
+	{
+		return this.performer;
+	}
+
+	public List<Track> getTracks()
+	{
+		return this.tracks;
+	}
+
+	/**
+	 * Represents a single track within a CUE sheet.
+	 */
+	public static class Track
+	{
+		// The track number
+		private int number;
+
+		// The title and performer, null if they aren't given
+		private String title;
+		private String performer;
+
+		// The start of the track within the audio file, -1 if it isn't given
+		private long startMillis = -1;
+
+		public int getNumber()
+		{
+			return this.number;
+		}
+
+		public String getTitle()
+		{
+			return this.title;
+		}
+
+		public String getPerformer()
+		{
+			return this.performer;
+		}
+
+		public long getStartMillis()
+		{
+			return this.startMillis;
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package com.pe.formats;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import com.pe.Playlist;
+import com.pe.Song;
+
+/**
+ * The M3U playlist file format, in both its original form (.m3u), encoded with the system's default character set,
+ * and its UTF-8 form (.m3u8).
+ *
+ * Each line of the file holds the path of a song, which may be relative to the playlist's folder. The extended
+ * directives are supported: #EXTINF gives the length and "Artist - Title" of the song that follows, so the song can be
+ * listed without being read, and #PLAYLIST, #EXTART and #EXTALB give the playlist title and the song's artist and
+ * album. The file is read and written a line at a time.
+ *
+ * @author olly.rowe
+ */
+public class M3uFormat implements PlaylistFormat
+{
+	// The size of the buffer used when reading and writing the file
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// Whether the file is encoded as UTF-8, as .m3u8 files are
+	private final boolean isUtf8;
+
+	/**
+	 * Class Constructor.
+	 *
+	 * @param isUtf8 - Whether the files are encoded as UTF-8 (.m3u8), rather than the default character set (.m3u).
+	 */
+	public M3uFormat(boolean isUtf8)
+	{
+		this.isUtf8 = isUtf8;
+	}
+
+	@Override
+	public String[] getExtensions()
+	{
+		return new String[] { this.isUtf8 ? "m3u8" : "m3u" };
+	}
+
+	@Override
+	public String getDescription()
+	{
+		return this.isUtf8 ? "M3U Playlist, UTF-8 (*.m3u8)" : "M3U Playlist (*.m3u)";
+	}
+
+	/**
+	 * Gets the character set with which the files are encoded.
+	 */
+	private Charset getCharset()
+	{
+		return this.isUtf8 ? StandardCharsets.UTF_8 : Charset.defaultCharset();
+	}
+
+	@Override
+	public void read(File file, Listener listener) throws IOException
+	{
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), this.getCharset()), BUFFER_SIZE))
+		{
+			// The details given by directives for the song that follows them
+			String title = null;
+			String artist = null;
+			String album = null;
+			long length = -1;
+
+			String line;
+			boolean isFirstLine = true;
+
+			while ((line = reader.readLine()) != null)
+			{
+				// Ignore a byte order mark, which some programs write at the start of the file
+				if (isFirstLine && line.startsWith("\uFEFF"))
+				{
+					line = line.substring(1);
+				}
+				isFirstLine = false;
+
+				line = line.trim();
+
+				if (line.isEmpty())
+				{
+					continue;
+				}
+
+				if (line.charAt(0) != '#')
+				{
+					listener.entryRead(new PlaylistEntry(PlaylistFormats.resolvePath(file, line), title, artist, album, length));
+
+					title = null;
+					artist = null;
+					album = null;
+					length = -1;
+				}
+				else if (line.startsWith("#EXTINF:"))
+				{
+					// #EXTINF:<seconds>[ <attributes>],<display title>
+					int comma = line.indexOf(',');
+					String duration = (comma < 0) ? line.substring(8) : line.substring(8, comma);
+					int space = duration.indexOf(' ');
+
+					length = parseSeconds((space < 0) ? duration : duration.substring(0, space));
+
+					if (comma >= 0 && comma + 1 < line.length())
+					{
+						String[] displayTitle = PlaylistFormats.splitDisplayTitle(line.substring(comma + 1));
+						artist = (displayTitle[0] != null) ? displayTitle[0] : artist;
+						title = displayTitle[1];
+					}
+				}
+				else if (line.startsWith("#EXTART:"))
+				{
+					artist = line.substring(8).trim();
+				}
+				else if (line.startsWith("#EXTALB:"))
+				{
+					album = line.substring(8).trim();
+				}
+				else if (line.startsWith("#PLAYLIST:"))
+				{
+					listener.titleRead(line.substring(10).trim());
+				}
+				// Other lines starting with # are comments or unsupported directives
+			}
+		}
+	}
+
+	/**
+	 * Parses the length given by an #EXTINF directive.
+	 *
+	 * @param seconds - The length in seconds, which may have a fractional part.
+	 * @return The length in milliseconds, or -1 if the length is unknown or invalid.
+	 */
+	private static long parseSeconds(String seconds)
+	{
+		try
+		{
+			double value = Double.parseDouble(seconds.trim());
+			return (value < 0) ? -1 : Math.round(value * 1000);
+		}
+		catch (NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+
+	@Override
+	public void write(Playlist playlist, File file) throws IOException
+	{
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), this.getCharset()), BUFFER_SIZE))
+		{
+			String lineSeparator = System.lineSeparator();
+
+			writer.write("#EXTM3U");
+			writer.write(lineSeparator);
+
+			if (!playlist.getName().isEmpty())
+			{
+				writer.write("#PLAYLIST:" + playlist.getName());
+				writer.write(lineSeparator);
+			}
+
+			for (Song song : playlist.getSongs())
+			{
+				writer.write("#EXTINF:" + song.getLength() + "," + PlaylistFormats.getDisplayTitle(song));
+				writer.write(lineSeparator);
+
+				// Leave out an unknown album, rather than writing the placeholder as if it were the album's name
+				if (song.hasAlbum())
+				{
+					writer.write("#EXTALB:" + song.getAlbum());
+					writer.write(lineSeparator);
+				}
+				writer.write(song.getFile().getAbsolutePath());
+				writer.write(lineSeparator);
+			}
+		}
+	}
+}
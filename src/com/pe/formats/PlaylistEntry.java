@@ -0,0 +1,83 @@
+package com.pe.formats;
+
+/**
+ * Represents a single entry read from a playlist file: the path of a song, along with any details of the song that the
+ * file holds, so that they can be used without reading the song itself.
+ *
+ * @author olly.rowe
+ */
+public class PlaylistEntry
+{
+	// The path of the song, as an absolute path where the file allows it to be resolved
+	private final String path;
+
+	// The details of the song held within the playlist file, null or -1 where they aren't given
+	private final String title;
+	private final String artist;
+	private final String album;
+	private final long lengthInMilliseconds;
+
+	/**
+	 * Class Constructor.
+	 *
+	 * @param path - The path of the song.
+	 * @param title - The song title, or null if it isn't given.
+	 * @param artist - The artist, or null if it isn't given.
+	 * @param album - The album, or null if it isn't given.
+	 * @param lengthInMilliseconds - The length of the song, or -1 if it isn't given.
+	 */
+	public PlaylistEntry(String path, String title, String artist, String album, long lengthInMilliseconds)
+	{
+		this.path = path;
+		this.title = title;
+		this.artist = artist;
+		this.album = album;
+		this.lengthInMilliseconds = lengthInMilliseconds;
+	}
+
+	/**
+	 * Alternative Class Constructor for entries that only give the path of the song.
+	 *
+	 * @param path - The path of the song.
+	 */
+	public PlaylistEntry(String path)
+	{
+		this(path, null, null, null, -1);
+	}
+
+	public String getPath()
+	{
+		return this.path;
+	}
+
+	public String getTitle()
+	{
+		return this.title;
+	}
+
+	public String getArtist()
+	{
+		return this.artist;
+	}
+
+	public String getAlbum()
+	{
+		return this.album;
+	}
+
+	public long getLengthInMilliseconds()
+	{
+		return this.lengthInMilliseconds;
+	}
+
+	/**
+	 * Returns whether the entry gives enough details for the song to be listed without reading it, namely its title
+	 * and length.
+	 *
+	 * @return Whether the details are given.
+	 */
+	public boolean hasDetails()
+	{
+		return this.title != null && this.lengthInMilliseconds >= 0;
+	}
+}
@@ -0,0 +1,75 @@
+package com.pe.formats;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.pe.Playlist;
+
+/**
+ * A playlist file format, able to read and write playlists. Implementations stream the file, passing each entry on as
+ * soon as it is read and writing each song as soon as it is generated, so that a whole file is never held in memory.
+ *
+ * The available formats are listed by {@link PlaylistFormats}.
+ *
+ * @author olly.rowe
+ */
+public interface PlaylistFormat
+{
+	/**
+	 * Receives the contents of a playlist file as it is read.
+	 */
+	interface Listener
+	{
+		/**
+		 * Called when the title of the playlist is read.
+		 *
+		 * @param title - The playlist title.
+		 */
+		void titleRead(String title);
+
+		/**
+		 * Called when the author of the playlist is read.
+		 *
+		 * @param author - The playlist author.
+		 */
+		void authorRead(String author);
+
+		/**
+		 * Called for each entry, in playlist order.
+		 *
+		 * @param entry - The entry.
+		 */
+		void entryRead(PlaylistEntry entry);
+	}
+
+	/**
+	 * Gets the file extensions of this format, in lower case and without the leading dot. The first is used when
+	 * saving.
+	 *
+	 * @return The extensions.
+	 */
+	String[] getExtensions();
+
+	/**
+	 * Gets the name of this format, shown to the user.
+	 *
+	 * @return The name.
+	 */
+	String getDescription();
+
+	/**
+	 * Reads a playlist file.
+	 *
+	 * @param file - The file to be read.
+	 * @param listener - The listener to be passed the contents of the file.
+	 */
+	void read(File file, Listener listener) throws IOException;
+
+	/**
+	 * Writes a playlist to a file, replacing any existing contents.
+	 *
+	 * @param playlist - The playlist to be written.
+	 * @param file - The file to be written to.
+	 */
+	void write(Playlist playlist, File file) throws IOException;
+}
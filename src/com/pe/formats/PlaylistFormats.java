@@ -0,0 +1,153 @@
+package com.pe.formats;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import com.pe.Song;
+
+/**
+ * The playlist file formats that can be read and written, chosen by file extension.
+ *
+ * @author olly.rowe
+ */
+public class PlaylistFormats
+{
+	// The available formats
+	private static final List<PlaylistFormat> FORMATS = Collections.unmodifiableList(Arrays.<PlaylistFormat> asList(
+			new WplFormat(), new M3uFormat(true), new M3uFormat(false), new PlsFormat()));
+
+	/**
+	 * Class Constructor. Not used as all methods are static.
+	 */
+	private PlaylistFormats()
+	{
+	}
+
+	/**
+	 * Gets every available format.
+	 *
+	 * @return The formats.
+	 */
+	public static List<PlaylistFormat> getAll()
+	{
+		return FORMATS;
+	}
+
+	/**
+	 * Finds the format with a file extension.
+	 *
+	 * @param extension - The extension, with or without the leading dot, in any case.
+	 * @return The format, or null if the extension isn't supported.
+	 */
+	public static PlaylistFormat forExtension(String extension)
+	{
+		extension = extension.toLowerCase(Locale.ROOT);
+		if (extension.startsWith("."))
+		{
+			extension = extension.substring(1);
+		}
+
+		for (PlaylistFormat format : FORMATS)
+		{
+			if (Arrays.asList(format.getExtensions()).contains(extension))
+			{
+				return format;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the format of a file from its extension.
+	 *
+	 * @param file - The playlist file.
+	 * @return The format, or null if the file's extension isn't supported.
+	 */
+	public static PlaylistFormat forFile(File file)
+	{
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+
+		return (dot < 0) ? null : forExtension(name.substring(dot + 1));
+	}
+
+	/**
+	 * Gets the extensions of every available format, such as for filtering a file chooser.
+	 *
+	 * @return The extensions, without the leading dots.
+	 */
+	public static String[] getAllExtensions()
+	{
+		List<String> extensions = new ArrayList<String>();
+
+		for (PlaylistFormat format : FORMATS)
+		{
+			extensions.addAll(Arrays.asList(format.getExtensions()));
+		}
+		return extensions.toArray(new String[extensions.size()]);
+	}
+
+	/**
+	 * Resolves the location of a song given within a playlist file, which may be relative to the playlist's folder or
+	 * a file URI.
+	 *
+	 * @param playlistFile - The playlist file.
+	 * @param location - The location of the song.
+	 * @return The path of the song.
+	 */
+	static String resolvePath(File playlistFile, String location)
+	{
+		if (location.startsWith("file:"))
+		{
+			try
+			{
+				return Paths.get(new URI(location)).toString();
+			}
+			catch (Exception e)
+			{
+				// Not a valid URI, so treat it as a path
+			}
+		}
+
+		File file = new File(location);
+		if (file.isAbsolute() || playlistFile.getAbsoluteFile().getParentFile() == null)
+		{
+			return location;
+		}
+		return new File(playlistFile.getAbsoluteFile().getParentFile(), location).getPath();
+	}
+
+	/**
+	 * Gets the display title of a song, of the form "Artist - Title", or only the title if its artist isn't known.
+	 *
+	 * @param song - The song.
+	 * @return The display title.
+	 */
+	static String getDisplayTitle(Song song)
+	{
+		return song.hasArtist() ? song.getArtist() + " - " + song.getTitle() : song.getTitle();
+	}
+
+	/**
+	 * Splits a display title of the form "Artist - Title", as written by M3U and PLS files.
+	 *
+	 * @param displayTitle - The display title.
+	 * @return The artist, or null if no artist is given, followed by the title.
+	 */
+	static String[] splitDisplayTitle(String displayTitle)
+	{
+		int separator = displayTitle.indexOf(" - ");
+
+		if (separator < 0)
+		{
+			return new String[] { null, displayTitle.trim() };
+		}
+		return new String[] { displayTitle.substring(0, separator).trim(), displayTitle.substring(separator + 3).trim() };
+	}
+}
@@ -0,0 +1,164 @@
+package com.pe.formats;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.pe.Playlist;
+import com.pe.Song;
+
+/**
+ * The PLS playlist file format.
+ *
+ * Each song is given by numbered FileN, TitleN and LengthN keys within a [playlist] section. The keys of a song are
+ * usually grouped together, but needn't be, so the songs are passed on in number order once the whole file has been
+ * read. Only the keys are held in memory, not the songs.
+ *
+ * @author olly.rowe
+ */
+public class PlsFormat implements PlaylistFormat
+{
+	// The size of the buffer used when reading and writing the file
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	@Override
+	public String[] getExtensions()
+	{
+		return new String[] { "pls" };
+	}
+
+	@Override
+	public String getDescription()
+	{
+		return "PLS Playlist (*.pls)";
+	}
+
+	@Override
+	public void read(File file, Listener listener) throws IOException
+	{
+		// The file, title and length of each song, by number
+		Map<Integer, String[]> songs = new TreeMap<Integer, String[]>();
+
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE))
+		{
+			String line;
+
+			while ((line = reader.readLine()) != null)
+			{
+				line = line.trim();
+				int equals = line.indexOf('=');
+
+				if (equals < 0)
+				{
+					continue;
+				}
+
+				String key = line.substring(0, equals).trim().toLowerCase(Locale.ROOT);
+				String value = line.substring(equals + 1).trim();
+
+				int field = key.startsWith("file") ? 0 : key.startsWith("title") ? 1 : key.startsWith("length") ? 2 : -1;
+				if (field < 0)
+				{
+					continue;
+				}
+
+				try
+				{
+					int number = Integer.parseInt(key.substring(field == 0 ? 4 : field == 1 ? 5 : 6));
+
+					String[] song = songs.get(number);
+					if (song == null)
+					{
+						song = new String[3];
+						songs.put(number, song);
+					}
+					song[field] = value;
+				}
+				catch (NumberFormatException e)
+				{
+					// Not a numbered key
+				}
+			}
+		}
+
+		for (String[] song : songs.values())
+		{
+			if (song[0] == null)
+			{
+				continue;
+			}
+
+			String title = null;
+			String artist = null;
+			if (song[1] != null)
+			{
+				String[] displayTitle = PlaylistFormats.splitDisplayTitle(song[1]);
+				artist = displayTitle[0];
+				title = displayTitle[1];
+			}
+
+			listener.entryRead(new PlaylistEntry(PlaylistFormats.resolvePath(file, song[0]), title, artist, null, parseSeconds(song[2])));
+		}
+	}
+
+	/**
+	 * Parses the length of a song.
+	 *
+	 * @param seconds - The length in seconds, or null.
+	 * @return The length in milliseconds, or -1 if the length is unknown or invalid.
+	 */
+	private static long parseSeconds(String seconds)
+	{
+		try
+		{
+			long value = (seconds == null) ? -1 : Long.parseLong(seconds);
+			return (value < 0) ? -1 : value * 1000;
+		}
+		catch (NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+
+	@Override
+	public void write(Playlist playlist, File file) throws IOException
+	{
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE))
+		{
+			String lineSeparator = System.lineSeparator();
+			List<Song> songs = playlist.getSongs();
+
+			writer.write("[playlist]");
+			writer.write(lineSeparator);
+
+			for (int i = 0; i < songs.size(); i++)
+			{
+				Song song = songs.get(i);
+				int number = i + 1;
+
+				writer.write("File" + number + "=" + song.getFile().getAbsolutePath());
+				writer.write(lineSeparator);
+				writer.write("Title" + number + "=" + PlaylistFormats.getDisplayTitle(song));
+				writer.write(lineSeparator);
+				writer.write("Length" + number + "=" + song.getLength());
+				writer.write(lineSeparator);
+			}
+
+			writer.write("NumberOfEntries=" + songs.size());
+			writer.write(lineSeparator);
+			writer.write("Version=2");
+			writer.write(lineSeparator);
+		}
+	}
+}
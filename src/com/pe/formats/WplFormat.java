@@ -0,0 +1,57 @@
+package com.pe.formats;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.pe.Playlist;
+
+/**
+ * The WPL playlist file format, read and written by {@link WplReader} and {@link WplWriter}.
+ *
+ * @author olly.rowe
+ */
+public class WplFormat implements PlaylistFormat
+{
+	@Override
+	public String[] getExtensions()
+	{
+		return new String[] { "wpl" };
+	}
+
+	@Override
+	public String getDescription()
+	{
+		return "Windows Media Player Playlist (*.wpl)";
+	}
+
+	@Override
+	public void read(File file, final Listener listener) throws IOException
+	{
+		WplReader.read(file, new WplReader.Listener()
+		{
+			@Override
+			public void titleRead(String title)
+			{
+				listener.titleRead(title);
+			}
+
+			@Override
+			public void authorRead(String author)
+			{
+				listener.authorRead(author);
+			}
+
+			@Override
+			public void mediaRead(PlaylistEntry entry)
+			{
+				listener.entryRead(entry);
+			}
+		});
+	}
+
+	@Override
+	public void write(Playlist playlist, File file) throws IOException
+	{
+		WplWriter.write(playlist, file);
+	}
+}
@@ -0,0 +1,151 @@
+package com.pe.formats;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming reader for the WPL playlist file format.
+ *
+ * The file is read one element at a time and each media entry is passed to the listener as soon as it is read, so the
+ * whole document is never held in memory.
+ *
+ * @author olly.rowe
+ */
+public class WplReader
+{
+	// The size of the buffer used when reading the file
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// The factory used to create the underlying StAX readers
+	private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+	/**
+	 * Receives the contents of a WPL file as it is read.
+	 */
+	public interface Listener
+	{
+		/**
+		 * Called when the title of the playlist is read.
+		 *
+		 * @param title - The playlist title.
+		 */
+		void titleRead(String title);
+
+		/**
+		 * Called when the author of the playlist is read.
+		 *
+		 * @param author - The playlist author.
+		 */
+		void authorRead(String author);
+
+		/**
+		 * Called for each media entry, in playlist order.
+		 *
+		 * @param entry - The path of the media file, along with the title, artist, album and duration attributes
+		 *        where they are given.
+		 */
+		void mediaRead(PlaylistEntry entry);
+	}
+
+	/**
+	 * Reads a WPL file.
+	 *
+	 * @param file - The WPL file to be read.
+	 * @param listener - The listener to be passed the contents of the file.
+	 */
+	public static void read(File file, Listener listener) throws FileNotFoundException, IOException
+	{
+		try (InputStream input = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))
+		{
+			XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(input);
+
+			try
+			{
+				// Only the first title and author elements are used, as with a DOM lookup of the first matching tag
+				boolean isTitleRead = false;
+				boolean isAuthorRead = false;
+
+				while (reader.hasNext())
+				{
+					if (reader.next() != XMLStreamConstants.START_ELEMENT)
+					{
+						continue;
+					}
+
+					String name = reader.getLocalName();
+
+					if (name.equals("media"))
+					{
+						String src = reader.getAttributeValue(null, "src");
+
+						// Ignore any media entries without a source
+						if (src != null)
+						{
+							listener.mediaRead(new PlaylistEntry(src, reader.getAttributeValue(null, "trackTitle"),
+									reader.getAttributeValue(null, "trackArtist"), reader.getAttributeValue(null, "albumTitle"),
+									parseDuration(reader.getAttributeValue(null, "duration"))));
+						}
+					}
+					else if (name.equals("title") && !isTitleRead)
+					{
+						listener.titleRead(reader.getElementText());
+						isTitleRead = true;
+					}
+					else if (name.equals("author") && !isAuthorRead)
+					{
+						listener.authorRead(reader.getElementText());
+						isAuthorRead = true;
+					}
+				}
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch (XMLStreamException e)
+		{
+			throw new IOException("Unable to parse " + file.getName(), e);
+		}
+	}
+
+	/**
+	 * Parses the duration attribute of a media entry, as written by {@link WplWriter}.
+	 *
+	 * @param duration - The duration in seconds, or null.
+	 * @return The duration in milliseconds, or -1 if it is unknown or invalid.
+	 */
+	private static long parseDuration(String duration)
+	{
+		try
+		{
+			long seconds = (duration == null) ? -1 : Long.parseLong(duration.trim());
+			return (seconds < 0) ? -1 : seconds * 1000;
+		}
+		catch (NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+
+	/**
+	 * Creates the factory for the StAX readers. External entities are disabled as they are not used by WPL files.
+	 */
+	private static XMLInputFactory createInputFactory()
+	{
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		return factory;
+	}
+}
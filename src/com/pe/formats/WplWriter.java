@@ -0,0 +1,104 @@
+package com.pe.formats;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import com.pe.Playlist;
+import com.pe.Song;
+
+/**
+ * Streaming writer for the WPL playlist file format.
+ *
+ * Each media entry is written straight to the output as it is generated, rather than building the whole document
+ * in memory first.
+ *
+ * @author olly.rowe
+ */
+public class WplWriter
+{
+	// The size of the buffer used when writing the file
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// The factory used to create the underlying StAX writers
+	private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+	/**
+	 * Writes a playlist to a WPL file, replacing any existing contents.
+	 *
+	 * @param playlist - The playlist to be written.
+	 * @param file - The file to be written to.
+	 */
+	public static void write(Playlist playlist, File file) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+				Writer writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1), BUFFER_SIZE))
+		{
+			write(playlist, writer);
+		}
+	}
+
+	/**
+	 * Writes a playlist in the WPL format. The output is a single line followed by a line separator.
+	 *
+	 * @param playlist - The playlist to be written.
+	 * @param writer - The writer to be written to. It is flushed but not closed.
+	 */
+	public static void write(Playlist playlist, Writer writer) throws IOException
+	{
+		try
+		{
+			XMLStreamWriter xml = OUTPUT_FACTORY.createXMLStreamWriter(writer);
+
+			xml.writeProcessingInstruction("wpl", "version=\"1.0\"");
+			xml.writeStartElement("smil");
+
+			xml.writeStartElement("head");
+			xml.writeStartElement("title");
+			xml.writeCharacters(playlist.getName());
+			xml.writeEndElement();
+			xml.writeStartElement("author");
+			xml.writeCharacters(playlist.getAuthor());
+			xml.writeEndElement();
+			xml.writeEndElement();
+
+			xml.writeStartElement("body");
+			xml.writeStartElement("seq");
+
+			for (Song song : playlist.getSongs())
+			{
+				// Create a new media tag for the song. The attributes are written in alphabetical order, matching the
+				// output of earlier versions so that unchanged playlists are written identically
+				xml.writeEmptyElement("media");
+				xml.writeAttribute("albumArtist", song.getArtist());
+				xml.writeAttribute("albumTitle", song.getAlbum());
+				xml.writeAttribute("duration", Long.toString(song.getLength()));
+				// Set the src attribute to the absolute path of its corresponding file location
+				xml.writeAttribute("src", song.getFile().getAbsolutePath());
+				xml.writeAttribute("trackArtist", song.getArtist());
+				xml.writeAttribute("trackTitle", song.getTitle());
+			}
+
+			// Close the seq, body and smil tags
+			xml.writeEndDocument();
+			xml.flush();
+			xml.close();
+
+			writer.write(System.lineSeparator());
+			writer.flush();
+		}
+		catch (XMLStreamException e)
+		{
+			throw new IOException("Unable to write playlist", e);
+		}
+	}
+}
@@ -0,0 +1,576 @@
+package com.pe.library;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.mpatric.mp3agic.ID3v2;
+import com.pe.Song;
+import com.pe.audio.Mp3HeaderReader;
+
+/**
+ * Class that indexes every mp3 file beneath the music library directory so that tracks can be searched for by their
+ * title, artist, album or path.
+ *
+ * The library is crawled on a background thread. The tracks found are saved to the library.index file, and on later
+ * runs only the files and directories whose last modified times have changed are read again: a directory that hasn't
+ * changed isn't listed, its files are only checked for changes.
+ *
+ * @author olly.rowe
+ */
+public class LibraryIndex
+{
+	// The library.index file name, stored alongside defaults.conf
+	private static final String FILE_NAME = "library.index";
+
+	// Identifies the file format, the version is incremented whenever the format changes
+	private static final int FILE_MAGIC = 0x50454C49;
+	private static final int FILE_VERSION = 1;
+
+	// How often the search index is rebuilt while a crawl is in progress
+	private static final long PUBLISH_INTERVAL_MILLIS = 10000;
+
+	/**
+	 * Receives notifications of the progress of a crawl. Called on the crawler thread.
+	 */
+	public interface Listener
+	{
+		/**
+		 * Called whenever the tracks that can be searched for have changed.
+		 *
+		 * @param trackCount - The number of tracks that can be searched for.
+		 * @param isComplete - Whether the crawl has finished.
+		 */
+		void indexUpdated(int trackCount, boolean isComplete);
+	}
+
+	// The index file
+	private File file;
+
+	// The index searched, replaced whenever the tracks change
+	private volatile SearchIndex searchIndex = SearchIndex.build(Collections.<LibraryTrack> emptyList());
+
+	// Whether a crawl is in progress
+	private volatile boolean isCrawling = false;
+
+	// The thread running the current crawl
+	private Thread crawler;
+
+	// The tracks by path and the last modified time of each directory, as of the last completed crawl
+	private Map<String, LibraryTrack> tracks = new HashMap<String, LibraryTrack>();
+	private Map<String, Long> directories = new HashMap<String, Long>();
+
+	// The library directory that the tracks were found within
+	private String root;
+
+	// Whether the index file has been read
+	private boolean isFileRead = false;
+
+	/**
+	 * Class Constructor.
+	 *
+	 * @param file - The index file.
+	 */
+	public LibraryIndex(File file)
+	{
+		this.file = file;
+	}
+
+	/**
+	 * Alternative Class Constructor. Uses the library.index file in the working directory.
+	 */
+	public LibraryIndex()
+	{
+		this(new File(FILE_NAME));
+	}
+
+	/**
+	 * Starts crawling a library directory in the background, cancelling any crawl already in progress. Upon first use
+	 * the tracks saved by the previous run can be searched for immediately, while they are checked for changes.
+	 *
+	 * The new crawl waits for a cancelled crawl to stop before it starts, so that only one crawl at a time uses the
+	 * tracks and the index file.
+	 *
+	 * @param directory - The library directory.
+	 * @param listener - The listener to be notified of progress, or null.
+	 */
+	public synchronized void start(final String directory, final Listener listener)
+	{
+		final Thread previousCrawler = this.crawler;
+		this.cancel();
+
+		this.crawler = new Thread("Library Crawler")
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					if (previousCrawler != null)
+					{
+						previousCrawler.join();
+					}
+					crawl(directory, listener);
+				}
+				catch (InterruptedException e)
+				{
+					// Cancelled before the crawl started
+				}
+				finally
+				{
+					crawlFinished(this);
+				}
+			}
+		};
+		this.crawler.setDaemon(true);
+		this.crawler.setPriority(Thread.MIN_PRIORITY);
+		this.isCrawling = true;
+		this.crawler.start();
+	}
+
+	/**
+	 * Cancels the crawl in progress, if there is one. The crawl stops at the next directory, without changing the
+	 * tracks that can be searched for or the index file.
+	 */
+	public synchronized void cancel()
+	{
+		if (this.crawler != null)
+		{
+			// The thread is kept so that the next crawl can wait for it to stop
+			this.crawler.interrupt();
+			this.isCrawling = false;
+		}
+	}
+
+	/**
+	 * Called by a crawler thread once it has stopped.
+	 *
+	 * @param thread - The crawler thread.
+	 */
+	private synchronized void crawlFinished(Thread thread)
+	{
+		// A cancelled crawl doesn't affect the crawl that replaced it
+		if (thread == this.crawler)
+		{
+			this.isCrawling = false;
+		}
+	}
+
+	/**
+	 * Returns whether the crawl running on the current thread has been cancelled.
+	 *
+	 * @return Whether the crawl should stop.
+	 */
+	private static boolean isCancelled()
+	{
+		return Thread.currentThread().isInterrupted();
+	}
+
+	/**
+	 * Finds the tracks that contain a word starting with each word of a query.
+	 *
+	 * @param query - The words to search for.
+	 * @param limit - The maximum number of tracks to be returned.
+	 * @return The matching tracks.
+	 */
+	public List<LibraryTrack> search(String query, int limit)
+	{
+		return this.searchIndex.search(query, limit);
+	}
+
+	/**
+	 * Gets the number of tracks that can be searched for.
+	 *
+	 * @return The number of tracks.
+	 */
+	public int getTrackCount()
+	{
+		return this.searchIndex.getTrackCount();
+	}
+
+	/**
+	 * Returns whether a crawl is in progress.
+	 *
+	 * @return Whether the library is being crawled.
+	 */
+	public boolean isCrawling()
+	{
+		return this.isCrawling;
+	}
+
+	/**
+	 * Crawls a library directory, reading the files that have been added or changed since the last crawl, then saves
+	 * the tracks to the index file. Run on the crawler thread.
+	 *
+	 * @param directory - The library directory.
+	 * @param listener - The listener to be notified of progress, or null.
+	 */
+	private void crawl(String directory, Listener listener)
+	{
+		Path rootPath = Paths.get(directory).toAbsolutePath();
+
+		// Make the tracks found by the previous run searchable straight away
+		if (!this.isFileRead)
+		{
+			this.isFileRead = true;
+			this.readFromFile();
+
+			if (rootPath.toString().equals(this.root))
+			{
+				this.publish(new ArrayList<LibraryTrack>(this.tracks.values()), listener, false);
+			}
+		}
+
+		// The contents of each unchanged directory, as found by the previous crawl
+		Map<String, List<String>> previousFiles = new HashMap<String, List<String>>();
+		Map<String, List<String>> previousSubdirectories = new HashMap<String, List<String>>();
+
+		for (String path : this.tracks.keySet())
+		{
+			addChild(previousFiles, Paths.get(path).getParent(), path);
+		}
+		for (String path : this.directories.keySet())
+		{
+			addChild(previousSubdirectories, Paths.get(path).getParent(), path);
+		}
+
+		Map<String, LibraryTrack> foundTracks = new HashMap<String, LibraryTrack>();
+		Map<String, Long> foundDirectories = new HashMap<String, Long>();
+
+		Deque<Path> remaining = new ArrayDeque<Path>();
+		remaining.push(rootPath);
+
+		long lastPublishTime = System.currentTimeMillis();
+		boolean isChanged = !rootPath.toString().equals(this.root);
+
+		while (!remaining.isEmpty())
+		{
+			if (isCancelled())
+			{
+				return;
+			}
+
+			Path dir = remaining.pop();
+			String dirPath = dir.toString();
+
+			BasicFileAttributes dirAttributes = readAttributes(dir);
+			if (dirAttributes == null || !dirAttributes.isDirectory())
+			{
+				continue;
+			}
+
+			long lastModified = dirAttributes.lastModifiedTime().toMillis();
+			Long previousLastModified = this.directories.get(dirPath);
+			foundDirectories.put(dirPath, lastModified);
+
+			List<Path> files = new ArrayList<Path>();
+
+			if (previousLastModified != null && previousLastModified == lastModified)
+			{
+				// Nothing has been added, removed or renamed, so reuse the contents found by the previous crawl
+				for (String path : getChildren(previousFiles, dirPath))
+				{
+					files.add(Paths.get(path));
+				}
+				for (String path : getChildren(previousSubdirectories, dirPath))
+				{
+					remaining.push(Paths.get(path));
+				}
+			}
+			else
+			{
+				isChanged = true;
+				this.listDirectory(dir, files, remaining);
+			}
+
+			for (Path filePath : files)
+			{
+				String path = filePath.toString();
+				BasicFileAttributes attributes = readAttributes(filePath);
+
+				if (attributes == null || !attributes.isRegularFile())
+				{
+					isChanged = true;
+					continue;
+				}
+
+				LibraryTrack track = this.tracks.get(path);
+
+				// Only read files that are new or have changed since the previous crawl
+				if (track == null || track.getSize() != attributes.size() || track.getLastModified() != attributes.lastModifiedTime().toMillis())
+				{
+					track = readTrack(filePath, attributes);
+					isChanged = true;
+				}
+				foundTracks.put(path, track);
+			}
+
+			// Let the tracks found so far be searched for during a long crawl
+			if (isChanged && System.currentTimeMillis() - lastPublishTime > PUBLISH_INTERVAL_MILLIS && !isCancelled())
+			{
+				this.publish(new ArrayList<LibraryTrack>(foundTracks.values()), listener, false);
+				lastPublishTime = System.currentTimeMillis();
+			}
+		}
+
+		// A crawl cancelled while reading the last directory leaves the previous tracks in place
+		if (isCancelled())
+		{
+			return;
+		}
+
+		// Detect tracks that were removed within the unchanged directories
+		isChanged |= foundTracks.size() != this.tracks.size();
+
+		this.tracks = foundTracks;
+		this.directories = foundDirectories;
+		this.root = rootPath.toString();
+
+		this.publish(new ArrayList<LibraryTrack>(foundTracks.values()), listener, true);
+
+		if (isChanged)
+		{
+			this.saveToFile();
+		}
+	}
+
+	/**
+	 * Lists the mp3 files and subdirectories of a directory. Links to directories are not followed.
+	 *
+	 * @param dir - The directory.
+	 * @param files - The list to which the mp3 files are added.
+	 * @param subdirectories - The collection to which the subdirectories are added.
+	 */
+	private void listDirectory(Path dir, List<Path> files, Deque<Path> subdirectories)
+	{
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir))
+		{
+			for (Path child : stream)
+			{
+				if (child.getFileName().toString().toLowerCase().endsWith(".mp3"))
+				{
+					files.add(child);
+				}
+				else if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS))
+				{
+					subdirectories.push(child);
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			// Skip directories that can't be read
+		}
+	}
+
+	/**
+	 * Reads the metadata of an mp3 file.
+	 *
+	 * @param file - The file.
+	 * @param attributes - The attributes of the file.
+	 * @return The track.
+	 */
+	private static LibraryTrack readTrack(Path file, BasicFileAttributes attributes)
+	{
+		String fileName = file.getFileName().toString();
+		String title = null;
+		String artist = null;
+		String album = null;
+		long length = 0;
+
+		try
+		{
+			Mp3HeaderReader reader = Mp3HeaderReader.read(file.toFile());
+			ID3v2 tag = reader.getId3v2Tag();
+
+			if (tag != null)
+			{
+				title = tag.getTitle();
+				artist = tag.getArtist();
+				album = tag.getAlbum();
+			}
+			length = reader.getLengthInMilliseconds();
+		}
+		catch (IOException e)
+		{
+			// Index the file by its name alone
+		}
+
+		// Use the same defaults as a song
+		title = (title == null) ? fileName.substring(0, fileName.length() - 4) : title;
+		artist = (artist == null) ? Song.UNKNOWN_ARTIST : artist;
+		album = (album == null) ? Song.UNKNOWN_ALBUM : album;
+
+		return new LibraryTrack(file.toString(), attributes.size(), attributes.lastModifiedTime().toMillis(), title, artist, album, length);
+	}
+
+	/**
+	 * Reads the attributes of a file.
+	 *
+	 * @param file - The file.
+	 * @return The attributes, or null if the file doesn't exist or can't be read.
+	 */
+	private static BasicFileAttributes readAttributes(Path file)
+	{
+		try
+		{
+			return Files.readAttributes(file, BasicFileAttributes.class);
+		}
+		catch (IOException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Adds a path to the list of children of its parent.
+	 */
+	private static void addChild(Map<String, List<String>> children, Path parent, String path)
+	{
+		if (parent == null)
+		{
+			return;
+		}
+
+		List<String> list = children.get(parent.toString());
+		if (list == null)
+		{
+			list = new ArrayList<String>();
+			children.put(parent.toString(), list);
+		}
+		list.add(path);
+	}
+
+	/**
+	 * Gets the children of a directory.
+	 */
+	private static List<String> getChildren(Map<String, List<String>> children, String parent)
+	{
+		List<String> list = children.get(parent);
+		return (list == null) ? Collections.<String> emptyList() : list;
+	}
+
+	/**
+	 * Rebuilds the search index from a list of tracks and notifies the listener.
+	 *
+	 * @param trackList - The tracks.
+	 * @param listener - The listener, or null.
+	 * @param isComplete - Whether the crawl has finished.
+	 */
+	private void publish(List<LibraryTrack> trackList, Listener listener, boolean isComplete)
+	{
+		this.searchIndex = SearchIndex.build(trackList);
+
+		if (listener != null)
+		{
+			listener.indexUpdated(trackList.size(), isComplete);
+		}
+	}
+
+	/**
+	 * Reads the tracks and directories from the index file. If the file is unreadable then it is ignored and the
+	 * library is crawled from scratch.
+	 */
+	private void readFromFile()
+	{
+		if (!this.file.exists())
+		{
+			return;
+		}
+
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file))))
+		{
+			// Ignore files written in a different format
+			if (input.readInt() != FILE_MAGIC || input.readInt() != FILE_VERSION)
+			{
+				return;
+			}
+
+			this.root = input.readUTF();
+
+			int directoryCount = input.readInt();
+			for (int i = 0; i < directoryCount; i++)
+			{
+				this.directories.put(input.readUTF(), input.readLong());
+			}
+
+			int trackCount = input.readInt();
+			for (int i = 0; i < trackCount; i++)
+			{
+				LibraryTrack track = new LibraryTrack(input.readUTF(), input.readLong(), input.readLong(), input.readUTF(), input.readUTF(),
+						input.readUTF(), input.readLong());
+				this.tracks.put(track.getPath(), track);
+			}
+		}
+		catch (IOException e)
+		{
+			// The file is incomplete or corrupt, start again with an empty library
+			System.err.println("Unable to read " + this.file.getName() + ", the library index will be rebuilt.");
+			this.root = null;
+			this.directories.clear();
+			this.tracks.clear();
+		}
+	}
+
+	/**
+	 * Saves the tracks and directories to the index file.
+	 */
+	private void saveToFile()
+	{
+		// Write to a temporary file first so that an interrupted save doesn't corrupt the existing index
+		File tempFile = new File(this.file.getAbsolutePath() + ".tmp");
+
+		try
+		{
+			try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile))))
+			{
+				output.writeInt(FILE_MAGIC);
+				output.writeInt(FILE_VERSION);
+				output.writeUTF(this.root);
+
+				output.writeInt(this.directories.size());
+				for (Map.Entry<String, Long> directory : this.directories.entrySet())
+				{
+					output.writeUTF(directory.getKey());
+					output.writeLong(directory.getValue());
+				}
+
+				output.writeInt(this.tracks.size());
+				for (LibraryTrack track : this.tracks.values())
+				{
+					output.writeUTF(track.getPath());
+					output.writeLong(track.getSize());
+					output.writeLong(track.getLastModified());
+					output.writeUTF(track.getTitle());
+					output.writeUTF(track.getArtist());
+					output.writeUTF(track.getAlbum());
+					output.writeLong(track.getLengthInMilliseconds());
+				}
+			}
+			Files.move(tempFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+}
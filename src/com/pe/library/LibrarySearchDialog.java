@@ -0,0 +1,286 @@
+package com.pe.library;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.Window;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.AbstractAction;
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.KeyStroke;
+import javax.swing.border.EmptyBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * A dialog that searches the music library as the user types, allowing the tracks found to be added to the playlist.
+ *
+ * @author olly.rowe
+ */
+@SuppressWarnings("serial")
+public class LibrarySearchDialog extends JDialog implements ActionListener
+{
+	// The maximum number of tracks shown for a search
+	private static final int MAX_RESULTS = 200;
+
+	/**
+	 * Receives the tracks chosen by the user.
+	 */
+	public interface SelectionListener
+	{
+		/**
+		 * Called when the user has chosen tracks to be added.
+		 *
+		 * @param tracks - The tracks, in the order shown.
+		 */
+		void tracksSelected(List<LibraryTrack> tracks);
+	}
+
+	// The index searched
+	private LibraryIndex libraryIndex;
+
+	// The listener to be given the chosen tracks
+	private SelectionListener selectionListener;
+
+	// The tracks found by the current search
+	private List<LibraryTrack> results = Collections.emptyList();
+
+	// The GUI components
+	private JTextField searchTextField;
+	private JTable resultsTable;
+	private ResultsTableModel resultsTableModel;
+	private JLabel statusLabel;
+	private JButton addButton;
+	private JButton closeButton;
+
+	/**
+	 * Class Constructor.
+	 *
+	 * @param owner - The window that owns the dialog.
+	 * @param libraryIndex - The index to be searched.
+	 * @param selectionListener - The listener to be given the chosen tracks.
+	 */
+	public LibrarySearchDialog(Window owner, LibraryIndex libraryIndex, SelectionListener selectionListener)
+	{
+		super(owner, "Search Library");
+
+		this.libraryIndex = libraryIndex;
+		this.selectionListener = selectionListener;
+
+		JPanel contentPane = new JPanel(new BorderLayout(5, 5));
+		contentPane.setBorder(new EmptyBorder(5, 5, 5, 5));
+		setContentPane(contentPane);
+
+		// Search as the user types
+		this.searchTextField = new JTextField();
+		this.searchTextField.getDocument().addDocumentListener(new DocumentListener()
+		{
+			@Override
+			public void insertUpdate(DocumentEvent e)
+			{
+				search();
+			}
+
+			@Override
+			public void removeUpdate(DocumentEvent e)
+			{
+				search();
+			}
+
+			@Override
+			public void changedUpdate(DocumentEvent e)
+			{
+				search();
+			}
+		});
+		this.searchTextField.addActionListener(this);
+		contentPane.add(this.searchTextField, BorderLayout.NORTH);
+
+		this.resultsTableModel = new ResultsTableModel();
+		this.resultsTable = new JTable(this.resultsTableModel);
+		this.resultsTable.setFillsViewportHeight(true);
+
+		// Add the track that is double clicked
+		this.resultsTable.addMouseListener(new MouseAdapter()
+		{
+			@Override
+			public void mouseClicked(MouseEvent e)
+			{
+				if (e.getClickCount() == 2 && resultsTable.rowAtPoint(e.getPoint()) != -1)
+				{
+					addSelectedTracks();
+				}
+			}
+		});
+
+		// Add the selected tracks when enter is pressed within the table, rather than moving to the next row
+		this.resultsTable.getInputMap(JComponent.WHEN_ANCESTOR_OF_FOCUSED_COMPONENT).put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0), "addTracks");
+		this.resultsTable.getActionMap().put("addTracks", new AbstractAction()
+		{
+			@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				addSelectedTracks();
+			}
+		});
+		contentPane.add(new JScrollPane(this.resultsTable), BorderLayout.CENTER);
+
+		JPanel bottomPanel = new JPanel(new BorderLayout());
+		this.statusLabel = new JLabel();
+		bottomPanel.add(this.statusLabel, BorderLayout.CENTER);
+
+		JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
+		this.addButton = new JButton("Add");
+		this.addButton.addActionListener(this);
+		buttonPanel.add(this.addButton);
+		this.closeButton = new JButton("Close");
+		this.closeButton.addActionListener(this);
+		buttonPanel.add(this.closeButton);
+		bottomPanel.add(buttonPanel, BorderLayout.EAST);
+		contentPane.add(bottomPanel, BorderLayout.SOUTH);
+
+		setDefaultCloseOperation(JDialog.HIDE_ON_CLOSE);
+		setSize(560, 400);
+		setLocationRelativeTo(owner);
+
+		this.search();
+	}
+
+	/**
+	 * Button Action listener handler.
+	 */
+	@Override
+	public void actionPerformed(ActionEvent e)
+	{
+		Object source = e.getSource();
+
+		if (source == this.addButton)
+		{
+			this.addSelectedTracks();
+		}
+		else if (source == this.closeButton)
+		{
+			this.setVisible(false);
+		}
+		else if (source == this.searchTextField)
+		{
+			// Enter within the search box adds the first track found, or those selected
+			if (this.resultsTable.getSelectedRowCount() == 0 && !this.results.isEmpty())
+			{
+				this.resultsTable.setRowSelectionInterval(0, 0);
+			}
+			this.addSelectedTracks();
+		}
+	}
+
+	/**
+	 * Searches the library for the text within the search box and shows the tracks found.
+	 */
+	private void search()
+	{
+		String query = this.searchTextField.getText();
+
+		long startTime = System.nanoTime();
+		this.results = this.libraryIndex.search(query, MAX_RESULTS);
+		long elapsedMicros = (System.nanoTime() - startTime) / 1000;
+
+		this.resultsTableModel.fireTableDataChanged();
+
+		int trackCount = this.libraryIndex.getTrackCount();
+		String indexing = this.libraryIndex.isCrawling() ? " (indexing...)" : "";
+
+		if (query.trim().isEmpty())
+		{
+			this.statusLabel.setText(trackCount + " tracks in the library" + indexing);
+		}
+		else
+		{
+			this.statusLabel.setText(String.format("%s%d tracks found in %.1f ms%s", (this.results.size() == MAX_RESULTS) ? "First " : "",
+					this.results.size(), elapsedMicros / 1000.0, indexing));
+		}
+	}
+
+	/**
+	 * Searches again, such as after the library index has been updated.
+	 */
+	public void refresh()
+	{
+		this.search();
+	}
+
+	/**
+	 * Passes the tracks selected within the results table to the selection listener.
+	 */
+	private void addSelectedTracks()
+	{
+		List<LibraryTrack> selectedTracks = new ArrayList<LibraryTrack>();
+
+		for (int row : this.resultsTable.getSelectedRows())
+		{
+			selectedTracks.add(this.results.get(this.resultsTable.convertRowIndexToModel(row)));
+		}
+
+		if (!selectedTracks.isEmpty())
+		{
+			this.selectionListener.tracksSelected(selectedTracks);
+		}
+	}
+
+	/**
+	 * The model of the results table, which shows the current results.
+	 */
+	private class ResultsTableModel extends AbstractTableModel
+	{
+		// The column names
+		private final String[] columnNames = { "Title", "Artist", "Album" };
+
+		@Override
+		public int getRowCount()
+		{
+			return results.size();
+		}
+
+		@Override
+		public int getColumnCount()
+		{
+			return this.columnNames.length;
+		}
+
+		@Override
+		public String getColumnName(int column)
+		{
+			return this.columnNames[column];
+		}
+
+		@Override
+		public Object getValueAt(int row, int column)
+		{
+			LibraryTrack track = results.get(row);
+
+			switch (column)
+			{
+				case 0:
+					return track.getTitle();
+				case 1:
+					return track.getArtist();
+				default:
+					return track.getAlbum();
+			}
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package com.pe.library;
+
+import java.io.File;
+
+/**
+ * Represents a single track within the music library, as held by the library index.
+ *
+ * @author olly.rowe
+ */
+public class LibraryTrack
+{
+	// The absolute path of the file
+	private final String path;
+
+	// The size and last modified time of the file when it was read
+	private final long size;
+	private final long lastModified;
+
+	// The metadata of the file
+	private final String title;
+	private final String artist;
+	private final String album;
+	private final long lengthInMilliseconds;
+
+	/**
+	 * Class Constructor.
+	 *
+	 * @param path - The absolute path of the file.
+	 * @param size - The size of the file when it was read.
+	 * @param lastModified - The last modified time of the file when it was read.
+	 * @param title - The song title.
+	 * @param artist - The artist.
+	 * @param album - The album.
+	 * @param lengthInMilliseconds - The length of the song.
+	 */
+	public LibraryTrack(String path, long size, long lastModified, String title, String artist, String album, long lengthInMilliseconds)
+	{
+		this.path = path;
+		this.size = size;
+		this.lastModified = lastModified;
+		this.title = title;
+		this.artist = artist;
+		this.album = album;
+		this.lengthInMilliseconds = lengthInMilliseconds;
+	}
+
+	public String getPath()
+	{
+		return this.path;
+	}
+
+	public File getFile()
+	{
+		return new File(this.path);
+	}
+
+	public long getSize()
+	{
+		return this.size;
+	}
+
+	public long getLastModified()
+	{
+		return this.lastModified;
+	}
+
+	public String getTitle()
+	{
+		return this.title;
+	}
+
+	public String getArtist()
+	{
+		return this.artist;
+	}
+
+	public String getAlbum()
+	{
+		return this.album;
+	}
+
+	public long getLengthInMilliseconds()
+	{
+		return this.lengthInMilliseconds;
+	}
+}
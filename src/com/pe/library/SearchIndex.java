@@ -0,0 +1,400 @@
+package com.pe.library;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable inverted index of the words within the title, artist, album and path of each track.
+ *
+ * The words are held in a sorted array, so that every word starting with a prefix can be found with two binary
+ * searches. Each word maps to the ascending numbers of the tracks containing it. A search matches the tracks that
+ * contain a word starting with each word of the query.
+ *
+ * @author olly.rowe
+ */
+public class SearchIndex
+{
+	// The cost of checking a track's words against a query word, relative to adding one track to a set
+	private static final int CHECK_COST = 8;
+
+	// The tracks, numbered by their position
+	private final LibraryTrack[] tracks;
+
+	// The distinct words, in ascending order
+	private final String[] words;
+
+	// The numbers of the tracks containing each word, in ascending order
+	private final int[][] postings;
+
+	// The numbers of the words contained by each track, in ascending order
+	private final int[][] trackWords;
+
+	/**
+	 * Class Constructor. Use {@link #build(List)} to create an instance.
+	 */
+	private SearchIndex(LibraryTrack[] tracks, String[] words, int[][] postings, int[][] trackWords)
+	{
+		this.tracks = tracks;
+		this.words = words;
+		this.postings = postings;
+		this.trackWords = trackWords;
+	}
+
+	/**
+	 * Builds the index of a list of tracks.
+	 *
+	 * @param trackList - The tracks to be indexed.
+	 * @return The index.
+	 */
+	public static SearchIndex build(List<LibraryTrack> trackList)
+	{
+		LibraryTrack[] tracks = trackList.toArray(new LibraryTrack[trackList.size()]);
+		Map<String, IntList> wordPostings = new HashMap<String, IntList>();
+		Set<String> distinctWords = new LinkedHashSet<String>();
+
+		for (int i = 0; i < tracks.length; i++)
+		{
+			distinctWords.clear();
+			addWords(tracks[i], distinctWords);
+
+			for (String word : distinctWords)
+			{
+				IntList trackNumbers = wordPostings.get(word);
+				if (trackNumbers == null)
+				{
+					trackNumbers = new IntList();
+					wordPostings.put(word, trackNumbers);
+				}
+				trackNumbers.add(i);
+			}
+		}
+
+		String[] words = wordPostings.keySet().toArray(new String[wordPostings.size()]);
+		Arrays.sort(words);
+
+		int[][] postings = new int[words.length][];
+		for (int i = 0; i < words.length; i++)
+		{
+			postings[i] = wordPostings.get(words[i]).toArray();
+		}
+
+		// Invert the postings, so that the words of a track are listed in ascending order
+		int[] wordCounts = new int[tracks.length];
+		for (int[] trackNumbers : postings)
+		{
+			for (int track : trackNumbers)
+			{
+				wordCounts[track]++;
+			}
+		}
+
+		int[][] trackWords = new int[tracks.length][];
+		for (int i = 0; i < tracks.length; i++)
+		{
+			trackWords[i] = new int[wordCounts[i]];
+			wordCounts[i] = 0;
+		}
+		for (int word = 0; word < postings.length; word++)
+		{
+			for (int track : postings[word])
+			{
+				trackWords[track][wordCounts[track]++] = word;
+			}
+		}
+		return new SearchIndex(tracks, words, postings, trackWords);
+	}
+
+	/**
+	 * Finds the tracks that contain a word starting with each word of a query.
+	 *
+	 * @param query - The words to search for, separated by spaces or punctuation.
+	 * @param limit - The maximum number of tracks to be returned.
+	 * @return The matching tracks.
+	 */
+	public List<LibraryTrack> search(String query, int limit)
+	{
+		Set<String> queryWordSet = new LinkedHashSet<String>();
+		addWords(query, queryWordSet);
+
+		if (queryWordSet.isEmpty() || limit <= 0)
+		{
+			return Collections.emptyList();
+		}
+
+		String[] queryWords = queryWordSet.toArray(new String[queryWordSet.size()]);
+
+		// Find the range of words starting with each query word, and the number of postings within the range
+		int[] starts = new int[queryWords.length];
+		int[] ends = new int[queryWords.length];
+		long[] sizes = new long[queryWords.length];
+		int driver = 0;
+
+		for (int i = 0; i < queryWords.length; i++)
+		{
+			starts[i] = lowerBound(queryWords[i]);
+			ends[i] = lowerBound(queryWords[i] + Character.MAX_VALUE);
+
+			for (int word = starts[i]; word < ends[i]; word++)
+			{
+				sizes[i] += this.postings[word].length;
+			}
+
+			// A query word that matches nothing means that no track can match
+			if (sizes[i] == 0)
+			{
+				return Collections.emptyList();
+			}
+			if (sizes[i] < sizes[driver])
+			{
+				driver = i;
+			}
+		}
+
+		// Estimate how many tracks must be walked to find enough results, assuming the query words occur independently
+		double candidates = limit;
+		for (int i = 0; i < queryWords.length; i++)
+		{
+			if (i != driver)
+			{
+				candidates *= (double) this.tracks.length / sizes[i];
+			}
+		}
+		candidates = Math.min(candidates, sizes[driver]);
+
+		// Combine the query words into sets when that is cheaper than checking each of the tracks walked
+		List<BitSet> filters = new ArrayList<BitSet>();
+		IntList checks = new IntList();
+
+		for (int i = 0; i < queryWords.length; i++)
+		{
+			if (i == driver)
+			{
+				continue;
+			}
+			if (sizes[i] < candidates * CHECK_COST)
+			{
+				filters.add(this.union(starts[i], ends[i]));
+			}
+			else
+			{
+				checks.add(i);
+			}
+		}
+
+		// Walk the postings of the query word matching the fewest tracks, stopping once there are enough results
+		List<LibraryTrack> results = new ArrayList<LibraryTrack>();
+		BitSet seen = new BitSet(this.tracks.length);
+
+		for (int word = starts[driver]; word < ends[driver] && results.size() < limit; word++)
+		{
+			for (int track : this.postings[word])
+			{
+				if (seen.get(track))
+				{
+					continue;
+				}
+				seen.set(track);
+
+				if (this.matches(track, filters, checks, starts, ends))
+				{
+					results.add(this.tracks[track]);
+
+					if (results.size() >= limit)
+					{
+						break;
+					}
+				}
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Checks whether a track matches the remaining words of a query.
+	 *
+	 * @param track - The track number.
+	 * @param filters - The sets of tracks that must contain the track.
+	 * @param checks - The query words that the track must contain a word starting with.
+	 * @param starts - The first word starting with each query word.
+	 * @param ends - The word after the last word starting with each query word.
+	 * @return Whether the track matches.
+	 */
+	private boolean matches(int track, List<BitSet> filters, IntList checks, int[] starts, int[] ends)
+	{
+		for (BitSet filter : filters)
+		{
+			if (!filter.get(track))
+			{
+				return false;
+			}
+		}
+
+		// The words starting with a query word are contiguous, so find the first of the track's words within the range
+		int[] words = this.trackWords[track];
+
+		for (int i = 0; i < checks.size; i++)
+		{
+			int check = checks.values[i];
+			int position = Arrays.binarySearch(words, starts[check]);
+
+			if (position < 0 && (-position - 1 == words.length || words[-position - 1] >= ends[check]))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the set of tracks containing any of a range of words.
+	 *
+	 * @param start - The first word of the range.
+	 * @param end - The word after the last word of the range.
+	 * @return The set of track numbers.
+	 */
+	private BitSet union(int start, int end)
+	{
+		BitSet set = new BitSet(this.tracks.length);
+
+		for (int word = start; word < end; word++)
+		{
+			for (int track : this.postings[word])
+			{
+				set.set(track);
+			}
+		}
+		return set;
+	}
+
+	/**
+	 * Finds the position of the first word that isn't less than a key.
+	 *
+	 * @param key - The key.
+	 * @return The position, or the number of words if every word is less than the key.
+	 */
+	private int lowerBound(String key)
+	{
+		int low = 0;
+		int high = this.words.length;
+
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+
+			if (this.words[middle].compareTo(key) < 0)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Adds the words of a track's metadata and path to a set. The path contributes the name of the file and of the two
+	 * directories containing it, which are usually named after the album and artist.
+	 *
+	 * @param track - The track.
+	 * @param words - The set to which the words are added.
+	 */
+	private static void addWords(LibraryTrack track, Set<String> words)
+	{
+		addWords(track.getTitle(), words);
+		addWords(track.getArtist(), words);
+		addWords(track.getAlbum(), words);
+
+		File file = track.getFile();
+		for (int i = 0; i < 3 && file != null; i++)
+		{
+			addWords(file.getName(), words);
+			file = file.getParentFile();
+		}
+	}
+
+	/**
+	 * Splits text into lower case words, separated by any characters other than letters and digits, and adds them to a
+	 * set.
+	 *
+	 * @param text - The text, may be null.
+	 * @param words - The set to which the words are added.
+	 */
+	static void addWords(String text, Set<String> words)
+	{
+		if (text == null)
+		{
+			return;
+		}
+
+		int start = -1;
+
+		for (int i = 0; i <= text.length(); i++)
+		{
+			boolean isWordCharacter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+
+			if (isWordCharacter && start < 0)
+			{
+				start = i;
+			}
+			else if (!isWordCharacter && start >= 0)
+			{
+				words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+				start = -1;
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of tracks within the index.
+	 *
+	 * @return The number of tracks.
+	 */
+	public int getTrackCount()
+	{
+		return this.tracks.length;
+	}
+
+	/**
+	 * Gets the number of distinct words within the index.
+	 *
+	 * @return The number of words.
+	 */
+	public int getWordCount()
+	{
+		return this.words.length;
+	}
+
+	/**
+	 * A growable list of ints, which avoids boxing each track number while the index is built.
+	 */
+	private static class IntList
+	{
+		private int[] values = new int[4];
+		private int size;
+
+		private void add(int value)
+		{
+			if (this.size == this.values.length)
+			{
+				this.values = Arrays.copyOf(this.values, this.size * 2);
+			}
+			this.values[this.size++] = value;
+		}
+
+		private int[] toArray()
+		{
+			return Arrays.copyOf(this.values, this.size);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package com.pe.utils;
+
+import java.io.File;
+import java.util.List;
+
+import javax.swing.SwingWorker;
+
+import com.pe.audio.BatchSplitter;
+import com.pe.audio.TrackSplitter;
+
+/**
+ * BatchSplitWorker.java
+ *
+ * Splits a track into many segments in the background. Progress is reported as a percentage through the worker's
+ * progress property, and the files written are the result of the worker.
+ *
+ * @author olly.rowe
+ */
+public class BatchSplitWorker extends SwingWorker<List<File>, Void>
+{
+	// The track to be split
+	private File source;
+
+	// The CUE sheet or timestamp list holding the split points
+	private File splitPointsFile;
+
+	// The directory to which the segments are written
+	private File outputDirectory;
+
+	/**
+	 * Class Constructor.
+	 *
+	 * @param source - The track to be split.
+	 * @param splitPointsFile - The CUE sheet or timestamp list holding the split points.
+	 * @param outputDirectory - The directory to which the segments are written.
+	 */
+	public BatchSplitWorker(File source, File splitPointsFile, File outputDirectory)
+	{
+		super();
+
+		this.source = source;
+		this.splitPointsFile = splitPointsFile;
+		this.outputDirectory = outputDirectory;
+	}
+
+	/**
+	 * Inherited SwingWorker method. Called upon .execute()
+	 */
+	@Override
+	protected List<File> doInBackground() throws Exception
+	{
+		List<BatchSplitter.Segment> segments = BatchSplitter.readSegments(this.splitPointsFile);
+
+		return BatchSplitter.split(this.source, segments, this.outputDirectory, new TrackSplitter.ProgressListener()
+		{
+			@Override
+			public void progressed(long bytesWritten, long totalBytes)
+			{
+				setProgress((int) Math.min(100, (bytesWritten * 100) / Math.max(1, totalBytes)));
+			}
+		});
+	}
+
+	public File getSource()
+	{
+		return this.source;
+	}
+}
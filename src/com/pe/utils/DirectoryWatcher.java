@@ -0,0 +1,172 @@
+package com.pe.utils;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DirectoryWatcher.java
+ *
+ * Watches directories for files being created, deleted or renamed, and reports the changes in debounced bursts.
+ *
+ * Events are collected until none have arrived for the debounce period, so that copying or deleting many files at once
+ * results in one notification per directory rather than one per file.
+ *
+ * @author olly.rowe
+ */
+class DirectoryWatcher
+{
+	// The longest that a change is held back while events keep arriving
+	private static final long MAX_DELAY_MILLIS = 2000;
+
+	/**
+	 * Receives the changes within the watched directories. Called on the watcher thread.
+	 */
+	interface Listener
+	{
+		/**
+		 * Called when the contents of a directory have changed.
+		 *
+		 * @param directory - The directory.
+		 * @param names - The names of the children that have been created or deleted, or null if the changes were lost
+		 *            and the whole directory should be read again.
+		 */
+		void directoryChanged(Path directory, Set<String> names);
+	}
+
+	// The time to wait after the last event before reporting the changes
+	private final long debounceMillis;
+
+	// The listener to be notified of changes
+	private final Listener listener;
+
+	// The watch service, created when the first directory is registered
+	private WatchService watchService;
+
+	/**
+	 * Class Constructor.
+	 *
+	 * @param debounceMillis - The time to wait after the last event before reporting the changes.
+	 * @param listener - The listener to be notified of changes.
+	 */
+	DirectoryWatcher(long debounceMillis, Listener listener)
+	{
+		this.debounceMillis = debounceMillis;
+		this.listener = listener;
+	}
+
+	/**
+	 * Starts watching a directory.
+	 *
+	 * @param directory - The directory.
+	 * @return The key, used to stop watching the directory.
+	 */
+	synchronized WatchKey register(Path directory) throws IOException
+	{
+		if (this.watchService == null)
+		{
+			this.watchService = FileSystems.getDefault().newWatchService();
+
+			final WatchService service = this.watchService;
+			Thread thread = new Thread("File Tree Watcher")
+			{
+				@Override
+				public void run()
+				{
+					watch(service);
+				}
+			};
+			thread.setDaemon(true);
+			thread.start();
+		}
+		return directory.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+	}
+
+	/**
+	 * Stops watching a directory.
+	 *
+	 * @param key - The key returned when the directory was registered.
+	 */
+	void release(WatchKey key)
+	{
+		key.cancel();
+	}
+
+	/**
+	 * The main loop of the watcher thread. Collects events until there is a pause, then reports them.
+	 *
+	 * @param service - The watch service.
+	 */
+	private void watch(WatchService service)
+	{
+		// The changes that haven't yet been reported, by directory. A null set means that events were lost
+		Map<Path, Set<String>> pending = new HashMap<Path, Set<String>>();
+		long firstPendingTime = 0;
+
+		try
+		{
+			while (true)
+			{
+				WatchKey key;
+
+				if (pending.isEmpty())
+				{
+					key = service.take();
+					firstPendingTime = System.currentTimeMillis();
+				}
+				else
+				{
+					// Wait for further events, unless the changes have already been held back for too long
+					long remaining = MAX_DELAY_MILLIS - (System.currentTimeMillis() - firstPendingTime);
+					key = (remaining > 0) ? service.poll(Math.min(this.debounceMillis, remaining), TimeUnit.MILLISECONDS) : null;
+				}
+
+				if (key == null)
+				{
+					// Events have stopped arriving, so report the changes
+					for (Map.Entry<Path, Set<String>> change : pending.entrySet())
+					{
+						this.listener.directoryChanged(change.getKey(), change.getValue());
+					}
+					pending.clear();
+					continue;
+				}
+
+				Path directory = (Path) key.watchable();
+
+				for (WatchEvent<?> event : key.pollEvents())
+				{
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+					{
+						pending.put(directory, null);
+					}
+					else if (!pending.containsKey(directory) || pending.get(directory) != null)
+					{
+						Set<String> names = pending.get(directory);
+						if (names == null)
+						{
+							names = new HashSet<String>();
+							pending.put(directory, names);
+						}
+						names.add(((Path) event.context()).toString());
+					}
+				}
+				key.reset();
+			}
+		}
+		catch (InterruptedException | ClosedWatchServiceException e)
+		{
+			// Stop watching
+		}
+	}
+}
@@ -13,6 +13,9 @@ public class FileNode extends DefaultMutableTreeNode
 	// The corresponding file
 	private File file;
 	
+	// Whether the file is a directory, which can be expanded to show its children
+	private boolean isDirectory;
+	
 	// Boolean value identifying whether this node has yet been mapped
 	private boolean isMapped = false;
 
@@ -23,13 +26,25 @@ public class FileNode extends DefaultMutableTreeNode
 	 * Class constructor.
 	 * 
 	 * @param file - The associated file to this node.
+	 * @param isDirectory - Whether the file is a directory.
 	 */
-	public FileNode(File file)
+	public FileNode(File file, boolean isDirectory)
 	{
 		// Call to super constructor. Pass either the name of the file or, for the root, pass the path
 		super(file.getName().equals("") ? file.getAbsolutePath() : file.getName());
 				
 		this.file = file;
+		this.isDirectory = isDirectory;
+	}
+	
+	/**
+	 * Alternative Class constructor. Checks whether the file is a directory.
+	 * 
+	 * @param file - The associated file to this node.
+	 */
+	public FileNode(File file)
+	{
+		this(file, file.isDirectory());
 	}
 	
 	/**
@@ -42,6 +57,25 @@ public class FileNode extends DefaultMutableTreeNode
 		return this.file;
 	}
 	
+	/**
+	 * Returns whether the file is a directory.
+	 * 
+	 * @return Whether the file is a directory.
+	 */
+	public boolean isDirectory()
+	{
+		return this.isDirectory;
+	}
+	
+	/**
+	 * Directories are never shown as leaves, so that they can be expanded before their children have been mapped.
+	 */
+	@Override
+	public boolean isLeaf()
+	{
+		return !this.isDirectory;
+	}
+	
 	/**
 	 * Sets the state of isMapped.
 	 * 
@@ -2,30 +2,87 @@ package com.pe.utils;
 
 import java.awt.Component;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.JTree;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.event.TreeExpansionEvent;
 import javax.swing.event.TreeExpansionListener;
 import javax.swing.tree.DefaultTreeCellRenderer;
 import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreePath;
 
 /**
  * FileTree.java
  * 
  * Represents a JTree that displays a given file system.
  * 
- * Threading has been utilised to map the file system using a breadth-first search.
- * Nodes can also be mapped on an as-needed bases to avoid long loading times.
+ * The children of a directory are mapped when it is first expanded. Directories are read on background threads and
+ * their children inserted into the tree in batches, so that large or slow directories never block the GUI. A scan is
+ * cancelled if its directory is collapsed before it finishes, or if the root directory is changed.
+ * 
+ * Expanded directories are watched for files being created, deleted or renamed, and the tree is updated with just
+ * the nodes that have changed. A directory stops being watched once it is collapsed.
  */
 @SuppressWarnings("serial")
 public class FileTree extends JTree implements TreeExpansionListener
 {	
+	// The number of directories read at the same time
+	private static final int MAPPER_THREADS = 2;
+	
+	// The maximum number of children inserted into the tree at a time
+	private static final int BATCH_SIZE = 250;
+	
+	// The time to wait after the last change to a directory before updating the tree
+	private static final long WATCH_DEBOUNCE_MILLIS = 300;
+	
+	// The threads that read the directories, shared by all trees
+	private static final ExecutorService MAPPER = Executors.newFixedThreadPool(MAPPER_THREADS, new ThreadFactory()
+	{
+		private final AtomicInteger threadCount = new AtomicInteger();
+		
+		@Override
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, "File Tree Mapper " + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	
 	// The array of file types to be displayed in the tree
 	private ArrayList<String> fileTypesToShow;
 	
+	// The scans that are in progress, by the node being mapped. Only accessed on the event dispatch thread
+	private Map<FileNode, Scan> scans = new HashMap<FileNode, Scan>();
+	
+	// Watches the expanded directories for changes
+	private DirectoryWatcher watcher;
+	
+	// The keys of the watched directories by node, and the nodes by directory. Only accessed on the event dispatch thread
+	private Map<FileNode, WatchKey> watchKeys = new HashMap<FileNode, WatchKey>();
+	private Map<Path, FileNode> watchedNodes = new HashMap<Path, FileNode>();
+	
+	// Nodes whose directories changed while they were being mapped, which are read again once mapped
+	private Set<FileNode> changedWhileMapping = new HashSet<FileNode>();
+	
 	/**
 	 * Class constructor.
 	 * 
@@ -34,9 +91,19 @@ public class FileTree extends JTree implements TreeExpansionListener
 	 */
 	public FileTree(String directory, List<String> fileTypesToShow)
 	{
-		super(new FileNode(new File(directory)));
+		super(new FileNode(new File(directory), true));
 				
 		this.fileTypesToShow = new ArrayList<String>(fileTypesToShow);
+		
+		// Read the changed children of watched directories once the changes have settled
+		this.watcher = new DirectoryWatcher(WATCH_DEBOUNCE_MILLIS, new DirectoryWatcher.Listener()
+		{
+			@Override
+			public void directoryChanged(Path directory, Set<String> names)
+			{
+				refreshDirectory(directory, names);
+			}
+		});
 				
 		// Map the root node
 		this.mapNodes((FileNode) this.getModel().getRoot());
@@ -75,44 +142,95 @@ public class FileTree extends JTree implements TreeExpansionListener
 	}
 	
 	/**
-	 * Maps a node, discovers and creates child nodes.
+	 * Starts mapping a node in the background, discovering and creating its child nodes, unless it is already mapped
+	 * or being mapped.
 	 * 
-	 * @param parent - the node to be mapped.
+	 * @param node - the node to be mapped.
 	 */
 	private void mapNodes(FileNode node)
 	{
-		// List all child files / directories within parent node
-		File[] children = node.getFile().listFiles();
+		if (node.isMapped() || this.scans.containsKey(node))
+		{
+			return;
+		}
 		
-		if (children != null)
+		// Watch the directory before reading it so that no changes are missed
+		this.watch(node);
+		
+		Scan scan = new Scan(node);
+		this.scans.put(node, scan);
+		scan.future = MAPPER.submit(scan);
+	}
+	
+	/**
+	 * Inserts a batch of child nodes read by a scan. Called on the event dispatch thread.
+	 * 
+	 * @param scan - The scan that read the children.
+	 * @param children - The child nodes.
+	 * @param isComplete - Whether this is the last batch of the scan.
+	 */
+	private void insertNodes(Scan scan, List<FileNode> children, boolean isComplete)
+	{
+		// Ignore batches from scans that have since been cancelled
+		if (this.scans.get(scan.node) != scan)
 		{
-			// Iterate through each child
-			for (File child : children)
+			return;
+		}
+		
+		FileNode node = scan.node;
+		int[] indices = new int[children.size()];
+		
+		for (int i = 0; i < children.size(); i++)
+		{
+			indices[i] = node.getChildCount();
+			node.add(children.get(i));
+		}
+		
+		// Notify the tree of the whole batch at once
+		if (indices.length > 0)
+		{
+			((DefaultTreeModel) this.getModel()).nodesWereInserted(node, indices);
+		}
+		
+		if (isComplete)
+		{
+			node.setMapped(true);
+			this.scans.remove(node);
+			
+			// Read the directory again if it changed while being read
+			if (this.changedWhileMapping.remove(node))
 			{
-				if (child.isFile())
-				{
-					if (!this.isValidType(child))
-					{
-						continue;
-					}
-				}
-				// Create a new node
-				FileNode childNode = new FileNode(child);
-				// Add the new node to the parent node
-				node.add(childNode);
+				this.refreshDirectory(node.getFile().toPath(), null);
+			}
+		}
+	}
+	
+	/**
+	 * Cancels the scans of a node and any of its descendants, removing the children they had already inserted so that
+	 * the node is mapped again when next expanded.
+	 * 
+	 * @param node - The node.
+	 */
+	private void cancelScans(FileNode node)
+	{
+		for (Scan scan : new ArrayList<Scan>(this.scans.values()))
+		{
+			if (scan.node == node || scan.node.isNodeAncestor(node))
+			{
+				scan.cancel();
+				this.scans.remove(scan.node);
 				
-				// If this child node is a directory
-				if (child.isDirectory())
+				if (scan.node.getChildCount() > 0)
 				{
-					// Set the icon of the child not to the default folder
-					childNode.setIcon(UIManager.getIcon("Tree.openIcon"));
+					scan.node.removeAllChildren();
+					((DefaultTreeModel) this.getModel()).nodeStructureChanged(scan.node);
 				}
 			}
 		}
 	}
 	
 	/**
-	 * Fired upon expansion of a node. Maps the children of the children of the expanded node.
+	 * Fired upon expansion of a node. Maps the children of the expanded node.
 	 * 
 	 * @param e - The event object
 	 */
@@ -122,30 +240,259 @@ public class FileTree extends JTree implements TreeExpansionListener
 		// Fetch the last selected node
 		FileNode node = (FileNode) e.getPath().getLastPathComponent();
 		
-		// Check if the node is not yet mapped
+		this.watchExpanded(node);
+	}
+	
+	/**
+	 * Maps an expanded node if it isn't yet mapped, otherwise starts watching it again along with any of its
+	 * descendants that are still expanded, reading them again as they may have changed while they weren't watched.
+	 * 
+	 * @param node - The expanded node.
+	 */
+	private void watchExpanded(FileNode node)
+	{
 		if (!node.isMapped())
 		{
-			// Iterate through each child node
-			for (int i = 0; i < node.getChildCount(); i++)
+			this.mapNodes(node);
+			return;
+		}
+		
+		if (!this.watchKeys.containsKey(node))
+		{
+			this.watch(node);
+			this.refreshDirectory(node.getFile().toPath(), null);
+		}
+		
+		for (int i = 0; i < node.getChildCount(); i++)
+		{
+			FileNode child = (FileNode) node.getChildAt(i);
+			
+			if (child.isDirectory() && this.isExpanded(new TreePath(child.getPath())))
+			{
+				this.watchExpanded(child);
+			}
+		}
+	}
+	
+	/**
+	 * Starts watching the directory of a node, if it isn't already being watched.
+	 * 
+	 * @param node - The node.
+	 */
+	private void watch(FileNode node)
+	{
+		if (this.watchKeys.containsKey(node))
+		{
+			return;
+		}
+		
+		try
+		{
+			WatchKey key = this.watcher.register(node.getFile().toPath());
+			this.watchKeys.put(node, key);
+			this.watchedNodes.put(node.getFile().toPath(), node);
+		}
+		catch (IOException e)
+		{
+			// The directory can't be watched, such as on some network drives, so it won't update until remapped
+		}
+	}
+	
+	/**
+	 * Stops watching the directories of a node and all of its descendants.
+	 * 
+	 * @param node - The node.
+	 */
+	private void unwatch(FileNode node)
+	{
+		for (FileNode watchedNode : new ArrayList<FileNode>(this.watchKeys.keySet()))
+		{
+			if (watchedNode == node || watchedNode.isNodeAncestor(node))
+			{
+				this.watcher.release(this.watchKeys.remove(watchedNode));
+				this.watchedNodes.remove(watchedNode.getFile().toPath());
+				this.changedWhileMapping.remove(watchedNode);
+			}
+		}
+	}
+	
+	/**
+	 * Reads the changed children of a directory in the background, then updates the tree with them.
+	 * 
+	 * @param directory - The directory.
+	 * @param names - The names of the changed children, or null to read the whole directory.
+	 */
+	private void refreshDirectory(final Path directory, final Set<String> names)
+	{
+		MAPPER.submit(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				// The attributes of each child, null if it no longer exists
+				final Map<String, BasicFileAttributes> children = new HashMap<String, BasicFileAttributes>();
+				
+				if (names != null)
+				{
+					for (String name : names)
+					{
+						children.put(name, readAttributes(directory.resolve(name)));
+					}
+				}
+				else
+				{
+					try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory))
+					{
+						for (Path child : stream)
+						{
+							children.put(child.getFileName().toString(), readAttributes(child));
+						}
+					}
+					catch (IOException e)
+					{
+						// The directory has been deleted, which its parent will be notified of
+						return;
+					}
+				}
+				
+				SwingUtilities.invokeLater(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						applyChanges(directory, children, names == null);
+					}
+				});
+			}
+		});
+	}
+	
+	/**
+	 * Reads the attributes of a file.
+	 * 
+	 * @param file - The file.
+	 * @return The attributes, or null if the file doesn't exist or can't be read.
+	 */
+	private static BasicFileAttributes readAttributes(Path file)
+	{
+		try
+		{
+			return Files.readAttributes(file, BasicFileAttributes.class);
+		}
+		catch (IOException e)
+		{
+			return null;
+		}
+	}
+	
+	/**
+	 * Inserts and removes the child nodes of a directory that have been created or deleted. Called on the event
+	 * dispatch thread.
+	 * 
+	 * @param directory - The directory.
+	 * @param children - The attributes of the changed children, null for those that no longer exist.
+	 * @param isComplete - Whether the changes contain every child, so that any other children should be removed.
+	 */
+	private void applyChanges(Path directory, Map<String, BasicFileAttributes> children, boolean isComplete)
+	{
+		FileNode node = this.watchedNodes.get(directory);
+		
+		// Ignore directories that have stopped being watched
+		if (node == null)
+		{
+			return;
+		}
+		// Wait until the directory has been read, then read it again
+		if (this.scans.containsKey(node))
+		{
+			this.changedWhileMapping.add(node);
+			return;
+		}
+		
+		DefaultTreeModel model = (DefaultTreeModel) this.getModel();
+		
+		// Find the children that have been deleted
+		Set<String> existingNames = new HashSet<String>();
+		List<Integer> removedIndices = new ArrayList<Integer>();
+		List<FileNode> removedNodes = new ArrayList<FileNode>();
+		
+		for (int i = 0; i < node.getChildCount(); i++)
+		{
+			FileNode child = (FileNode) node.getChildAt(i);
+			String name = child.getFile().getName();
+			
+			boolean isDeleted = children.containsKey(name) ? children.get(name) == null : isComplete;
+			
+			if (isDeleted)
+			{
+				removedIndices.add(i);
+				removedNodes.add(child);
+			}
+			else
 			{
-				FileNode child = (FileNode) node.getChildAt(i);
-				// Map the child's children
-				this.mapNodes(child);
+				existingNames.add(name);
 			}
 		}
-		// Set the node to mapped
-		node.setMapped(true);
+		
+		if (!removedNodes.isEmpty())
+		{
+			int[] indices = new int[removedIndices.size()];
+			
+			// Remove from the end so that the indices of the remaining nodes don't change
+			for (int i = removedIndices.size() - 1; i >= 0; i--)
+			{
+				indices[i] = removedIndices.get(i);
+				FileNode removedNode = removedNodes.get(i);
+				
+				this.cancelScans(removedNode);
+				this.unwatch(removedNode);
+				node.remove(indices[i]);
+			}
+			model.nodesWereRemoved(node, indices, removedNodes.toArray());
+		}
+		
+		// Add the children that have been created
+		List<Integer> insertedIndices = new ArrayList<Integer>();
+		
+		for (Map.Entry<String, BasicFileAttributes> child : children.entrySet())
+		{
+			if (child.getValue() == null || existingNames.contains(child.getKey()))
+			{
+				continue;
+			}
+			
+			FileNode childNode = this.createNode(directory.resolve(child.getKey()).toFile(), child.getValue());
+			
+			if (childNode != null)
+			{
+				insertedIndices.add(node.getChildCount());
+				node.add(childNode);
+			}
+		}
+		
+		if (!insertedIndices.isEmpty())
+		{
+			int[] indices = new int[insertedIndices.size()];
+			for (int i = 0; i < indices.length; i++)
+			{
+				indices[i] = insertedIndices.get(i);
+			}
+			model.nodesWereInserted(node, indices);
+		}
 	}
 	
 	/**
-	 * Fired upon collapsing of a node.
+	 * Fired upon collapsing of a node. Cancels any scans that are in progress within it.
 	 * 
 	 * @param e - The event object
 	 */
 	@Override
 	public void treeCollapsed(TreeExpansionEvent e)
 	{
-		return;
+		FileNode node = (FileNode) e.getPath().getLastPathComponent();
+		
+		this.cancelScans(node);
+		this.unwatch(node);
 	}
 	
 	/**
@@ -155,16 +502,163 @@ public class FileTree extends JTree implements TreeExpansionListener
 	 */
 	public void setDirectory(String directory)
 	{
+		// Cancel the scans of the old tree
+		for (Scan scan : this.scans.values())
+		{
+			scan.cancel();
+		}
+		this.scans.clear();
+		
+		// Stop watching the directories of the old tree
+		for (WatchKey key : this.watchKeys.values())
+		{
+			this.watcher.release(key);
+		}
+		this.watchKeys.clear();
+		this.watchedNodes.clear();
+		this.changedWhileMapping.clear();
+		
 		// Get the tree model
 		DefaultTreeModel model = (DefaultTreeModel) this.getModel();		
         // Set the new root node
-        model.setRoot(new FileNode(new File(directory)));
+        model.setRoot(new FileNode(new File(directory), true));
         // Refresh the GUI
         model.reload();
         // Map the child nodes of the new root
 		this.mapNodes((FileNode) this.getModel().getRoot());
 	}
 	
+	/**
+	 * Reads the children of a directory in the background, passing them to the tree in batches.
+	 */
+	private class Scan implements Runnable
+	{
+		// The node being mapped
+		private final FileNode node;
+		
+		// The task running the scan
+		private Future<?> future;
+		
+		// Whether the scan has been cancelled
+		private volatile boolean isCancelled = false;
+		
+		/**
+		 * Class Constructor.
+		 * 
+		 * @param node - The node to be mapped.
+		 */
+		private Scan(FileNode node)
+		{
+			this.node = node;
+		}
+		
+		@Override
+		public void run()
+		{
+			List<FileNode> batch = new ArrayList<FileNode>();
+			
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.node.getFile().toPath()))
+			{
+				for (Path child : stream)
+				{
+					if (this.isCancelled)
+					{
+						return;
+					}
+					
+					BasicFileAttributes attributes;
+					try
+					{
+						// Read all of the attributes needed in one call, rather than checking each separately
+						attributes = Files.readAttributes(child, BasicFileAttributes.class);
+					}
+					catch (IOException e)
+					{
+						// Skip children that can't be read, such as broken links
+						continue;
+					}
+					
+					FileNode childNode = createNode(child.toFile(), attributes);
+					
+					if (childNode != null)
+					{
+						batch.add(childNode);
+						
+						if (batch.size() >= BATCH_SIZE)
+						{
+							this.publish(batch, false);
+							batch = new ArrayList<FileNode>();
+						}
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				// The directory can't be read, show it as empty
+			}
+			this.publish(batch, true);
+		}
+		
+		/**
+		 * Passes a batch of child nodes to the tree on the event dispatch thread.
+		 * 
+		 * @param children - The child nodes.
+		 * @param isComplete - Whether this is the last batch.
+		 */
+		private void publish(final List<FileNode> children, final boolean isComplete)
+		{
+			if (this.isCancelled)
+			{
+				return;
+			}
+			SwingUtilities.invokeLater(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					insertNodes(Scan.this, children, isComplete);
+				}
+			});
+		}
+		
+		/**
+		 * Cancels the scan.
+		 */
+		private void cancel()
+		{
+			this.isCancelled = true;
+			if (this.future != null)
+			{
+				this.future.cancel(true);
+			}
+		}
+	}
+	
+	/**
+	 * Creates the node of a child file, if it is to be shown in the tree.
+	 * 
+	 * @param file - The file.
+	 * @param attributes - The attributes of the file.
+	 * @return The node, or null if the file isn't to be shown.
+	 */
+	private FileNode createNode(File file, BasicFileAttributes attributes)
+	{
+		if (!attributes.isDirectory() && !(attributes.isRegularFile() && this.isValidType(file)))
+		{
+			return null;
+		}
+		
+		FileNode node = new FileNode(file, attributes.isDirectory());
+		
+		// If this child node is a directory
+		if (attributes.isDirectory())
+		{
+			// Set the icon of the child not to the default folder
+			node.setIcon(UIManager.getIcon("Tree.openIcon"));
+		}
+		return node;
+	}
+	
 	/**
 	 * Check that the file's type is allow by the file type filters. If there are not filters then it shall return true.
 	 * 
@@ -0,0 +1,185 @@
+package com.pe.utils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.swing.SwingWorker;
+
+import com.pe.Playlist;
+import com.pe.PlaylistLoader;
+import com.pe.Song;
+
+/**
+ * ImportWorker.java
+ *
+ * Adds many songs to a playlist in the background, such as the contents of a folder and all of its subfolders.
+ *
+ * The import runs as a pipeline: the folders are searched for mp3 files on the worker thread, each file found is
+ * read straight away by a pool of loader threads, and the songs that have been read are added to the playlist in
+ * batches on the event dispatch thread. Songs are added in the order in which their files were found, sorted by name
+ * within each folder.
+ *
+ * Progress is reported as a percentage through the worker's progress property, and the number of files found so far
+ * through the "note" property. The songs that couldn't be read are the result of the worker. If the import is
+ * cancelled then the songs that have already been added remain on the playlist.
+ *
+ * @author olly.rowe
+ */
+public class ImportWorker extends SwingWorker<List<PlaylistLoader.Failure>, List<Song>>
+{
+	// The maximum number of songs added to the playlist at once
+	private static final int BATCH_SIZE = 500;
+
+	// How often the songs that have been read are added while searching for files
+	private static final long PUBLISH_INTERVAL_MILLIS = 200;
+
+	// The files and folders to be imported
+	private List<File> files;
+
+	// The playlist to which the songs are added
+	private Playlist playlist;
+
+	// Reads the songs as they are found
+	private PlaylistLoader loader;
+
+	// The number of songs that have been added to the playlist
+	private int importedCount;
+
+	// The time at which songs were last published
+	private long lastPublishTime;
+
+	/**
+	 * Class Constructor.
+	 *
+	 * @param files - The mp3 files and the folders to be searched for mp3 files.
+	 * @param playlist - The playlist to which the songs are added.
+	 */
+	public ImportWorker(List<File> files, Playlist playlist)
+	{
+		super();
+
+		this.files = files;
+		this.playlist = playlist;
+	}
+
+	/**
+	 * Inherited SwingWorker method. Called upon .execute()
+	 */
+	@Override
+	protected List<PlaylistLoader.Failure> doInBackground() throws Exception
+	{
+		this.loader = new PlaylistLoader();
+
+		try
+		{
+			// Find the files, adding the songs that have already been read as the search continues
+			for (File file : this.files)
+			{
+				this.find(file);
+			}
+			this.firePropertyChange("note", null, "Reading " + this.loader.getSubmittedCount() + " files...");
+
+			// Add the remaining songs as they are read
+			while (!this.isCancelled() && this.loader.getTakenCount() < this.loader.getSubmittedCount())
+			{
+				this.publishSongs(true);
+			}
+		}
+		finally
+		{
+			this.loader.cancel();
+		}
+		return this.loader.getFailures();
+	}
+
+	/**
+	 * Submits an mp3 file to be read, or searches a folder and all of its subfolders for mp3 files.
+	 *
+	 * @param file - The file or folder.
+	 */
+	private void find(File file)
+	{
+		if (this.isCancelled())
+		{
+			return;
+		}
+
+		if (file.isDirectory())
+		{
+			File[] children = file.listFiles();
+
+			if (children != null)
+			{
+				Arrays.sort(children);
+
+				for (File child : children)
+				{
+					this.find(child);
+				}
+			}
+
+			// Keep adding songs while a large folder is searched
+			if (System.currentTimeMillis() - this.lastPublishTime > PUBLISH_INTERVAL_MILLIS)
+			{
+				this.firePropertyChange("note", null, "Found " + this.loader.getSubmittedCount() + " files...");
+				this.publishSongs(false);
+			}
+		}
+		else if (file.getName().toLowerCase().endsWith(".mp3"))
+		{
+			this.loader.submit(file.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Publishes the next batch of songs to be added to the playlist, and updates the progress.
+	 *
+	 * @param isWaiting - Whether to wait for the batch to be read, rather than only publishing those already read.
+	 */
+	private void publishSongs(boolean isWaiting)
+	{
+		List<Song> songs = this.loader.takeSongs(BATCH_SIZE, isWaiting);
+
+		if (!songs.isEmpty())
+		{
+			this.publish(songs);
+		}
+		this.lastPublishTime = System.currentTimeMillis();
+
+		// The total isn't known until the search has finished, so the progress is an estimate until then
+		this.setProgress((int) ((this.loader.getTakenCount() * 100L) / Math.max(1, this.loader.getSubmittedCount())));
+	}
+
+	/**
+	 * Inherited SwingWorker method. Adds the songs that have been read to the playlist on the event dispatch thread.
+	 */
+	@Override
+	protected void process(List<List<Song>> batches)
+	{
+		List<Song> songs = new ArrayList<Song>();
+
+		for (List<Song> batch : batches)
+		{
+			songs.addAll(batch);
+		}
+
+		// Don't add songs that were read after the import was cancelled
+		if (!this.isCancelled())
+		{
+			this.playlist.addSongs(songs);
+			this.importedCount += songs.size();
+		}
+	}
+
+	/**
+	 * Gets the number of songs that have been added to the playlist. Only accessed on the event dispatch thread.
+	 *
+	 * @return The number of songs.
+	 */
+	public int getImportedCount()
+	{
+		return this.importedCount;
+	}
+}
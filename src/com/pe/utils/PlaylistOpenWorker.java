@@ -0,0 +1,58 @@
+package com.pe.utils;
+
+import java.io.File;
+
+import javax.swing.SwingWorker;
+
+import com.pe.Playlist;
+import com.pe.PlaylistLoader;
+
+/**
+ * PlaylistOpenWorker.java
+ *
+ * Opens a playlist file in the background, reading its songs on the loader's pool of threads. Progress is reported
+ * as a percentage through the worker's progress property, and the number of songs read through the "note" property.
+ * The playlist is the result of the worker. If the worker is cancelled then the songs that haven't been read are
+ * abandoned.
+ *
+ * @author olly.rowe
+ */
+public class PlaylistOpenWorker extends SwingWorker<Playlist, Void>
+{
+	// The playlist file to be opened
+	private File file;
+
+	/**
+	 * Class Constructor.
+	 *
+	 * @param file - The playlist file to be opened.
+	 */
+	public PlaylistOpenWorker(File file)
+	{
+		super();
+
+		this.file = file;
+	}
+
+	/**
+	 * Inherited SwingWorker method. Called upon .execute()
+	 */
+	@Override
+	protected Playlist doInBackground() throws Exception
+	{
+		return new Playlist(this.file, PlaylistLoader.getDefaultThreads(), true, new Playlist.ProgressListener()
+		{
+			@Override
+			public void progressed(int readCount, int totalCount)
+			{
+				setProgress((int) ((readCount * 100L) / Math.max(1, totalCount)));
+				firePropertyChange("note", null, "Read " + readCount + " of " + totalCount + " songs...");
+			}
+		});
+	}
+
+	public File getFile()
+	{
+		return this.file;
+	}
+}
@@ -2,6 +2,8 @@ package com.pe.utils;
 
 import javax.swing.SwingWorker;
 
+import com.pe.MetadataCache;
+
 /**
  * SetupWorker.java
  * 
@@ -26,6 +28,8 @@ public class SetupWorker extends SwingWorker
 	@Override
 	protected Object doInBackground() throws Exception
 	{
+		// Remove the cached metadata of songs that have since been changed or deleted
+		MetadataCache.getInstance().removeStaleEntries();
 		return null;
 	}
 }
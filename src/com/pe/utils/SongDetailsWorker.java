@@ -0,0 +1,123 @@
+package com.pe.utils;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import javax.swing.SwingWorker;
+
+import com.pe.Playlist;
+import com.pe.Song;
+
+/**
+ * SongDetailsWorker.java
+ *
+ * Reads the files of the songs on a playlist whose details were taken from the playlist file when it was opened, and
+ * replaces those details with the ones read, so that a playlist can be opened without first reading every song.
+ *
+ * The songs are read one at a time on a low priority thread, in playlist order, and their details are replaced in
+ * batches on the event dispatch thread. Songs whose files can no longer be found keep the details from the playlist
+ * file.
+ *
+ * @author olly.rowe
+ */
+public class SongDetailsWorker extends SwingWorker<Void, Song[]>
+{
+	// The playlist holding the songs
+	private Playlist playlist;
+
+	// The songs to be read, in playlist order
+	private List<Song> songs;
+
+	/**
+	 * Class Constructor. Must be called on the event dispatch thread.
+	 *
+	 * @param playlist - The playlist, whose songs that haven't been read from their files are read.
+	 */
+	public SongDetailsWorker(Playlist playlist)
+	{
+		super();
+
+		this.playlist = playlist;
+		this.songs = new ArrayList<Song>();
+
+		// Read each song once, even if it is listed more than once
+		Set<Song> listedSongs = Collections.newSetFromMap(new IdentityHashMap<Song, Boolean>());
+		for (Song song : playlist.getSongs())
+		{
+			if (!song.isDetailsRead() && listedSongs.add(song))
+			{
+				this.songs.add(song);
+			}
+		}
+	}
+
+	/**
+	 * Returns whether there are any songs to be read.
+	 *
+	 * @return Whether any of the playlist's songs haven't been read from their files.
+	 */
+	public boolean hasSongs()
+	{
+		return !this.songs.isEmpty();
+	}
+
+	/**
+	 * Inherited SwingWorker method. Called upon .execute()
+	 */
+	@Override
+	protected Void doInBackground() throws Exception
+	{
+		// Give way to the rest of the application, as the songs can already be listed and played
+		Thread thread = Thread.currentThread();
+		int priority = thread.getPriority();
+		thread.setPriority(Thread.MIN_PRIORITY);
+
+		try
+		{
+			for (Song song : this.songs)
+			{
+				if (this.isCancelled())
+				{
+					break;
+				}
+
+				try
+				{
+					// Only the headers are read, as when loading a playlist without its details. The metadata is
+					// cached, so the file won't need to be read the next time the playlist is opened
+					this.publish(new Song[] { song, new Song(song.getFile().getPath(), true) });
+				}
+				catch (FileNotFoundException e)
+				{
+					// Keep the details from the playlist file
+				}
+			}
+		}
+		finally
+		{
+			thread.setPriority(priority);
+		}
+		return null;
+	}
+
+	/**
+	 * Inherited SwingWorker method. Replaces the details of the songs that have been read.
+	 */
+	@Override
+	protected void process(List<Song[]> readSongs)
+	{
+		if (this.isCancelled())
+		{
+			return;
+		}
+
+		for (Song[] readSong : readSongs)
+		{
+			this.playlist.updateSongDetails(readSong[0], readSong[1]);
+		}
+	}
+}
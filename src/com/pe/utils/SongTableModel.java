@@ -0,0 +1,123 @@
+package com.pe.utils;
+
+import javax.swing.table.AbstractTableModel;
+
+import com.pe.Playlist;
+import com.pe.PlaylistListener;
+import com.pe.Song;
+
+/**
+ * SongTableModel.java
+ *
+ * The model of the track list table. The rows are read directly from the playlist rather than copied, and the table
+ * is told about each change made to the playlist, so that only the rows affected are redrawn.
+ *
+ * The track number of each row is worked out from its position, so moving or removing a song only changes the rows
+ * that follow it.
+ *
+ * @author olly.rowe
+ */
+@SuppressWarnings("serial")
+public class SongTableModel extends AbstractTableModel implements PlaylistListener
+{
+	// The column names
+	private static final String[] COLUMN_NAMES = { "Track No.", "Artist", "Title" };
+
+	// The playlist shown within the table
+	private Playlist playlist;
+
+	/**
+	 * Class Constructor.
+	 *
+	 * @param playlist - The playlist to be shown.
+	 */
+	public SongTableModel(Playlist playlist)
+	{
+		super();
+
+		this.setPlaylist(playlist);
+	}
+
+	/**
+	 * Shows a different playlist within the table, such as one that has just been opened.
+	 *
+	 * @param playlist - The playlist to be shown.
+	 */
+	public void setPlaylist(Playlist playlist)
+	{
+		if (this.playlist != null)
+		{
+			this.playlist.removePlaylistListener(this);
+		}
+
+		this.playlist = playlist;
+		this.playlist.addPlaylistListener(this);
+
+		this.fireTableDataChanged();
+	}
+
+	@Override
+	public int getRowCount()
+	{
+		return this.playlist.getSize();
+	}
+
+	@Override
+	public int getColumnCount()
+	{
+		return COLUMN_NAMES.length;
+	}
+
+	@Override
+	public String getColumnName(int column)
+	{
+		return COLUMN_NAMES[column];
+	}
+
+	@Override
+	public Object getValueAt(int row, int column)
+	{
+		Song song = this.playlist.getSong(row);
+
+		switch (column)
+		{
+			case 0:
+				return row + 1;
+			case 1:
+				return song.getArtist();
+			default:
+				return song.getTitle();
+		}
+	}
+
+	@Override
+	public void songsAdded(int firstIndex, int lastIndex)
+	{
+		this.fireTableRowsInserted(firstIndex, lastIndex);
+	}
+
+	@Override
+	public void songsRemoved(int firstIndex, int lastIndex)
+	{
+		this.fireTableRowsDeleted(firstIndex, lastIndex);
+
+		// The songs that followed have moved up, so their track numbers have changed
+		if (firstIndex < this.getRowCount())
+		{
+			this.fireTableRowsUpdated(firstIndex, this.getRowCount() - 1);
+		}
+	}
+
+	@Override
+	public void songsChanged(int firstIndex, int lastIndex)
+	{
+		this.fireTableRowsUpdated(firstIndex, lastIndex);
+	}
+
+	@Override
+	public void songsSwapped(int index1, int index2)
+	{
+		this.fireTableRowsUpdated(index1, index1);
+		this.fireTableRowsUpdated(index2, index2);
+	}
+}
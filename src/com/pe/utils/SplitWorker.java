@@ -0,0 +1,88 @@
+package com.pe.utils;
+
+import java.io.File;
+
+import javax.swing.SwingWorker;
+
+import com.pe.audio.FrameIndex;
+import com.pe.audio.TrackSplitter;
+
+/**
+ * SplitWorker.java
+ *
+ * Splits a track in the background, writing one of the two parts to a new file. Progress is reported as a percentage
+ * through the worker's progress property.
+ *
+ * @author olly.rowe
+ */
+public class SplitWorker extends SwingWorker<Void, Void>
+{
+	// The track to be split
+	private File source;
+
+	// The frame index of the track, null if it needs to be built
+	private FrameIndex frameIndex;
+
+	// The point at which to split the track, in milliseconds
+	private long splitPoint;
+
+	// Whether the part before the split point is written, rather than the part after it
+	private boolean outputPreSplitPoint;
+
+	// The file to be written
+	private File output;
+
+	/**
+	 * Class Constructor.
+	 *
+	 * @param source - The track to be split.
+	 * @param frameIndex - The frame index of the track, or null if it needs to be built.
+	 * @param splitPoint - The point at which to split the track, in milliseconds.
+	 * @param outputPreSplitPoint - Whether to write the part before the split point, rather than the part after it.
+	 * @param output - The file to be written.
+	 */
+	public SplitWorker(File source, FrameIndex frameIndex, long splitPoint, boolean outputPreSplitPoint, File output)
+	{
+		super();
+
+		this.source = source;
+		this.frameIndex = frameIndex;
+		this.splitPoint = splitPoint;
+		this.outputPreSplitPoint = outputPreSplitPoint;
+		this.output = output;
+	}
+
+	/**
+	 * Inherited SwingWorker method. Called upon .execute()
+	 */
+	@Override
+	protected Void doInBackground() throws Exception
+	{
+		// Index the track if it isn't already open in the player
+		if (this.frameIndex == null)
+		{
+			this.frameIndex = FrameIndex.build(this.source);
+		}
+
+		// Split at the start of the frame that is playing at the split point
+		int splitFrame = this.frameIndex.getFrameAt(this.splitPoint);
+
+		int startFrame = this.outputPreSplitPoint ? 0 : splitFrame;
+		int endFrame = this.outputPreSplitPoint ? splitFrame : this.frameIndex.getFrameCount();
+
+		TrackSplitter.writeSegment(this.source, this.frameIndex, startFrame, endFrame, this.output, new TrackSplitter.ProgressListener()
+		{
+			@Override
+			public void progressed(long bytesWritten, long totalBytes)
+			{
+				setProgress((int) ((bytesWritten * 100) / Math.max(1, totalBytes)));
+			}
+		});
+		return null;
+	}
+
+	public File getOutput()
+	{
+		return this.output;
+	}
+}